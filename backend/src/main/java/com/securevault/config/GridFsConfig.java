@@ -0,0 +1,21 @@
+package com.securevault.config;
+
+import com.mongodb.client.gridfs.GridFSBucket;
+import com.mongodb.client.gridfs.GridFSBuckets;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.mongodb.MongoDatabaseFactory;
+
+@Configuration
+public class GridFsConfig {
+
+    /**
+     * Raw driver bucket for the default "fs" collections.
+     * GridFsTemplate only exposes whole-file resources; the bucket lets us open
+     * download streams that seek straight to the chunk containing a byte offset.
+     */
+    @Bean
+    public GridFSBucket gridFSBucket(MongoDatabaseFactory mongoDatabaseFactory) {
+        return GridFSBuckets.create(mongoDatabaseFactory.getMongoDatabase());
+    }
+}
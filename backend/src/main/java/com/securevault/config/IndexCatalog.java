@@ -0,0 +1,212 @@
+package com.securevault.config;
+
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.IndexDefinition;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Every index the application's queries rely on, in one place.
+ * Auto index creation is off, so annotations on the models are not applied;
+ * this catalog is ensured at startup instead. Each entry carries a probe
+ * query shaped like the queries it serves, and {@link #explainProbes} checks
+ * that none of them is planned as a collection scan.
+ */
+@Component
+public class IndexCatalog {
+
+    private static final Logger log = LoggerFactory.getLogger(IndexCatalog.class);
+
+    private final MongoTemplate mongoTemplate;
+    private final List<Entry> entries = new ArrayList<>();
+
+    // Stop startup when an index cannot be built, e.g. duplicate emails blocking the unique index
+    @Value("${app.mongo.indexes.fail-on-error:false}")
+    private boolean failOnError;
+
+    public IndexCatalog(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+
+        // UserRepository.findByEmail; BlobTieringService inactive users
+        add("users", new Index().on("email", Sort.Direction.ASC).unique(), probe("email", ""));
+        add("users", new Index().on("lastLoginAt", Sort.Direction.ASC), probe("lastLoginAt", new Document("$lt", new Date())));
+
+        // AssetRepository.findByUserId and keyset pages of /assets/my
+        add("assets", new Index().on("userId", Sort.Direction.ASC).on("uploadedAt", Sort.Direction.DESC).on("_id", Sort.Direction.DESC),
+                probe("userId", ""), new Document("uploadedAt", -1).append("_id", -1));
+        // AssetRepository.findByNomineeIdsContaining (multikey)
+        add("assets", new Index().on("nomineeIds", Sort.Direction.ASC), probe("nomineeIds", ""));
+        // Deduplicated files, previews, garbage collection and tiering
+        add("assets", new Index().on("fileId", Sort.Direction.ASC), probe("fileId", ""));
+        add("assets", new Index().on("previewFileId", Sort.Direction.ASC).sparse(), probe("previewFileId", ""));
+        // PreviewService.sweepMissingPreviews
+        add("assets", new Index().on("previewFileId", Sort.Direction.ASC).on("fileType", Sort.Direction.ASC),
+                probe("previewFileId", null).append("fileType", new Document("$regex", "^image/")));
+        // AssetReleaseService batches: one owner's assets for one nominee, in id order
+        add("assets", new Index().on("userId", Sort.Direction.ASC).on("nomineeIds", Sort.Direction.ASC).on("_id", Sort.Direction.ASC),
+                probe("userId", "").append("nomineeIds", ""), new Document("_id", 1));
+        // AsyncUploadService.resumePendingUploads
+        add("assets", new Index().on("state", Sort.Direction.ASC).sparse(), probe("state", "PENDING"));
+        // AssetService.searchUserAssets; userId first so a search only reads the caller's entries.
+        // Language "none": the terms are word prefixes and must not be stemmed
+        add("assets", textIndex("asset_search",
+                new Document("userId", 1).append("searchName", "text").append("searchNominees", "text").append("searchDescription", "text"),
+                new Document("searchName", 10).append("searchNominees", 4).append("searchDescription", 1)),
+                probe("userId", "").append("$text", new Document("$search", "\"probe\"")));
+
+        // NomineeRepository.findByUserId
+        add("nominees", new Index().on("userId", Sort.Direction.ASC), probe("userId", ""));
+
+        // VerificationRepository.findByNomineeId
+        add("verification_requests", new Index().on("nomineeId", Sort.Direction.ASC), probe("nomineeId", ""));
+        // Review queue by status, newest first
+        add("verification_requests", new Index().on("status", Sort.Direction.ASC).on("submittedAt", Sort.Direction.DESC),
+                probe("status", "PENDING"), new Document("submittedAt", -1));
+        add("verification_requests", new Index().on("deathCertificateFileId", Sort.Direction.ASC), probe("deathCertificateFileId", ""));
+        // AssetReleaseService: approvals whose release job has not been created yet
+        add("verification_requests", new Index().on("releasePending", Sort.Direction.ASC).sparse(),
+                probe("releasePending", true).append("status", "APPROVED"));
+
+        // ActivityLogRepository.findAllByOrderByTimestampDesc and findByUserTypeOrderByTimestampDesc
+        add("activity_logs", new Index().on("timestamp", Sort.Direction.DESC), new Document(), new Document("timestamp", -1));
+        add("activity_logs", new Index().on("userType", Sort.Direction.ASC).on("timestamp", Sort.Direction.DESC),
+                probe("userType", "USER"), new Document("timestamp", -1));
+
+        // UploadSessionRepository.findByStatusAndUpdatedAtBefore; GC reference checks
+        add("upload_sessions", new Index().on("status", Sort.Direction.ASC).on("updatedAt", Sort.Direction.ASC),
+                probe("status", "OPEN").append("updatedAt", new Document("$lt", new Date())));
+        add("upload_sessions", new Index().on("fileId", Sort.Direction.ASC), probe("fileId", ""));
+        // StorageUsageService recounts the quota reservations of a user's open sessions
+        add("upload_sessions", new Index().on("userId", Sort.Direction.ASC).on("status", Sort.Direction.ASC),
+                probe("userId", "").append("status", new Document("$in", List.of("OPEN", "COMMITTING"))));
+
+        // AssetReleaseService claims the oldest runnable job
+        add("release_jobs", new Index().on("status", Sort.Direction.ASC).on("createdAt", Sort.Direction.ASC),
+                probe("status", new Document("$in", List.of("QUEUED", "RUNNING"))), new Document("createdAt", 1));
+
+        // AssetVersionService: history listing, and the orphan sweep's reference checks
+        add("asset_versions", new Index().on("assetId", Sort.Direction.ASC).on("version", Sort.Direction.DESC).unique(),
+                probe("assetId", ""), new Document("version", -1));
+        add("asset_versions", new Index().on("chunks.fileId", Sort.Direction.ASC), probe("chunks.fileId", ""));
+        add("asset_versions", new Index().on("fileId", Sort.Direction.ASC).sparse(), probe("fileId", ""));
+        // StorageUsageService recounts the bytes a user's superseded versions hold
+        add("asset_versions", new Index().on("userId", Sort.Direction.ASC),
+                probe("userId", "").append("storedBytes", new Document("$exists", true)));
+
+        // AssetVersionService drops the chunk entries of deleted containers
+        add("version_chunks", new Index().on("fileId", Sort.Direction.ASC), probe("fileId", ""));
+
+        // GridFsBlobStore.deleteOldCopies after a rebalance
+        add("blob_locations", new Index().on("movedAt", Sort.Direction.ASC).sparse(),
+                probe("movedAt", new Document("$lt", new Date())));
+
+        // StorageService reference counting
+        add("stored_blobs", new Index().on("fileId", Sort.Direction.ASC).unique(), probe("fileId", ""));
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void ensureIndexes() {
+        List<String> failures = new ArrayList<>();
+        for (Entry entry : entries) {
+            try {
+                mongoTemplate.indexOps(entry.collection).ensureIndex(entry.index);
+            } catch (RuntimeException e) {
+                failures.add(entry.collection + " " + entry.index.getIndexKeys().toJson());
+                log.error("Could not ensure index {} on {}: {}", entry.index.getIndexKeys().toJson(),
+                        entry.collection, e.getMessage());
+            }
+        }
+        if (!failures.isEmpty() && failOnError) {
+            throw new IllegalStateException("Missing indexes: " + failures);
+        }
+        log.info("Index catalog ensured: {} of {} indexes in place", entries.size() - failures.size(), entries.size());
+    }
+
+    /**
+     * Explains each entry's probe query and reports its winning plan.
+     * A probe with {@code collectionScan: true} means a query that entry
+     * serves is reading the whole collection.
+     */
+    public List<Map<String, Object>> explainProbes() {
+        List<Map<String, Object>> report = new ArrayList<>();
+        for (Entry entry : entries) {
+            Document find = new Document("find", entry.collection).append("filter", entry.probe);
+            if (entry.sort != null) {
+                find.append("sort", entry.sort);
+            }
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("collection", entry.collection);
+            result.put("index", entry.index.getIndexKeys());
+            result.put("probe", entry.probe);
+            try {
+                Document explain = mongoTemplate.executeCommand(
+                        new Document("explain", find).append("verbosity", "queryPlanner"));
+                Document winningPlan = explain.get("queryPlanner", Document.class).get("winningPlan", Document.class);
+                result.put("collectionScan", containsStage(winningPlan, "COLLSCAN"));
+                result.put("winningPlan", winningPlan);
+            } catch (RuntimeException e) {
+                result.put("error", e.getMessage());
+            }
+            report.add(result);
+        }
+        return report;
+    }
+
+    private boolean containsStage(Object plan, String stage) {
+        if (plan instanceof Document doc) {
+            if (stage.equals(doc.get("stage"))) {
+                return true;
+            }
+            return doc.values().stream().anyMatch(value -> containsStage(value, stage));
+        }
+        if (plan instanceof List<?> list) {
+            return list.stream().anyMatch(value -> containsStage(value, stage));
+        }
+        return false;
+    }
+
+    private void add(String collection, IndexDefinition index, Document probe) {
+        add(collection, index, probe, null);
+    }
+
+    private void add(String collection, IndexDefinition index, Document probe, Document sort) {
+        entries.add(new Entry(collection, index, probe, sort));
+    }
+
+    /**
+     * A text index behind an equality prefix, which the TextIndexDefinition builder cannot express
+     */
+    private static IndexDefinition textIndex(String name, Document keys, Document weights) {
+        Document options = new Document("name", name).append("weights", weights).append("default_language", "none");
+        return new IndexDefinition() {
+            @Override
+            public Document getIndexKeys() {
+                return keys;
+            }
+
+            @Override
+            public Document getIndexOptions() {
+                return options;
+            }
+        };
+    }
+
+    private static Document probe(String field, Object value) {
+        return new Document(field, value);
+    }
+
+    private record Entry(String collection, IndexDefinition index, Document probe, Document sort) {}
+}
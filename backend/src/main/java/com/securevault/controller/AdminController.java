@@ -1,15 +1,25 @@
 package com.securevault.controller;
 
+import com.securevault.config.IndexCatalog;
 import com.securevault.dto.AdminUserResponseDTO;
 import com.securevault.dto.VerificationRequestResponseDTO;
+import com.securevault.model.ReleaseJob;
+import com.securevault.model.StorageUsage;
 import com.securevault.model.User;
 import com.securevault.model.VerificationRequest;
 import com.securevault.model.ActivityLog;
+import com.securevault.model.BlobGcState;
 import com.securevault.repository.AssetRepository;
 import com.securevault.repository.NomineeRepository;
+import com.securevault.service.BlobCache;
+import com.securevault.service.BlobGarbageCollector;
+import com.securevault.service.BlobTieringService;
+import com.securevault.service.StorageUsageService;
 import com.securevault.service.UserService;
 import com.securevault.service.VerificationService;
+import com.securevault.service.impl.GridFsBlobStore;
 import com.securevault.service.ActivityLogService;
+import com.securevault.service.AssetReleaseService;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
@@ -29,15 +39,32 @@ public class AdminController {
     private final AssetRepository assetRepository;
     private final NomineeRepository nomineeRepository;
     private final ActivityLogService activityLogService;
+    private final BlobCache blobCache;
+    private final BlobGarbageCollector blobGarbageCollector;
+    private final GridFsBlobStore gridFsBlobStore;
+    private final BlobTieringService blobTieringService;
+    private final IndexCatalog indexCatalog;
+    private final StorageUsageService storageUsageService;
+    private final AssetReleaseService assetReleaseService;
 
     public AdminController(VerificationService verificationService, UserService userService, 
                            AssetRepository assetRepository, NomineeRepository nomineeRepository,
-                           ActivityLogService activityLogService) {
+                           ActivityLogService activityLogService, BlobCache blobCache,
+                           BlobGarbageCollector blobGarbageCollector, GridFsBlobStore gridFsBlobStore,
+                           BlobTieringService blobTieringService, IndexCatalog indexCatalog,
+                           StorageUsageService storageUsageService, AssetReleaseService assetReleaseService) {
         this.verificationService = verificationService;
         this.userService = userService;
         this.assetRepository = assetRepository;
         this.nomineeRepository = nomineeRepository;
         this.activityLogService = activityLogService;
+        this.blobCache = blobCache;
+        this.blobGarbageCollector = blobGarbageCollector;
+        this.gridFsBlobStore = gridFsBlobStore;
+        this.blobTieringService = blobTieringService;
+        this.indexCatalog = indexCatalog;
+        this.storageUsageService = storageUsageService;
+        this.assetReleaseService = assetReleaseService;
     }
 
     @GetMapping("/logs")
@@ -67,20 +94,45 @@ public class AdminController {
         return ResponseEntity.ok(updated);
     }
 
+    /**
+     * Progress of the asset release started by approving this request
+     */
+    @GetMapping("/verification-requests/{id}/release")
+    public ResponseEntity<ReleaseJob> getReleaseJob(@PathVariable String id) {
+        return ResponseEntity.ok(assetReleaseService.getJob(id));
+    }
+
+    /**
+     * Retries a release that gave up after max-attempts, from its last checkpoint
+     */
+    @PostMapping("/verification-requests/{id}/release/requeue")
+    public ResponseEntity<ReleaseJob> requeueReleaseJob(@PathVariable String id) {
+        return ResponseEntity.ok(assetReleaseService.requeue(id));
+    }
+
     @GetMapping("/users")
     public ResponseEntity<List<AdminUserResponseDTO>> getAllUsers() {
-        List<AdminUserResponseDTO> users = userService.getAllUsers()
+        List<User> allUsers = userService.getAllUsers();
+        // Asset counts come from the usage counters instead of loading every user's assets
+        Map<String, StorageUsage> usages = storageUsageService.getUsages(
+                allUsers.stream().map(User::getId).toList());
+        List<AdminUserResponseDTO> users = allUsers
                 .stream()
-                .map(u -> new AdminUserResponseDTO(
-                        u.getId(),
-                        u.getFullName(),
-                        u.getEmail(),
-                        u.getRole() != null ? u.getRole() : "USER",
-                        u.getLastLoginAt(),
-                        u.getInactivityDays(),
-                        (long) assetRepository.findByUserId(u.getId()).size(),
-                        (long) nomineeRepository.findByUserId(u.getId()).size()
-                ))
+                .map(u -> {
+                    StorageUsage usage = usages.getOrDefault(u.getId(), new StorageUsage(u.getId()));
+                    AdminUserResponseDTO dto = new AdminUserResponseDTO(
+                            u.getId(),
+                            u.getFullName(),
+                            u.getEmail(),
+                            u.getRole() != null ? u.getRole() : "USER",
+                            u.getLastLoginAt(),
+                            u.getInactivityDays(),
+                            usage.getFiles(),
+                            (long) nomineeRepository.findByUserId(u.getId()).size()
+                    );
+                    dto.setStorageBytes(usage.getBytes());
+                    return dto;
+                })
                 .collect(Collectors.toList());
 
         return ResponseEntity.ok(users);
@@ -103,4 +155,57 @@ public class AdminController {
         
         return ResponseEntity.ok(stats);
     }
+
+    @GetMapping("/storage/cache")
+    public ResponseEntity<Map<String, Object>> getStorageCacheStats() {
+        return ResponseEntity.ok(blobCache.getStats());
+    }
+
+    /**
+     * Progress and reclaimed bytes of the orphaned-file sweep, per storage backend
+     */
+    @GetMapping("/storage/gc")
+    public ResponseEntity<List<BlobGcState>> getStorageGcState() {
+        return ResponseEntity.ok(blobGarbageCollector.getStates());
+    }
+
+    /**
+     * Advance the orphaned-file sweep now instead of waiting for the schedule
+     */
+    @PostMapping("/storage/gc/run")
+    public ResponseEntity<List<BlobGcState>> runStorageGc() {
+        return ResponseEntity.ok(blobGarbageCollector.run());
+    }
+
+    /**
+     * Move GridFS files into the bucket their owner routes to, one batch per bucket
+     */
+    @PostMapping("/storage/gridfs/rebalance")
+    public ResponseEntity<Map<String, Object>> rebalanceGridFs(@RequestParam(defaultValue = "200") int limit) {
+        return ResponseEntity.ok(gridFsBlobStore.rebalance(Math.max(1, Math.min(limit, 1000))));
+    }
+
+    /**
+     * Archive the files of inactive users now instead of waiting for the schedule
+     */
+    @PostMapping("/storage/tiering/run")
+    public ResponseEntity<Map<String, Object>> runStorageTiering() {
+        return ResponseEntity.ok(blobTieringService.run());
+    }
+
+    /**
+     * Recount every user's storage usage now and correct drifted counters
+     */
+    @PostMapping("/storage/usage/reconcile")
+    public ResponseEntity<Map<String, Object>> reconcileStorageUsage() {
+        return ResponseEntity.ok(storageUsageService.reconcile());
+    }
+
+    /**
+     * Query plans of the index catalog's probe queries; any collectionScan: true needs attention
+     */
+    @GetMapping("/indexes")
+    public ResponseEntity<List<Map<String, Object>>> explainIndexes() {
+        return ResponseEntity.ok(indexCatalog.explainProbes());
+    }
 }
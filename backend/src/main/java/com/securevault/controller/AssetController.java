@@ -1,44 +1,264 @@
 package com.securevault.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.securevault.dto.AssetResponseDTO;
+import com.securevault.dto.BulkAssetOperationDTO;
+import com.securevault.dto.BulkOperationResultDTO;
 import com.securevault.model.Asset;
+import com.securevault.model.AssetVersion;
+import com.securevault.model.UploadSession;
+import com.securevault.service.AssetBulkService;
 import com.securevault.service.AssetService;
+import com.securevault.service.AssetVersionService;
+import com.securevault.service.AsyncUploadService;
+import com.securevault.service.ChunkedUploadService;
+import com.securevault.service.StorageUsageService;
 import com.securevault.security.SecurityUtils;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
 
 @RestController
 @RequestMapping("/assets")
 public class AssetController {
 
     private final AssetService assetService;
+    private final AssetBulkService assetBulkService;
+    private final AssetVersionService assetVersionService;
+    private final ChunkedUploadService chunkedUploadService;
+    private final AsyncUploadService asyncUploadService;
+    private final StorageUsageService storageUsageService;
     private final SecurityUtils securityUtils;
+    private final ObjectMapper objectMapper;
+    // Writes responses to a sparse fieldset without the unselected, null fields
+    private final ObjectMapper sparseMapper;
 
-    public AssetController(AssetService assetService, SecurityUtils securityUtils) {
+    // Upper bound for a single long-poll on an asset's upload status
+    private static final long MAX_STATUS_WAIT_MS = 30000;
+
+    private static final int MAX_PAGE_SIZE = 200;
+    private static final int MAX_BULK_OPERATIONS = 500;
+    private static final String NDJSON = "application/x-ndjson";
+
+    public AssetController(AssetService assetService, AssetBulkService assetBulkService,
+                           AssetVersionService assetVersionService, ChunkedUploadService chunkedUploadService,
+                           AsyncUploadService asyncUploadService, StorageUsageService storageUsageService,
+                           SecurityUtils securityUtils,
+                           ObjectMapper objectMapper) {
         this.assetService = assetService;
+        this.assetBulkService = assetBulkService;
+        this.assetVersionService = assetVersionService;
+        this.chunkedUploadService = chunkedUploadService;
+        this.asyncUploadService = asyncUploadService;
+        this.storageUsageService = storageUsageService;
         this.securityUtils = securityUtils;
+        this.objectMapper = objectMapper;
+        this.sparseMapper = objectMapper.copy().addMixIn(AssetResponseDTO.class, AssetResponseDTO.Sparse.class);
     }
 
+    /**
+     * Upload a file. With async=true the file is stored in the background:
+     * the response is 202 with the PENDING asset and a Location to poll,
+     * or 503 with Retry-After while the upload queue is full.
+     */
     @PostMapping(value = "/upload", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
     public ResponseEntity<Asset> uploadAsset(
             @RequestParam("nomineeId") String nomineeId,
             @RequestParam("description") String description,
-            @RequestParam("file") MultipartFile file) throws IOException {
+            @RequestParam("file") MultipartFile file,
+            @RequestParam(value = "async", defaultValue = "false") boolean async) throws IOException {
 
         String userId = securityUtils.getCurrentUserId();
+        if (async) {
+            Asset pending;
+            try {
+                pending = asyncUploadService.submit(userId, nomineeId, description, file);
+            } catch (RejectedExecutionException e) {
+                // Storing it on this thread would block the request the 202 is meant to spare
+                return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                        .header(HttpHeaders.RETRY_AFTER, "5")
+                        .build();
+            }
+            URI status = ServletUriComponentsBuilder.fromCurrentContextPath()
+                    .path("/assets/{assetId}/status")
+                    .buildAndExpand(pending.getId())
+                    .toUri();
+            return ResponseEntity.accepted().location(status).body(pending);
+        }
         Asset savedAsset = assetService.uploadAsset(userId, nomineeId, description, file);
         return ResponseEntity.ok(savedAsset);
     }
 
+    /**
+     * Upload state of an asset. With waitMs the request is held until the
+     * asset leaves PENDING or the wait runs out.
+     * GET /assets/{assetId}/status?waitMs=10000
+     */
+    @GetMapping("/{assetId}/status")
+    public DeferredResult<Asset> getUploadStatus(
+            @PathVariable String assetId,
+            @RequestParam(value = "waitMs", defaultValue = "0") long waitMs) {
+        String userId = securityUtils.getCurrentUserId();
+        return asyncUploadService.awaitCompletion(assetId, userId, Math.min(waitMs, MAX_STATUS_WAIT_MS));
+    }
+
+    /**
+     * Start a resumable upload. The response carries the session id and chunkSize.
+     * POST /assets/uploads
+     */
+    @PostMapping("/uploads")
+    public ResponseEntity<UploadSession> createUploadSession(
+            @RequestParam("nomineeId") String nomineeId,
+            @RequestParam("description") String description,
+            @RequestParam("fileName") String fileName,
+            @RequestParam("contentType") String contentType,
+            @RequestParam("totalSize") long totalSize) {
+
+        String userId = securityUtils.getCurrentUserId();
+        return ResponseEntity.ok(chunkedUploadService.createSession(userId, nomineeId, description, fileName, contentType, totalSize));
+    }
+
+    /**
+     * Upload progress; clients resume from nextChunkIndex / receivedBytes.
+     * GET /assets/uploads/{sessionId}
+     */
+    @GetMapping("/uploads/{sessionId}")
+    public ResponseEntity<UploadSession> getUploadSession(@PathVariable String sessionId) {
+        String userId = securityUtils.getCurrentUserId();
+        return ResponseEntity.ok(chunkedUploadService.getSession(sessionId, userId));
+    }
+
+    /**
+     * Send one chunk as the raw request body.
+     * PUT /assets/uploads/{sessionId}/chunks/{index}
+     */
+    @PutMapping(value = "/uploads/{sessionId}/chunks/{index}", consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public ResponseEntity<UploadSession> uploadChunk(
+            @PathVariable String sessionId,
+            @PathVariable int index,
+            HttpServletRequest request) throws IOException {
+
+        String userId = securityUtils.getCurrentUserId();
+        return ResponseEntity.ok(chunkedUploadService.uploadChunk(sessionId, userId, index, request.getInputStream()));
+    }
+
+    /**
+     * Finish the upload and create the asset.
+     * POST /assets/uploads/{sessionId}/commit
+     */
+    @PostMapping("/uploads/{sessionId}/commit")
+    public ResponseEntity<Asset> commitUpload(@PathVariable String sessionId) throws IOException {
+        String userId = securityUtils.getCurrentUserId();
+        return ResponseEntity.ok(chunkedUploadService.commit(sessionId, userId));
+    }
+
+    @DeleteMapping("/uploads/{sessionId}")
+    public ResponseEntity<Void> abortUpload(@PathVariable String sessionId) throws IOException {
+        String userId = securityUtils.getCurrentUserId();
+        chunkedUploadService.abort(sessionId, userId);
+        return ResponseEntity.noContent().build();
+    }
+
+    /**
+     * All assets, newest first. fields=fileName,nominees returns only those
+     * fields (and id); nominees are joined only when selected.
+     */
     @GetMapping("/my")
-    public ResponseEntity<List<AssetResponseDTO>> getMyAssets() {
+    public ResponseEntity<?> getMyAssets(
+            @RequestParam(value = "fields", required = false) String fields) {
+        String userId = securityUtils.getCurrentUserId();
+        return ResponseEntity.ok(sparse(assetService.getUserAssets(userId, fields), fields));
+    }
+
+    /**
+     * The same assets one page at a time, newest first. Pass the returned
+     * nextCursor as cursor to continue.
+     */
+    @GetMapping("/my/page")
+    public ResponseEntity<?> getMyAssetsPage(
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "limit", defaultValue = "50") int limit,
+            @RequestParam(value = "fileType", required = false) String fileType,
+            @RequestParam(value = "released", required = false) Boolean released,
+            @RequestParam(value = "fields", required = false) String fields) {
+        String userId = securityUtils.getCurrentUserId();
+        int pageSize = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        return ResponseEntity.ok(sparse(assetService.getUserAssetsPage(userId, cursor, pageSize, fileType, released, fields),
+                fields));
+    }
+
+    /**
+     * All assets as newline-delimited JSON (Accept: application/x-ndjson),
+     * written as they are read so large vaults never sit in memory
+     */
+    @GetMapping(value = "/my", produces = NDJSON)
+    public ResponseEntity<StreamingResponseBody> streamMyAssets(
+            @RequestParam(value = "fileType", required = false) String fileType,
+            @RequestParam(value = "released", required = false) Boolean released,
+            @RequestParam(value = "fields", required = false) String fields) {
+        String userId = securityUtils.getCurrentUserId();
+        ObjectMapper writer = isSparse(fields) ? sparseMapper : objectMapper;
+        StreamingResponseBody body = out -> assetService.streamUserAssets(userId, fileType, released, fields, dto -> {
+            try {
+                out.write(writer.writeValueAsBytes(dto));
+                out.write('\n');
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        return ResponseEntity.ok().contentType(MediaType.parseMediaType(NDJSON)).body(body);
+    }
+
+    /**
+     * Bytes and files stored, per content type, with the quota limits
+     * GET /assets/my/usage
+     */
+    @GetMapping("/my/usage")
+    public ResponseEntity<Map<String, Object>> getMyUsage() {
+        String userId = securityUtils.getCurrentUserId();
+        return ResponseEntity.ok(storageUsageService.getQuota(userId));
+    }
+
+    /**
+     * Search asset names, descriptions and nominee names by word prefix,
+     * best matches first. Pass the returned nextCursor as cursor to continue.
+     * GET /assets/search?q=tax ret
+     */
+    @GetMapping("/search")
+    public ResponseEntity<?> searchMyAssets(
+            @RequestParam("q") String q,
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "limit", defaultValue = "20") int limit,
+            @RequestParam(value = "fields", required = false) String fields) {
         String userId = securityUtils.getCurrentUserId();
-        return ResponseEntity.ok(assetService.getUserAssets(userId));
+        int pageSize = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        return ResponseEntity.ok(sparse(assetService.searchUserAssets(userId, q, cursor, pageSize, fields), fields));
+    }
+
+    /**
+     * A listing as JSON without the unselected fields when a sparse fieldset
+     * was asked for; full listings are returned as they are
+     */
+    private Object sparse(Object listing, String fields) {
+        return isSparse(fields) ? sparseMapper.valueToTree(listing) : listing;
+    }
+
+    private boolean isSparse(String fields) {
+        return fields != null && !fields.isBlank();
     }
 
     @GetMapping("/{assetId}")
@@ -61,6 +281,59 @@ public class AssetController {
         return ResponseEntity.ok(updatedAsset);
     }
 
+    /**
+     * Replace the asset's file with a new version. The previous content stays
+     * downloadable from the version history.
+     */
+    @PostMapping(value = "/{assetId}/versions", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<AssetVersion> uploadVersion(
+            @PathVariable String assetId,
+            @RequestParam("file") MultipartFile file) throws IOException {
+        String userId = securityUtils.getCurrentUserId();
+        return ResponseEntity.ok(assetVersionService.uploadVersion(assetId, userId, file));
+    }
+
+    @GetMapping("/{assetId}/versions")
+    public ResponseEntity<List<AssetVersion>> listVersions(@PathVariable String assetId) {
+        String userId = securityUtils.getCurrentUserId();
+        return ResponseEntity.ok(assetVersionService.listVersions(assetId, userId));
+    }
+
+    /**
+     * Download one version of the asset, reassembled from its chunks if it
+     * is no longer current.
+     */
+    @GetMapping("/{assetId}/versions/{version}")
+    public ResponseEntity<StreamingResponseBody> downloadVersion(
+            @PathVariable String assetId,
+            @PathVariable int version) {
+        String userId = securityUtils.getCurrentUserId();
+        AssetVersion found = assetVersionService.getVersion(assetId, userId, version);
+        StreamingResponseBody body = out -> assetVersionService.copyContent(found, out);
+        MediaType contentType = found.getFileType() != null
+                ? MediaType.parseMediaType(found.getFileType())
+                : MediaType.APPLICATION_OCTET_STREAM;
+        return ResponseEntity.ok()
+                .contentType(contentType)
+                .contentLength(found.getSize())
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + found.getFileName() + "\"")
+                .body(body);
+    }
+
+    /**
+     * Apply up to MAX_BULK_OPERATIONS deletes, description updates and nominee
+     * (un)assignments at once. Each item gets its own result; failures do not
+     * stop the others.
+     */
+    @PostMapping("/bulk")
+    public ResponseEntity<List<BulkOperationResultDTO>> bulkUpdate(@RequestBody List<BulkAssetOperationDTO> operations) {
+        if (operations.size() > MAX_BULK_OPERATIONS) {
+            throw new RuntimeException("At most " + MAX_BULK_OPERATIONS + " operations per request");
+        }
+        String userId = securityUtils.getCurrentUserId();
+        return ResponseEntity.ok(assetBulkService.apply(userId, operations));
+    }
+
     @DeleteMapping("/{assetId}")
     public ResponseEntity<Void> deleteAsset(@PathVariable String assetId) {
         String userId = securityUtils.getCurrentUserId();
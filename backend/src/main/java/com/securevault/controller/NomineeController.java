@@ -1,7 +1,10 @@
 package com.securevault.controller;
 
+import com.securevault.dto.BulkAssetOperationDTO;
+import com.securevault.dto.BulkOperationResultDTO;
 import com.securevault.model.Asset;
 import com.securevault.model.Nominee;
+import com.securevault.service.AssetBulkService;
 import com.securevault.service.AssetService;
 import com.securevault.service.NomineeService;
 import com.securevault.security.SecurityUtils;
@@ -9,6 +12,7 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import jakarta.validation.Valid;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
@@ -18,11 +22,17 @@ public class NomineeController {
 
     private final NomineeService nomineeService;
     private final AssetService assetService;
+    private final AssetBulkService assetBulkService;
     private final SecurityUtils securityUtils;
 
-    public NomineeController(NomineeService nomineeService, AssetService assetService, SecurityUtils securityUtils) {
+    // Same bound as POST /assets/bulk
+    private static final int MAX_BULK_ASSETS = 500;
+
+    public NomineeController(NomineeService nomineeService, AssetService assetService,
+                             AssetBulkService assetBulkService, SecurityUtils securityUtils) {
         this.nomineeService = nomineeService;
         this.assetService = assetService;
+        this.assetBulkService = assetBulkService;
         this.securityUtils = securityUtils;
     }
 
@@ -93,4 +103,24 @@ public class NomineeController {
             "nomineeIds", updatedAsset.getNomineeIds()
         ));
     }
-}
\ No newline at end of file
+
+    /**
+     * Assign a nominee to, and remove it from, many assets in one request.
+     * POST /nominees/{nomineeId}/assets  {"assign": [assetIds], "unassign": [assetIds]}
+     */
+    @PostMapping("/{nomineeId}/assets")
+    public ResponseEntity<List<BulkOperationResultDTO>> bulkAssign(
+            @PathVariable String nomineeId,
+            @RequestBody Map<String, List<String>> assetIds) {
+        List<BulkAssetOperationDTO> operations = new ArrayList<>();
+        assetIds.getOrDefault("assign", List.of()).forEach(assetId ->
+                operations.add(new BulkAssetOperationDTO(AssetBulkService.ASSIGN_NOMINEE, assetId, null, nomineeId)));
+        assetIds.getOrDefault("unassign", List.of()).forEach(assetId ->
+                operations.add(new BulkAssetOperationDTO(AssetBulkService.UNASSIGN_NOMINEE, assetId, null, nomineeId)));
+        if (operations.size() > MAX_BULK_ASSETS) {
+            throw new RuntimeException("At most " + MAX_BULK_ASSETS + " assets per request");
+        }
+        String userId = securityUtils.getCurrentUserId();
+        return ResponseEntity.ok(assetBulkService.apply(userId, operations));
+    }
+}
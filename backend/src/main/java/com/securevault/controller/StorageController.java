@@ -1,37 +1,329 @@
 package com.securevault.controller;
 
+import com.securevault.service.BlobInfo;
+import com.securevault.service.BlobTieringService;
+import com.securevault.service.PreviewService;
 import com.securevault.service.StorageService;
-import org.springframework.core.io.Resource;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.util.MimeTypeUtils;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
-import org.springframework.data.mongodb.gridfs.GridFsResource;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 @RestController
 @RequestMapping("/api/storage")
 public class StorageController {
 
+    // Stored files never change once written, so clients may keep them for a year.
+    // Private: vault contents must not end up in shared caches.
+    private static final CacheControl IMMUTABLE_CACHE = CacheControl.maxAge(365, TimeUnit.DAYS).cachePrivate().immutable();
+    // More ranges than any resumable download or media player asks for;
+    // longer lists are answered with 416 rather than seeking once per range
+    static final int MAX_RANGES = 16;
+
     private final StorageService storageService;
+    private final PreviewService previewService;
+    private final BlobTieringService blobTieringService;
 
-    public StorageController(StorageService storageService) {
+    public StorageController(StorageService storageService, PreviewService previewService,
+                             BlobTieringService blobTieringService) {
         this.storageService = storageService;
+        this.previewService = previewService;
+        this.blobTieringService = blobTieringService;
+    }
+
+    /**
+     * Small JPEG preview of a stored image, or 404 if it has none (yet)
+     */
+    @GetMapping("/{fileId}/preview")
+    public ResponseEntity<StreamingResponseBody> getPreview(@PathVariable String fileId,
+                                                            @RequestHeader HttpHeaders requestHeaders) {
+        String previewFileId = previewService.findPreviewFileId(fileId);
+        if (previewFileId == null) {
+            return ResponseEntity.notFound().build();
+        }
+        BlobInfo preview = storageService.getFileMetadata(previewFileId);
+        if (isNotModified(requestHeaders, preview)) {
+            return notModified(preview);
+        }
+        long length = storageService.getContentLength(preview);
+        StreamingResponseBody body = out -> storageService.copyRange(preview, 0, length - 1, out);
+        ResponseEntity.BodyBuilder builder = ResponseEntity.ok()
+                .cacheControl(IMMUTABLE_CACHE)
+                .eTag(etag(preview, null));
+        if (preview.getUploadDate() != null) {
+            builder.lastModified(preview.getUploadDate().toInstant());
+        }
+        return builder
+                .contentType(MediaType.parseMediaType(storageService.getContentType(preview)))
+                .contentLength(length)
+                .body(body);
     }
 
+    /**
+     * Download a stored file. Supports single and multiple byte ranges
+     * (RFC 7233) so interrupted downloads can resume where they stopped.
+     * Overlapping and adjacent ranges are coalesced, so no byte is sent twice.
+     * Files stored compressed are sent as-is with Content-Encoding to clients
+     * that accept it, and inflated on the fly for everyone else.
+     * Conditional requests are answered with 304 from the file's metadata alone.
+     * Archived files are sent from the archive while they are moved back to
+     * the hot store in the background.
+     */
     @GetMapping("/{fileId}")
-    public ResponseEntity<Resource> getFile(@PathVariable String fileId) {
-        GridFsResource resource = storageService.getFileResource(fileId);
-        
+    public ResponseEntity<StreamingResponseBody> getFile(
+            @PathVariable String fileId,
+            @RequestHeader HttpHeaders requestHeaders,
+            HttpServletRequest request) throws IOException {
+
+        BlobInfo file = storageService.getFileMetadata(fileId);
+        if (isNotModified(requestHeaders, file)) {
+            return notModified(file);
+        }
+        blobTieringService.recordAccess(fileId);
+        blobTieringService.rehydrateInBackground(file);
+        long length = storageService.getContentLength(file);
+        String contentType = storageService.getContentType(file);
+
+        List<HttpRange> ranges;
         try {
-            return ResponseEntity.ok()
-                    .contentType(MediaType.parseMediaType(resource.getContentType()))
-                    .header(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=\"" + resource.getFilename() + "\"")
-                    .body(resource);
-        } catch (Exception e) {
-            return ResponseEntity.internalServerError().build();
+            ranges = isIfRangeSatisfied(requestHeaders, file) ? requestHeaders.getRange() : List.of();
+        } catch (IllegalArgumentException e) {
+            return rangeNotSatisfiable(length);
+        }
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.ACCEPT_RANGES, "bytes");
+        headers.set(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=\"" + file.getFileName() + "\"");
+        headers.setCacheControl(IMMUTABLE_CACHE);
+        headers.setETag(etag(file, null));
+        if (file.getUploadDate() != null) {
+            headers.setLastModified(file.getUploadDate().toInstant());
+        }
+        String encoding = storageService.getContentEncoding(file);
+        if (encoding != null) {
+            headers.setVary(List.of(HttpHeaders.ACCEPT_ENCODING));
         }
+
+        // No Range header — send the whole file
+        if (ranges.isEmpty()) {
+            headers.setContentType(MediaType.parseMediaType(contentType));
+            if (encoding != null && acceptsEncoding(requestHeaders, encoding)) {
+                headers.set(HttpHeaders.CONTENT_ENCODING, encoding);
+                // Each content coding is a different representation and needs its own strong ETag
+                headers.setETag(etag(file, encoding));
+                headers.setContentLength(storageService.getEncodedLength(file));
+                StreamingResponseBody body = out -> storageService.copyEncoded(file, out);
+                return new ResponseEntity<>(body, headers, HttpStatus.OK);
+            }
+            headers.setContentLength(length);
+            if (length > 0 && useSendfile(request, file, 0, length - 1)) {
+                return new ResponseEntity<>(headers, HttpStatus.OK);
+            }
+            StreamingResponseBody body = out -> {
+                if (length > 0) {
+                    storageService.copyRange(file, 0, length - 1, out);
+                }
+            };
+            return new ResponseEntity<>(body, headers, HttpStatus.OK);
+        }
+
+        List<long[]> bounds = coalesce(ranges, length);
+        if (bounds.isEmpty() || bounds.size() > MAX_RANGES) {
+            return rangeNotSatisfiable(length);
+        }
+
+        // Single range — plain 206 with Content-Range
+        if (bounds.size() == 1) {
+            long start = bounds.get(0)[0];
+            long end = bounds.get(0)[1];
+            headers.setContentType(MediaType.parseMediaType(contentType));
+            headers.setContentLength(end - start + 1);
+            headers.set(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + length);
+            if (useSendfile(request, file, start, end)) {
+                return new ResponseEntity<>(headers, HttpStatus.PARTIAL_CONTENT);
+            }
+            StreamingResponseBody body = out -> storageService.copyRange(file, start, end, out);
+            return new ResponseEntity<>(body, headers, HttpStatus.PARTIAL_CONTENT);
+        }
+
+        // Multiple ranges — multipart/byteranges, each part seeks independently
+        String boundary = MimeTypeUtils.generateMultipartBoundaryString();
+        headers.set(HttpHeaders.CONTENT_TYPE, "multipart/byteranges; boundary=" + boundary);
+        StreamingResponseBody body = out -> {
+            for (long[] range : bounds) {
+                String partHeader = "\r\n--" + boundary + "\r\n"
+                        + HttpHeaders.CONTENT_TYPE + ": " + contentType + "\r\n"
+                        + HttpHeaders.CONTENT_RANGE + ": bytes " + range[0] + "-" + range[1] + "/" + length + "\r\n\r\n";
+                out.write(partHeader.getBytes(StandardCharsets.US_ASCII));
+                storageService.copyRange(file, range[0], range[1], out);
+            }
+            out.write(("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.US_ASCII));
+        };
+        return new ResponseEntity<>(body, headers, HttpStatus.PARTIAL_CONTENT);
+    }
+
+    /**
+     * Resolves the requested ranges against the file length, drops the ones
+     * that start past the end, and merges overlapping or adjacent ones
+     * (RFC 7233 section 4.1). The result is in ascending order.
+     */
+    static List<long[]> coalesce(List<HttpRange> ranges, long length) {
+        List<long[]> bounds = new ArrayList<>();
+        for (HttpRange range : ranges) {
+            long start = range.getRangeStart(length);
+            long end = range.getRangeEnd(length);
+            if (start < length && end >= start) {
+                bounds.add(new long[] { start, end });
+            }
+        }
+        bounds.sort(Comparator.comparingLong(range -> range[0]));
+        List<long[]> merged = new ArrayList<>();
+        for (long[] range : bounds) {
+            long[] last = merged.isEmpty() ? null : merged.get(merged.size() - 1);
+            if (last != null && range[0] <= last[1] + 1) {
+                last[1] = Math.max(last[1], range[1]);
+            } else {
+                merged.add(range);
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * Hands the byte range to Tomcat's sendfile support when the file sits
+     * unencrypted on local disk, so the kernel copies it straight to the socket.
+     * Tomcat sends the file after the handler returns a body-less response.
+     */
+    private boolean useSendfile(HttpServletRequest request, BlobInfo file, long start, long end) {
+        if (!Boolean.TRUE.equals(request.getAttribute("org.apache.tomcat.sendfile.support"))) {
+            return false;
+        }
+        Path path = storageService.getSendfilePath(file);
+        if (path == null) {
+            return false;
+        }
+        request.setAttribute("org.apache.tomcat.sendfile.filename", path.toString());
+        request.setAttribute("org.apache.tomcat.sendfile.start", start);
+        request.setAttribute("org.apache.tomcat.sendfile.end", end + 1);
+        return true;
+    }
+
+    /**
+     * Strong ETag of a stored file. Files are immutable and their ObjectId is
+     * never reused, so the id alone identifies the bytes.
+     */
+    private String etag(BlobInfo file, String encoding) {
+        return "\"" + file.getFileId() + (encoding != null ? "-" + encoding : "") + "\"";
+    }
+
+    private long lastModified(BlobInfo file) {
+        return file.getUploadDate() != null ? file.getUploadDate().getTime() : -1;
+    }
+
+    /**
+     * RFC 7232 precedence: If-None-Match decides when present (weak comparison,
+     * any representation of the file matches), otherwise If-Modified-Since
+     */
+    private boolean isNotModified(HttpHeaders requestHeaders, BlobInfo file) {
+        List<String> ifNoneMatch = requestHeaders.getIfNoneMatch();
+        if (!ifNoneMatch.isEmpty()) {
+            return ifNoneMatch.stream().anyMatch(tag -> matchesFile(tag, file));
+        }
+        long ifModifiedSince = requestHeaders.getIfModifiedSince();
+        long lastModified = lastModified(file);
+        // HTTP dates have second precision
+        return ifModifiedSince != -1 && lastModified != -1 && lastModified / 1000 <= ifModifiedSince / 1000;
+    }
+
+    /**
+     * If-Range: the Range header only applies if the validator still matches,
+     * otherwise the whole file is sent. Uses strong comparison.
+     */
+    private boolean isIfRangeSatisfied(HttpHeaders requestHeaders, BlobInfo file) {
+        String ifRange = requestHeaders.getFirst(HttpHeaders.IF_RANGE);
+        if (ifRange == null) {
+            return true;
+        }
+        if (ifRange.startsWith("\"")) {
+            return ifRange.equals(etag(file, null));
+        }
+        long date = requestHeaders.getFirstDate(HttpHeaders.IF_RANGE);
+        return date != -1 && date / 1000 == lastModified(file) / 1000;
+    }
+
+    private boolean matchesFile(String tag, BlobInfo file) {
+        if (tag.equals("*")) {
+            return true;
+        }
+        String opaque = tag.startsWith("W/") ? tag.substring(2) : tag;
+        String base = "\"" + file.getFileId();
+        return opaque.equals(base + "\"") || (opaque.startsWith(base + "-") && opaque.endsWith("\""));
+    }
+
+    private ResponseEntity<StreamingResponseBody> notModified(BlobInfo file) {
+        ResponseEntity.BodyBuilder builder = ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                .cacheControl(IMMUTABLE_CACHE)
+                .eTag(etag(file, null));
+        if (storageService.getContentEncoding(file) != null) {
+            builder.varyBy(HttpHeaders.ACCEPT_ENCODING);
+        }
+        if (file.getUploadDate() != null) {
+            builder.lastModified(file.getUploadDate().toInstant());
+        }
+        return builder.build();
+    }
+
+    /**
+     * Whether the Accept-Encoding header lists the coding with a non-zero q-value.
+     * Ranges are always served from the identity coding, so this only matters
+     * for full downloads.
+     */
+    private boolean acceptsEncoding(HttpHeaders requestHeaders, String encoding) {
+        for (String header : requestHeaders.getOrEmpty(HttpHeaders.ACCEPT_ENCODING)) {
+            for (String entry : header.split(",")) {
+                String[] parts = entry.trim().split(";");
+                String coding = parts[0].trim();
+                if (!coding.equalsIgnoreCase(encoding) && !coding.equals("*")) {
+                    continue;
+                }
+                boolean rejected = false;
+                for (int i = 1; i < parts.length; i++) {
+                    String param = parts[i].trim();
+                    if (param.startsWith("q=")) {
+                        try {
+                            rejected = Double.parseDouble(param.substring(2)) <= 0;
+                        } catch (NumberFormatException e) {
+                            rejected = true;
+                        }
+                    }
+                }
+                return !rejected;
+            }
+        }
+        return false;
+    }
+
+    private ResponseEntity<StreamingResponseBody> rangeNotSatisfiable(long length) {
+        return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE)
+                .header(HttpHeaders.CONTENT_RANGE, "bytes */" + length)
+                .build();
     }
 }
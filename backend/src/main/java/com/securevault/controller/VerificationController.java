@@ -3,12 +3,16 @@ package com.securevault.controller;
 import com.securevault.model.Nominee;
 import com.securevault.model.User;
 import com.securevault.model.VerificationRequest;
+import com.securevault.service.AssetExportService;
 import com.securevault.service.NomineeService;
 import com.securevault.service.UserService;
 import com.securevault.service.VerificationService;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.io.IOException;
 import java.time.LocalDateTime;
@@ -22,11 +26,14 @@ public class VerificationController {
     private final VerificationService verificationService;
     private final NomineeService nomineeService;
     private final UserService userService;
+    private final AssetExportService assetExportService;
 
-    public VerificationController(VerificationService verificationService, NomineeService nomineeService, UserService userService) {
+    public VerificationController(VerificationService verificationService, NomineeService nomineeService,
+                                  UserService userService, AssetExportService assetExportService) {
         this.verificationService = verificationService;
         this.nomineeService = nomineeService;
         this.userService = userService;
+        this.assetExportService = assetExportService;
     }
 
     /**
@@ -88,4 +95,19 @@ public class VerificationController {
         Map<String, Object> status = verificationService.getVerificationStatus(token);
         return ResponseEntity.ok(status);
     }
+
+    /**
+     * Download every asset assigned to the nominee as one ZIP, once their
+     * claim is approved. The archive is streamed as it is built; files that
+     * cannot be read are listed in MISSING_FILES.txt inside it.
+     */
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> exportAssets(@RequestParam String token) {
+        AssetExportService.Export export = assetExportService.prepareExport(token);
+        StreamingResponseBody body = out -> assetExportService.writeZip(token, export, out);
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType("application/zip"))
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"assets.zip\"")
+                .body(body);
+    }
 }
\ No newline at end of file
@@ -22,6 +22,7 @@ public class AdminUserResponseDTO {
     private Integer inactivityDays;
     private Long assetCount;
     private Long nomineeCount;
+    private Long storageBytes;
     
     public AdminUserResponseDTO(
             String id,
@@ -42,4 +43,7 @@ public class AdminUserResponseDTO {
         this.assetCount = assetCount;
         this.nomineeCount = nomineeCount;
     }
+
+    public Long getStorageBytes() { return storageBytes; }
+    public void setStorageBytes(Long storageBytes) { this.storageBytes = storageBytes; }
 }
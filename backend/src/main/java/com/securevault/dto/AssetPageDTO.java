@@ -0,0 +1,24 @@
+package com.securevault.dto;
+
+import java.util.List;
+
+/**
+ * One page of a user's assets. Pass nextCursor back to get the following
+ * page; it is null on the last page.
+ */
+public class AssetPageDTO {
+    private List<AssetResponseDTO> items;
+    private String nextCursor;
+
+    public AssetPageDTO() {}
+
+    public AssetPageDTO(List<AssetResponseDTO> items, String nextCursor) {
+        this.items = items;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<AssetResponseDTO> getItems() { return items; }
+    public void setItems(List<AssetResponseDTO> items) { this.items = items; }
+    public String getNextCursor() { return nextCursor; }
+    public void setNextCursor(String nextCursor) { this.nextCursor = nextCursor; }
+}
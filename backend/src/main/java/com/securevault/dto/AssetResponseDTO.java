@@ -1,22 +1,35 @@
 package com.securevault.dto;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.securevault.model.AssetState;
+
 import java.time.LocalDateTime;
-import java.util.ArrayList;
 import java.util.List;
 
 public class AssetResponseDTO {
+
+    /**
+     * Mix-in for responses to a sparse fieldset: unselected fields are null
+     * and are left out of the JSON. Full listings keep every field.
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public interface Sparse {}
+
     private String id;
     private String fileName;
     private String fileType;
     private Long fileSize;
     private String description;
     private String fileId;
+    private String previewFileId;
 
     // Multiple nominees support
     private List<NomineeInfo> nominees;
 
     private LocalDateTime uploadedAt;
     private Boolean isReleased;
+    private AssetState state;
+    private LocalDateTime archivedAt;
 
     public static class NomineeInfo {
         private String id;
@@ -64,7 +77,10 @@ public class AssetResponseDTO {
     public String getFileId() { return fileId; }
     public void setFileId(String fileId) { this.fileId = fileId; }
 
-    public List<NomineeInfo> getNominees() { return nominees != null ? nominees : new ArrayList<>(); }
+    public String getPreviewFileId() { return previewFileId; }
+    public void setPreviewFileId(String previewFileId) { this.previewFileId = previewFileId; }
+
+    public List<NomineeInfo> getNominees() { return nominees; }
     public void setNominees(List<NomineeInfo> nominees) { this.nominees = nominees; }
 
     public LocalDateTime getUploadedAt() { return uploadedAt; }
@@ -72,4 +88,10 @@ public class AssetResponseDTO {
 
     public Boolean getIsReleased() { return isReleased; }
     public void setIsReleased(Boolean isReleased) { this.isReleased = isReleased; }
+
+    public AssetState getState() { return state; }
+    public void setState(AssetState state) { this.state = state; }
+
+    public LocalDateTime getArchivedAt() { return archivedAt; }
+    public void setArchivedAt(LocalDateTime archivedAt) { this.archivedAt = archivedAt; }
 }
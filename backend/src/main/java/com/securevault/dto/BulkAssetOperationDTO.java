@@ -0,0 +1,31 @@
+package com.securevault.dto;
+
+/**
+ * One item of a bulk asset request.
+ * op is DELETE, UPDATE_DESCRIPTION, ASSIGN_NOMINEE or UNASSIGN_NOMINEE;
+ * description and nomineeId are only read by the ops that need them.
+ */
+public class BulkAssetOperationDTO {
+    private String op;
+    private String assetId;
+    private String description;
+    private String nomineeId;
+
+    public BulkAssetOperationDTO() {}
+
+    public BulkAssetOperationDTO(String op, String assetId, String description, String nomineeId) {
+        this.op = op;
+        this.assetId = assetId;
+        this.description = description;
+        this.nomineeId = nomineeId;
+    }
+
+    public String getOp() { return op; }
+    public void setOp(String op) { this.op = op; }
+    public String getAssetId() { return assetId; }
+    public void setAssetId(String assetId) { this.assetId = assetId; }
+    public String getDescription() { return description; }
+    public void setDescription(String description) { this.description = description; }
+    public String getNomineeId() { return nomineeId; }
+    public void setNomineeId(String nomineeId) { this.nomineeId = nomineeId; }
+}
@@ -0,0 +1,29 @@
+package com.securevault.dto;
+
+/**
+ * Outcome of one item of a bulk request, in request order
+ */
+public class BulkOperationResultDTO {
+    private String op;
+    private String assetId;
+    private boolean success;
+    private String error;
+
+    public BulkOperationResultDTO() {}
+
+    public BulkOperationResultDTO(String op, String assetId, boolean success, String error) {
+        this.op = op;
+        this.assetId = assetId;
+        this.success = success;
+        this.error = error;
+    }
+
+    public String getOp() { return op; }
+    public void setOp(String op) { this.op = op; }
+    public String getAssetId() { return assetId; }
+    public void setAssetId(String assetId) { this.assetId = assetId; }
+    public boolean isSuccess() { return success; }
+    public void setSuccess(boolean success) { this.success = success; }
+    public String getError() { return error; }
+    public void setError(String error) { this.error = error; }
+}
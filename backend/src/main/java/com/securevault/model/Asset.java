@@ -1,5 +1,6 @@
 package com.securevault.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -28,6 +29,13 @@ public class Asset {
     @NotBlank(message = "File ID is required")
     private String fileId;
 
+    // Small JPEG rendition of fileId, generated in the background for images
+    private String previewFileId;
+    // Stored size of the preview, counted in the owner's storage usage
+    private Long previewSize;
+    // Set when the image could not be previewed, so the preview sweep skips it
+    private Boolean previewUnavailable;
+
     private Long fileSize;
     private String description;
 
@@ -38,6 +46,34 @@ public class Asset {
 
     private LocalDateTime uploadedAt = LocalDateTime.now();
     private Boolean isReleased = false;
+    // Set by AssetReleaseService when an approved claim releases the asset
+    private LocalDateTime releasedAt;
+
+    // Null on assets created before async uploads existed, which are all UPLOADED
+    private AssetState state;
+    private String failureReason;
+    // While PENDING: renewed by the node storing the upload; once it lapses the upload is lost
+    @JsonIgnore
+    private LocalDateTime uploadLeaseUntil;
+    // Set by a bulk delete between claiming the asset and removing it; see AssetBulkService
+    @JsonIgnore
+    private String deleteClaim;
+    @JsonIgnore
+    private LocalDateTime deleteClaimUntil;
+
+    // Set while fileId lives in the cold archive store; reading the file brings it back
+    private LocalDateTime archivedAt;
+    // Last download, at day resolution; drives cold-tier archival
+    private LocalDateTime lastAccessedAt;
+
+    // Word prefixes behind the asset search text index, kept by AssetSearchIndexer
+    @JsonIgnore
+    private String searchName;
+    @JsonIgnore
+    private String searchDescription;
+    // One entry per nominee, led by its id, so a nominee's terms can be added and pulled in place
+    @JsonIgnore
+    private List<String> searchNominees;
 
     // Standard getters and setters
     public String getId() { return id; }
@@ -52,6 +88,15 @@ public class Asset {
     public String getFileId() { return fileId; }
     public void setFileId(String fileId) { this.fileId = fileId; }
 
+    public String getPreviewFileId() { return previewFileId; }
+    public void setPreviewFileId(String previewFileId) { this.previewFileId = previewFileId; }
+
+    public Long getPreviewSize() { return previewSize; }
+    public void setPreviewSize(Long previewSize) { this.previewSize = previewSize; }
+
+    public Boolean getPreviewUnavailable() { return previewUnavailable; }
+    public void setPreviewUnavailable(Boolean previewUnavailable) { this.previewUnavailable = previewUnavailable; }
+
     public Long getFileSize() { return fileSize; }
     public void setFileSize(Long fileSize) { this.fileSize = fileSize; }
 
@@ -69,4 +114,37 @@ public class Asset {
 
     public Boolean getIsReleased() { return isReleased; }
     public void setIsReleased(Boolean isReleased) { this.isReleased = isReleased; }
+
+    public LocalDateTime getReleasedAt() { return releasedAt; }
+    public void setReleasedAt(LocalDateTime releasedAt) { this.releasedAt = releasedAt; }
+
+    public AssetState getState() { return state != null ? state : AssetState.UPLOADED; }
+    public void setState(AssetState state) { this.state = state; }
+
+    public String getFailureReason() { return failureReason; }
+    public void setFailureReason(String failureReason) { this.failureReason = failureReason; }
+
+    public LocalDateTime getArchivedAt() { return archivedAt; }
+    public void setArchivedAt(LocalDateTime archivedAt) { this.archivedAt = archivedAt; }
+
+    public LocalDateTime getUploadLeaseUntil() { return uploadLeaseUntil; }
+    public void setUploadLeaseUntil(LocalDateTime uploadLeaseUntil) { this.uploadLeaseUntil = uploadLeaseUntil; }
+
+    public String getDeleteClaim() { return deleteClaim; }
+    public void setDeleteClaim(String deleteClaim) { this.deleteClaim = deleteClaim; }
+
+    public LocalDateTime getDeleteClaimUntil() { return deleteClaimUntil; }
+    public void setDeleteClaimUntil(LocalDateTime deleteClaimUntil) { this.deleteClaimUntil = deleteClaimUntil; }
+
+    public LocalDateTime getLastAccessedAt() { return lastAccessedAt; }
+    public void setLastAccessedAt(LocalDateTime lastAccessedAt) { this.lastAccessedAt = lastAccessedAt; }
+
+    public String getSearchName() { return searchName; }
+    public void setSearchName(String searchName) { this.searchName = searchName; }
+
+    public String getSearchDescription() { return searchDescription; }
+    public void setSearchDescription(String searchDescription) { this.searchDescription = searchDescription; }
+
+    public List<String> getSearchNominees() { return searchNominees; }
+    public void setSearchNominees(List<String> searchNominees) { this.searchNominees = searchNominees; }
 }
@@ -1,7 +1,11 @@
 package com.securevault.model;
 
 public enum AssetState {
+    // Accepted by an async upload; the file is still being written to storage
+    PENDING,
     UPLOADED,
     VERIFIED,
-    RELEASED
+    RELEASED,
+    // An async upload could not be written; see Asset.failureReason
+    FAILED
 }
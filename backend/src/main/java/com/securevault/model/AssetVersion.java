@@ -0,0 +1,85 @@
+package com.securevault.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * One version of an asset's content. The current version points at the
+ * asset's full stored file; once superseded it is split into
+ * content-defined chunks, packed into container files, and the version
+ * keeps only the list of chunks. Chunks are deduplicated per owner, so unchanged parts of a document are
+ * stored once however many versions share them.
+ */
+@Document(collection = "asset_versions")
+public class AssetVersion {
+    @Id
+    private String id;
+
+    private String assetId;
+    private String userId;
+    private int version; // 1 for the first upload, unique per asset
+
+    private String fileName;
+    private String fileType;
+    private long size;
+
+    // Set while this is the current version: the asset's own file, not a separate reference
+    private String fileId;
+    // Set once superseded: the content in order, each entry holding one reference to the file it is in
+    @JsonIgnore
+    private List<ChunkRef> chunks;
+    // Bytes this version added to the owner's usage once superseded: the chunks
+    // it newly stored, or its whole file if it could not be chunked. Null while current.
+    private Long storedBytes;
+
+    private LocalDateTime createdAt;
+
+    public static class ChunkRef {
+        private String fileId;
+        private long offset; // into a container of chunks; 0 for chunks stored as their own file
+        private int length;
+
+        public ChunkRef() {}
+
+        public ChunkRef(String fileId, long offset, int length) {
+            this.fileId = fileId;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        public String getFileId() { return fileId; }
+        public void setFileId(String fileId) { this.fileId = fileId; }
+        public long getOffset() { return offset; }
+        public void setOffset(long offset) { this.offset = offset; }
+        public int getLength() { return length; }
+        public void setLength(int length) { this.length = length; }
+    }
+
+    public String getId() { return id; }
+    public void setId(String id) { this.id = id; }
+    public String getAssetId() { return assetId; }
+    public void setAssetId(String assetId) { this.assetId = assetId; }
+    public String getUserId() { return userId; }
+    public void setUserId(String userId) { this.userId = userId; }
+    public int getVersion() { return version; }
+    public void setVersion(int version) { this.version = version; }
+    public String getFileName() { return fileName; }
+    public void setFileName(String fileName) { this.fileName = fileName; }
+    public String getFileType() { return fileType; }
+    public void setFileType(String fileType) { this.fileType = fileType; }
+    public long getSize() { return size; }
+    public void setSize(long size) { this.size = size; }
+    public String getFileId() { return fileId; }
+    public void setFileId(String fileId) { this.fileId = fileId; }
+    public List<ChunkRef> getChunks() { return chunks; }
+    public void setChunks(List<ChunkRef> chunks) { this.chunks = chunks; }
+    public Long getStoredBytes() { return storedBytes; }
+    public void setStoredBytes(Long storedBytes) { this.storedBytes = storedBytes; }
+    public LocalDateTime getCreatedAt() { return createdAt; }
+    public void setCreatedAt(LocalDateTime createdAt) { this.createdAt = createdAt; }
+
+    public boolean isCurrent() { return fileId != null && storedBytes == null; }
+}
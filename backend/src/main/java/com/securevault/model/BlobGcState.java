@@ -0,0 +1,52 @@
+package com.securevault.model;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+import java.time.LocalDateTime;
+
+/**
+ * Progress of the orphan-blob collector over one BlobStore.
+ * The cursor lets a pass resume where the previous run stopped; the lease
+ * keeps two instances from sweeping the same store at once.
+ */
+@Document(collection = "blob_gc_state")
+public class BlobGcState {
+    @Id
+    private String id; // BlobStore name
+
+    private String cursor; // last fileId examined in the current pass, null at the start
+    private LocalDateTime leaseUntil;
+
+    private LocalDateTime passStartedAt;
+    private long scannedFiles;
+    private long deletedFiles;
+    private long reclaimedBytes;
+
+    private LocalDateTime lastPassCompletedAt;
+    private long lastPassDeletedFiles;
+    private long lastPassReclaimedBytes;
+    private long totalReclaimedBytes;
+
+    public String getId() { return id; }
+    public void setId(String id) { this.id = id; }
+    public String getCursor() { return cursor; }
+    public void setCursor(String cursor) { this.cursor = cursor; }
+    public LocalDateTime getLeaseUntil() { return leaseUntil; }
+    public void setLeaseUntil(LocalDateTime leaseUntil) { this.leaseUntil = leaseUntil; }
+    public LocalDateTime getPassStartedAt() { return passStartedAt; }
+    public void setPassStartedAt(LocalDateTime passStartedAt) { this.passStartedAt = passStartedAt; }
+    public long getScannedFiles() { return scannedFiles; }
+    public void setScannedFiles(long scannedFiles) { this.scannedFiles = scannedFiles; }
+    public long getDeletedFiles() { return deletedFiles; }
+    public void setDeletedFiles(long deletedFiles) { this.deletedFiles = deletedFiles; }
+    public long getReclaimedBytes() { return reclaimedBytes; }
+    public void setReclaimedBytes(long reclaimedBytes) { this.reclaimedBytes = reclaimedBytes; }
+    public LocalDateTime getLastPassCompletedAt() { return lastPassCompletedAt; }
+    public void setLastPassCompletedAt(LocalDateTime lastPassCompletedAt) { this.lastPassCompletedAt = lastPassCompletedAt; }
+    public long getLastPassDeletedFiles() { return lastPassDeletedFiles; }
+    public void setLastPassDeletedFiles(long lastPassDeletedFiles) { this.lastPassDeletedFiles = lastPassDeletedFiles; }
+    public long getLastPassReclaimedBytes() { return lastPassReclaimedBytes; }
+    public void setLastPassReclaimedBytes(long lastPassReclaimedBytes) { this.lastPassReclaimedBytes = lastPassReclaimedBytes; }
+    public long getTotalReclaimedBytes() { return totalReclaimedBytes; }
+    public void setTotalReclaimedBytes(long totalReclaimedBytes) { this.totalReclaimedBytes = totalReclaimedBytes; }
+}
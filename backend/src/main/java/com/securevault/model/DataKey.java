@@ -0,0 +1,32 @@
+package com.securevault.model;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+import java.time.LocalDateTime;
+
+/**
+ * Per-user data encryption key, stored only in wrapped form
+ * (AES-GCM under the master key: base64 of iv | ciphertext | tag).
+ */
+@Document(collection = "data_keys")
+public class DataKey {
+    @Id
+    private String id; // owner user id
+    private String wrappedKey;
+    private LocalDateTime createdAt;
+
+    public DataKey() {}
+
+    public DataKey(String id, String wrappedKey, LocalDateTime createdAt) {
+        this.id = id;
+        this.wrappedKey = wrappedKey;
+        this.createdAt = createdAt;
+    }
+
+    public String getId() { return id; }
+    public void setId(String id) { this.id = id; }
+    public String getWrappedKey() { return wrappedKey; }
+    public void setWrappedKey(String wrappedKey) { this.wrappedKey = wrappedKey; }
+    public LocalDateTime getCreatedAt() { return createdAt; }
+    public void setCreatedAt(LocalDateTime createdAt) { this.createdAt = createdAt; }
+}
@@ -0,0 +1,63 @@
+package com.securevault.model;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+import java.time.LocalDateTime;
+
+/**
+ * Durable release of a deceased user's assets to an approved nominee.
+ * The cursor is the last asset id released, so a job interrupted by a crash
+ * resumes after its last completed batch once its lease runs out.
+ */
+@Document(collection = "release_jobs")
+public class ReleaseJob {
+    @Id
+    private String id; // verification request id; one job per approved claim
+
+    private String nomineeId;
+    private String deceasedUserId;
+
+    // QUEUED, RUNNING, COMPLETED or FAILED
+    private String status;
+    private String cursor; // last asset id released, null before the first batch
+    private long releasedAssets;
+    private boolean assetsReleased; // all batches done; only the notification is left
+
+    private String leaseOwner;
+    private LocalDateTime leaseUntil;
+    private int attempts;
+    private String lastError;
+
+    private LocalDateTime createdAt;
+    private LocalDateTime updatedAt;
+    private LocalDateTime completedAt;
+
+    public String getId() { return id; }
+    public void setId(String id) { this.id = id; }
+    public String getNomineeId() { return nomineeId; }
+    public void setNomineeId(String nomineeId) { this.nomineeId = nomineeId; }
+    public String getDeceasedUserId() { return deceasedUserId; }
+    public void setDeceasedUserId(String deceasedUserId) { this.deceasedUserId = deceasedUserId; }
+    public String getStatus() { return status; }
+    public void setStatus(String status) { this.status = status; }
+    public String getCursor() { return cursor; }
+    public void setCursor(String cursor) { this.cursor = cursor; }
+    public long getReleasedAssets() { return releasedAssets; }
+    public void setReleasedAssets(long releasedAssets) { this.releasedAssets = releasedAssets; }
+    public boolean isAssetsReleased() { return assetsReleased; }
+    public void setAssetsReleased(boolean assetsReleased) { this.assetsReleased = assetsReleased; }
+    public String getLeaseOwner() { return leaseOwner; }
+    public void setLeaseOwner(String leaseOwner) { this.leaseOwner = leaseOwner; }
+    public LocalDateTime getLeaseUntil() { return leaseUntil; }
+    public void setLeaseUntil(LocalDateTime leaseUntil) { this.leaseUntil = leaseUntil; }
+    public int getAttempts() { return attempts; }
+    public void setAttempts(int attempts) { this.attempts = attempts; }
+    public String getLastError() { return lastError; }
+    public void setLastError(String lastError) { this.lastError = lastError; }
+    public LocalDateTime getCreatedAt() { return createdAt; }
+    public void setCreatedAt(LocalDateTime createdAt) { this.createdAt = createdAt; }
+    public LocalDateTime getUpdatedAt() { return updatedAt; }
+    public void setUpdatedAt(LocalDateTime updatedAt) { this.updatedAt = updatedAt; }
+    public LocalDateTime getCompletedAt() { return completedAt; }
+    public void setCompletedAt(LocalDateTime completedAt) { this.completedAt = completedAt; }
+}
@@ -0,0 +1,54 @@
+package com.securevault.model;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * What one user stores, kept current with $inc as assets are created and
+ * deleted, so quota checks and dashboards never sum the user's assets.
+ * The reconciliation job in StorageUsageService corrects any drift.
+ */
+@Document(collection = "storage_usage")
+public class StorageUsage {
+    @Id
+    private String id; // userId
+
+    private long bytes;
+    private long files;
+    private Map<String, Long> filesByType = new HashMap<>(); // keyed by top-level content type, e.g. "image"
+    // Held by chunked upload sessions that have not committed yet
+    private long reservedBytes;
+    private long reservedFiles;
+
+    private long version; // bumped by every change; reconciliation only writes over the version it counted against
+    private LocalDateTime updatedAt;
+    private LocalDateTime reconciledAt;
+
+    public StorageUsage() {}
+
+    public StorageUsage(String id) {
+        this.id = id;
+    }
+
+    public String getId() { return id; }
+    public void setId(String id) { this.id = id; }
+    public long getBytes() { return bytes; }
+    public void setBytes(long bytes) { this.bytes = bytes; }
+    public long getFiles() { return files; }
+    public void setFiles(long files) { this.files = files; }
+    public Map<String, Long> getFilesByType() { return filesByType != null ? filesByType : new HashMap<>(); }
+    public void setFilesByType(Map<String, Long> filesByType) { this.filesByType = filesByType; }
+    public long getReservedBytes() { return reservedBytes; }
+    public void setReservedBytes(long reservedBytes) { this.reservedBytes = reservedBytes; }
+    public long getReservedFiles() { return reservedFiles; }
+    public void setReservedFiles(long reservedFiles) { this.reservedFiles = reservedFiles; }
+    public long getVersion() { return version; }
+    public void setVersion(long version) { this.version = version; }
+    public LocalDateTime getUpdatedAt() { return updatedAt; }
+    public void setUpdatedAt(LocalDateTime updatedAt) { this.updatedAt = updatedAt; }
+    public LocalDateTime getReconciledAt() { return reconciledAt; }
+    public void setReconciledAt(LocalDateTime reconciledAt) { this.reconciledAt = reconciledAt; }
+}
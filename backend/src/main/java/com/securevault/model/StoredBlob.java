@@ -0,0 +1,52 @@
+package com.securevault.model;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+import java.time.LocalDateTime;
+
+/**
+ * One unique piece of content in GridFS, keyed by its SHA-256
+ * (prefixed with the owner id when files are encrypted per user).
+ * refCount is the number of assets / verification requests pointing at fileId;
+ * the GridFS file is only deleted when it drops to zero.
+ */
+@Document(collection = "stored_blobs")
+public class StoredBlob {
+    @Id
+    private String id; // content key, see StorageService.blobKey
+
+    @Indexed(unique = true)
+    private String fileId;
+
+    private long length;
+    private long refCount;
+    private LocalDateTime createdAt;
+
+    // Last time an upload took a reference; the orphan collector leaves recent blobs alone
+    private LocalDateTime lastAcquiredAt;
+
+    public StoredBlob() {}
+
+    public StoredBlob(String id, String fileId, long length, long refCount, LocalDateTime createdAt) {
+        this.id = id;
+        this.fileId = fileId;
+        this.length = length;
+        this.refCount = refCount;
+        this.createdAt = createdAt;
+        this.lastAcquiredAt = createdAt;
+    }
+
+    public String getId() { return id; }
+    public void setId(String id) { this.id = id; }
+    public String getFileId() { return fileId; }
+    public void setFileId(String fileId) { this.fileId = fileId; }
+    public long getLength() { return length; }
+    public void setLength(long length) { this.length = length; }
+    public long getRefCount() { return refCount; }
+    public void setRefCount(long refCount) { this.refCount = refCount; }
+    public LocalDateTime getCreatedAt() { return createdAt; }
+    public void setCreatedAt(LocalDateTime createdAt) { this.createdAt = createdAt; }
+    public LocalDateTime getLastAcquiredAt() { return lastAcquiredAt; }
+    public void setLastAcquiredAt(LocalDateTime lastAcquiredAt) { this.lastAcquiredAt = lastAcquiredAt; }
+}
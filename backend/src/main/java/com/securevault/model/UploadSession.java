@@ -0,0 +1,79 @@
+package com.securevault.model;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+import java.time.LocalDateTime;
+
+/**
+ * Progress of a resumable chunked upload.
+ * Chunks are written into fs.chunks under {@code fileId} as they arrive;
+ * the fs.files document is only inserted on commit.
+ * A commit holds the session as COMMITTING under a lease and records each
+ * step it completes; only once the asset exists is the session COMMITTED.
+ */
+@Document(collection = "upload_sessions")
+public class UploadSession {
+    @Id
+    private String id;
+    private String userId;
+    private String nomineeId;
+    private String description;
+    private String fileName;
+    private String contentType;
+    private long totalSize;
+    private int chunkSize;
+    private String fileId;
+    private int nextChunkIndex;
+    private long receivedBytes;
+    private String status; // "OPEN", "COMMITTING", "COMMITTED" or "ABORTED"
+    // Commit progress, so a commit that failed part-way resumes where it stopped
+    private boolean finalized;
+    private String storedFileId;
+    private String assetId;
+    private LocalDateTime leaseUntil;
+    // Whether the declared size is still reserved against the owner's quota
+    private boolean quotaReserved;
+    private LocalDateTime createdAt;
+    private LocalDateTime updatedAt;
+
+    public UploadSession() {}
+
+    public String getId() { return id; }
+    public void setId(String id) { this.id = id; }
+    public String getUserId() { return userId; }
+    public void setUserId(String userId) { this.userId = userId; }
+    public String getNomineeId() { return nomineeId; }
+    public void setNomineeId(String nomineeId) { this.nomineeId = nomineeId; }
+    public String getDescription() { return description; }
+    public void setDescription(String description) { this.description = description; }
+    public String getFileName() { return fileName; }
+    public void setFileName(String fileName) { this.fileName = fileName; }
+    public String getContentType() { return contentType; }
+    public void setContentType(String contentType) { this.contentType = contentType; }
+    public long getTotalSize() { return totalSize; }
+    public void setTotalSize(long totalSize) { this.totalSize = totalSize; }
+    public int getChunkSize() { return chunkSize; }
+    public void setChunkSize(int chunkSize) { this.chunkSize = chunkSize; }
+    public String getFileId() { return fileId; }
+    public void setFileId(String fileId) { this.fileId = fileId; }
+    public int getNextChunkIndex() { return nextChunkIndex; }
+    public void setNextChunkIndex(int nextChunkIndex) { this.nextChunkIndex = nextChunkIndex; }
+    public long getReceivedBytes() { return receivedBytes; }
+    public void setReceivedBytes(long receivedBytes) { this.receivedBytes = receivedBytes; }
+    public String getStatus() { return status; }
+    public void setStatus(String status) { this.status = status; }
+    public boolean isFinalized() { return finalized; }
+    public void setFinalized(boolean finalized) { this.finalized = finalized; }
+    public String getStoredFileId() { return storedFileId; }
+    public void setStoredFileId(String storedFileId) { this.storedFileId = storedFileId; }
+    public String getAssetId() { return assetId; }
+    public void setAssetId(String assetId) { this.assetId = assetId; }
+    public LocalDateTime getLeaseUntil() { return leaseUntil; }
+    public void setLeaseUntil(LocalDateTime leaseUntil) { this.leaseUntil = leaseUntil; }
+    public boolean isQuotaReserved() { return quotaReserved; }
+    public void setQuotaReserved(boolean quotaReserved) { this.quotaReserved = quotaReserved; }
+    public LocalDateTime getCreatedAt() { return createdAt; }
+    public void setCreatedAt(LocalDateTime createdAt) { this.createdAt = createdAt; }
+    public LocalDateTime getUpdatedAt() { return updatedAt; }
+    public void setUpdatedAt(LocalDateTime updatedAt) { this.updatedAt = updatedAt; }
+}
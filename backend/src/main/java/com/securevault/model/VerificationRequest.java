@@ -33,6 +33,10 @@ public class VerificationRequest {
     private LocalDateTime submittedAt = LocalDateTime.now();
     private LocalDateTime reviewedAt;
 
+    // Set with the approval and cleared once the release job exists, so an
+    // approval whose enqueue was lost to a crash is still released
+    private Boolean releasePending;
+
     // Standard getters and setters 
     public String getId() { return id; }
     public void setId(String id) { this.id = id; }
@@ -60,4 +64,7 @@ public class VerificationRequest {
 
     public LocalDateTime getReviewedAt() { return reviewedAt; }
     public void setReviewedAt(LocalDateTime reviewedAt) { this.reviewedAt = reviewedAt; }
+
+    public Boolean getReleasePending() { return releasePending; }
+    public void setReleasePending(Boolean releasePending) { this.releasePending = releasePending; }
 }
\ No newline at end of file
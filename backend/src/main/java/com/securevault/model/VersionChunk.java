@@ -0,0 +1,34 @@
+package com.securevault.model;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+/**
+ * Where one content-defined chunk of version history is stored: a range of
+ * a container file that packs many chunks. Keyed like StoredBlob, so chunks
+ * are shared per owner when files are encrypted. The container's StoredBlob
+ * holds the references; an entry whose container is gone is simply stale.
+ */
+@Document(collection = "version_chunks")
+public class VersionChunk {
+    @Id
+    private String id; // content key of the chunk, see StorageService.chunkKey
+
+    private String fileId; // the container
+    private long offset;
+
+    public VersionChunk() {}
+
+    public VersionChunk(String id, String fileId, long offset) {
+        this.id = id;
+        this.fileId = fileId;
+        this.offset = offset;
+    }
+
+    public String getId() { return id; }
+    public void setId(String id) { this.id = id; }
+    public String getFileId() { return fileId; }
+    public void setFileId(String fileId) { this.fileId = fileId; }
+    public long getOffset() { return offset; }
+    public void setOffset(long offset) { this.offset = offset; }
+}
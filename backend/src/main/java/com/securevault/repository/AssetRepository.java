@@ -13,4 +13,7 @@ public interface AssetRepository extends MongoRepository<Asset, String> {
 
     // Find all assets assigned to a specific nominee (nomineeIds is a list)
     List<Asset> findByNomineeIdsContaining(String nomineeId);
+
+    // Preview renditions are shared by assets with the same (deduplicated) file
+    boolean existsByPreviewFileId(String previewFileId);
 }
\ No newline at end of file
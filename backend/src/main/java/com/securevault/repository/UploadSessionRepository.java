@@ -0,0 +1,14 @@
+package com.securevault.repository;
+
+import com.securevault.model.UploadSession;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface UploadSessionRepository extends MongoRepository<UploadSession, String> {
+
+    // Open sessions that have not received a chunk since the cutoff
+    List<UploadSession> findByStatusAndUpdatedAtBefore(String status, LocalDateTime cutoff);
+}
@@ -0,0 +1,271 @@
+package com.securevault.security;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+
+/**
+ * AES-GCM over fixed-size segments so files can be encrypted while streaming
+ * and any byte range can be decrypted without touching the rest of the file.
+ *
+ * Each plaintext segment of {@code segmentSize} bytes (the last may be shorter,
+ * an empty file is one empty segment) is stored as {@code iv(12) | ciphertext | tag(16)}.
+ * The AAD binds a segment to its file id, its index and whether it is the last
+ * one, so segments cannot be reordered, swapped between files or truncated.
+ */
+public final class SegmentedAesGcm {
+
+    public static final int IV_LENGTH = 12;
+    public static final int TAG_LENGTH = 16;
+    public static final int OVERHEAD = IV_LENGTH + TAG_LENGTH;
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private SegmentedAesGcm() {}
+
+    public static long segmentCount(long plainLength, int segmentSize) {
+        return plainLength == 0 ? 1 : (plainLength + segmentSize - 1) / segmentSize;
+    }
+
+    public static long encryptedLength(long plainLength, int segmentSize) {
+        return plainLength + segmentCount(plainLength, segmentSize) * OVERHEAD;
+    }
+
+    /**
+     * Encrypts consecutive segments starting at {@code firstIndex}.
+     * {@code plain} must hold whole segments except possibly the file's last one.
+     */
+    public static byte[] encryptSegments(SecretKey key, String fileId, int segmentSize, long plainLength,
+                                         long firstIndex, byte[] plain) {
+        long lastIndex = segmentCount(plainLength, segmentSize) - 1;
+        ByteArrayOutputStream out = new ByteArrayOutputStream(
+                plain.length + (plain.length / segmentSize + 1) * OVERHEAD);
+        int offset = 0;
+        long index = firstIndex;
+        do {
+            int length = Math.min(segmentSize, plain.length - offset);
+            byte[] segment = encryptSegment(key, fileId, index, index == lastIndex, plain, offset, length);
+            out.write(segment, 0, segment.length);
+            offset += length;
+            index++;
+        } while (offset < plain.length);
+        return out.toByteArray();
+    }
+
+    public static byte[] encryptSegment(SecretKey key, String fileId, long index, boolean last,
+                                        byte[] plain, int offset, int length) {
+        try {
+            byte[] iv = new byte[IV_LENGTH];
+            RANDOM.nextBytes(iv);
+            Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+            cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TAG_LENGTH * 8, iv));
+            cipher.updateAAD(aad(fileId, index, last));
+            byte[] segment = new byte[IV_LENGTH + length + TAG_LENGTH];
+            System.arraycopy(iv, 0, segment, 0, IV_LENGTH);
+            cipher.doFinal(plain, offset, length, segment, IV_LENGTH);
+            return segment;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Segment encryption failed", e);
+        }
+    }
+
+    public static byte[] decryptSegment(SecretKey key, String fileId, long index, boolean last,
+                                        byte[] segment, int length) throws IOException {
+        if (length < OVERHEAD) {
+            throw new IOException("Encrypted segment " + index + " is truncated");
+        }
+        try {
+            Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+            cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_LENGTH * 8, segment, 0, IV_LENGTH));
+            cipher.updateAAD(aad(fileId, index, last));
+            return cipher.doFinal(segment, IV_LENGTH, length - IV_LENGTH);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Encrypted segment " + index + " failed authentication", e);
+        }
+    }
+
+    /**
+     * Wraps a plaintext stream so that reading it yields the encrypted segments
+     */
+    public static InputStream encryptingStream(InputStream plain, SecretKey key, String fileId, int segmentSize) {
+        return new EncryptingInputStream(plain, key, fileId, segmentSize);
+    }
+
+    /**
+     * Decrypts a stream positioned at the start of segment {@code firstIndex},
+     * discarding the first {@code skip} plaintext bytes of that segment
+     */
+    public static InputStream decryptingStream(InputStream encrypted, SecretKey key, String fileId, int segmentSize,
+                                               long plainLength, long firstIndex, int skip) {
+        return new DecryptingInputStream(encrypted, key, fileId, segmentSize, plainLength, firstIndex, skip);
+    }
+
+    private static byte[] aad(String fileId, long index, boolean last) {
+        byte[] id = fileId.getBytes(StandardCharsets.US_ASCII);
+        return ByteBuffer.allocate(id.length + Long.BYTES + 1)
+                .put(id)
+                .putLong(index)
+                .put((byte) (last ? 1 : 0))
+                .array();
+    }
+
+    /**
+     * Base class for streams that hand out one segment-sized buffer at a time
+     */
+    private abstract static class SegmentInputStream extends InputStream {
+        protected final InputStream source;
+        private byte[] current = new byte[0];
+        private int position;
+        private boolean finished;
+
+        SegmentInputStream(InputStream source) {
+            this.source = source;
+        }
+
+        /** @return the next buffer, or null at end of stream */
+        protected abstract byte[] nextSegment() throws IOException;
+
+        private boolean fill() throws IOException {
+            while (position == current.length) {
+                if (finished) {
+                    return false;
+                }
+                byte[] next = nextSegment();
+                if (next == null) {
+                    finished = true;
+                    return false;
+                }
+                current = next;
+                position = 0;
+            }
+            return true;
+        }
+
+        protected void finish() {
+            finished = true;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!fill()) {
+                return -1;
+            }
+            return current[position++] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (!fill()) {
+                return -1;
+            }
+            int count = Math.min(len, current.length - position);
+            System.arraycopy(current, position, b, off, count);
+            position += count;
+            return count;
+        }
+
+        @Override
+        public void close() throws IOException {
+            source.close();
+        }
+    }
+
+    private static final class EncryptingInputStream extends SegmentInputStream {
+        private final PushbackInputStream plain;
+        private final SecretKey key;
+        private final String fileId;
+        private final int segmentSize;
+        private long index;
+        private boolean done;
+
+        EncryptingInputStream(InputStream plain, SecretKey key, String fileId, int segmentSize) {
+            this(new PushbackInputStream(plain, 1), key, fileId, segmentSize);
+        }
+
+        private EncryptingInputStream(PushbackInputStream plain, SecretKey key, String fileId, int segmentSize) {
+            super(plain);
+            this.plain = plain;
+            this.key = key;
+            this.fileId = fileId;
+            this.segmentSize = segmentSize;
+        }
+
+        @Override
+        protected byte[] nextSegment() throws IOException {
+            if (done) {
+                return null;
+            }
+            byte[] chunk = plain.readNBytes(segmentSize);
+            boolean last = chunk.length < segmentSize;
+            if (!last) {
+                int peek = plain.read();
+                if (peek == -1) {
+                    last = true;
+                } else {
+                    plain.unread(peek);
+                }
+            }
+            done = last;
+            return encryptSegment(key, fileId, index++, last, chunk, 0, chunk.length);
+        }
+    }
+
+    private static final class DecryptingInputStream extends SegmentInputStream {
+        private final SecretKey key;
+        private final String fileId;
+        private final int segmentSize;
+        private final long plainLength;
+        private final long lastIndex;
+        private final byte[] segmentBuffer;
+        private long index;
+        private int pendingSkip;
+
+        DecryptingInputStream(InputStream encrypted, SecretKey key, String fileId, int segmentSize,
+                              long plainLength, long firstIndex, int skip) {
+            super(encrypted);
+            this.key = key;
+            this.fileId = fileId;
+            this.segmentSize = segmentSize;
+            this.plainLength = plainLength;
+            this.lastIndex = segmentCount(plainLength, segmentSize) - 1;
+            this.segmentBuffer = new byte[segmentSize + OVERHEAD];
+            this.index = firstIndex;
+            this.pendingSkip = skip;
+        }
+
+        @Override
+        protected byte[] nextSegment() throws IOException {
+            if (index > lastIndex) {
+                finish();
+                return null;
+            }
+            boolean last = index == lastIndex;
+            int plainBytes = last ? (int) (plainLength - index * (long) segmentSize) : segmentSize;
+            int expected = plainBytes + OVERHEAD;
+            int read = source.readNBytes(segmentBuffer, 0, expected);
+            if (read != expected) {
+                throw new IOException("Encrypted segment " + index + " is truncated");
+            }
+            byte[] plain = decryptSegment(key, fileId, index, last, segmentBuffer, expected);
+            index++;
+            if (pendingSkip > 0) {
+                byte[] trimmed = new byte[plain.length - Math.min(pendingSkip, plain.length)];
+                System.arraycopy(plain, plain.length - trimmed.length, trimmed, 0, trimmed.length);
+                pendingSkip = 0;
+                return trimmed;
+            }
+            return plain;
+        }
+    }
+}
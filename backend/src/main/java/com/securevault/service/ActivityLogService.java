@@ -15,6 +15,13 @@ public class ActivityLogService {
     }
 
     public void log(String userId, String userName, String action, String details, String entityId, String userType) {
+        repository.save(entry(userId, userName, action, details, entityId, userType));
+    }
+
+    /**
+     * Builds a log entry without saving it, for callers that write many at once
+     */
+    public ActivityLog entry(String userId, String userName, String action, String details, String entityId, String userType) {
         ActivityLog log = new ActivityLog();
         log.setUserId(userId);
         log.setUserName(userName);
@@ -23,7 +30,16 @@ public class ActivityLogService {
         log.setEntityId(entityId);
         log.setUserType(userType);
         log.setTimestamp(LocalDateTime.now());
-        repository.save(log);
+        return log;
+    }
+
+    /**
+     * Saves new entries with a single insertMany
+     */
+    public void logAll(List<ActivityLog> logs) {
+        if (!logs.isEmpty()) {
+            repository.insert(logs);
+        }
     }
 
     public List<ActivityLog> getAllLogs() {
@@ -0,0 +1,293 @@
+package com.securevault.service;
+
+import com.mongodb.bulk.BulkWriteError;
+import com.securevault.dto.BulkAssetOperationDTO;
+import com.securevault.dto.BulkOperationResultDTO;
+import com.securevault.model.ActivityLog;
+import com.securevault.model.Asset;
+import com.securevault.model.Nominee;
+import com.securevault.model.User;
+import com.securevault.repository.UserRepository;
+import org.bson.types.ObjectId;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+/**
+ * Applies many asset changes in one request.
+ * Ownership of all assets and nominees is checked with one $in query each,
+ * updates go to Mongo as a single unordered bulkWrite, and deletes take
+ * three round trips however many there are (see {@link #removeOwned}).
+ * Released files are deleted in one batch, search terms are rebuilt in one
+ * more bulkWrite and the activity log is written with one insertMany.
+ * Items fail individually; the rest of the request still applies.
+ */
+@Service
+public class AssetBulkService {
+
+    public static final String DELETE = "DELETE";
+    public static final String UPDATE_DESCRIPTION = "UPDATE_DESCRIPTION";
+    public static final String ASSIGN_NOMINEE = "ASSIGN_NOMINEE";
+    public static final String UNASSIGN_NOMINEE = "UNASSIGN_NOMINEE";
+
+    private final MongoTemplate mongoTemplate;
+    private final StorageService storageService;
+    private final ReferenceResolver referenceResolver;
+    private final ActivityLogService activityLogService;
+    private final UserRepository userRepository;
+    private final AssetSearchIndexer assetSearchIndexer;
+    private final StorageUsageService storageUsageService;
+    private final AssetVersionService assetVersionService;
+
+    // A bulk delete that dies between claiming and removing gives its assets up after this
+    private static final long DELETE_CLAIM_MINUTES = 5;
+
+    public AssetBulkService(MongoTemplate mongoTemplate, StorageService storageService,
+                            ReferenceResolver referenceResolver, ActivityLogService activityLogService,
+                            UserRepository userRepository, AssetSearchIndexer assetSearchIndexer,
+                            StorageUsageService storageUsageService, AssetVersionService assetVersionService) {
+        this.mongoTemplate = mongoTemplate;
+        this.storageService = storageService;
+        this.referenceResolver = referenceResolver;
+        this.activityLogService = activityLogService;
+        this.userRepository = userRepository;
+        this.assetSearchIndexer = assetSearchIndexer;
+        this.storageUsageService = storageUsageService;
+        this.assetVersionService = assetVersionService;
+    }
+
+    /**
+     * @return One result per operation, in the order given
+     */
+    public List<BulkOperationResultDTO> apply(String userId, List<BulkAssetOperationDTO> operations) {
+        List<BulkOperationResultDTO> results = new ArrayList<>();
+        for (BulkAssetOperationDTO operation : operations) {
+            results.add(new BulkOperationResultDTO(operation.getOp(), operation.getAssetId(), false, null));
+        }
+
+        Map<String, Asset> assets = mongoTemplate.find(
+                query(where("_id").in(operations.stream().map(BulkAssetOperationDTO::getAssetId)
+                        .filter(Objects::nonNull).collect(Collectors.toSet()))),
+                Asset.class).stream().collect(Collectors.toMap(Asset::getId, Function.identity()));
+        Map<String, Nominee> nominees = referenceResolver.nominees(
+                operations.stream().map(BulkAssetOperationDTO::getNomineeId).toList());
+
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Asset.class);
+        // Position of each queued write in the bulk, mapped to its operation
+        List<Integer> queued = new ArrayList<>();
+        List<Integer> removals = new ArrayList<>();
+        for (int i = 0; i < operations.size(); i++) {
+            String error = queue(bulk, userId, operations.get(i), assets, nominees);
+            if (error != null) {
+                results.get(i).setError(error);
+            } else if (DELETE.equals(operations.get(i).getOp())) {
+                removals.add(i);
+            } else {
+                queued.add(i);
+            }
+        }
+        if (queued.isEmpty() && removals.isEmpty()) {
+            return results;
+        }
+
+        Set<Integer> failed = new HashSet<>();
+        if (!queued.isEmpty()) {
+            try {
+                bulk.execute();
+            } catch (BulkOperationException e) {
+                for (BulkWriteError error : e.getErrors()) {
+                    int index = queued.get(error.getIndex());
+                    failed.add(index);
+                    results.get(index).setError(error.getMessage());
+                }
+            }
+            // An update whose asset was deleted in the meantime matched nothing
+            Set<String> present = stillOwned(userId, queued.stream().filter(index -> !failed.contains(index))
+                    .map(index -> operations.get(index).getAssetId()).collect(Collectors.toSet()));
+            for (int index : queued) {
+                if (!failed.contains(index) && !present.contains(operations.get(index).getAssetId())) {
+                    failed.add(index);
+                    results.get(index).setError("Asset not found");
+                }
+            }
+        }
+
+        String userName = userRepository.findById(userId).map(User::getFullName).orElse("Unknown User");
+        Map<Integer, ActivityLog> logs = new TreeMap<>();
+        Set<String> changedAssetIds = new HashSet<>();
+        for (int index : queued) {
+            if (failed.contains(index)) {
+                continue;
+            }
+            BulkAssetOperationDTO operation = operations.get(index);
+            Asset asset = assets.get(operation.getAssetId());
+            results.get(index).setSuccess(true);
+            changedAssetIds.add(asset.getId());
+            logs.put(index, activityLog(userId, userName, operation, asset, nominees.get(operation.getNomineeId())));
+        }
+
+        List<Asset> deleted = removeOwned(userId, removals.stream()
+                .map(index -> operations.get(index).getAssetId()).collect(Collectors.toSet()));
+        Map<String, Asset> deletedById = deleted.stream().collect(Collectors.toMap(Asset::getId, Function.identity()));
+        for (int index : removals) {
+            BulkAssetOperationDTO operation = operations.get(index);
+            Asset asset = deletedById.remove(operation.getAssetId());
+            if (asset == null) {
+                // Not found, or listed twice in this request and removed by the first entry
+                results.get(index).setError("Asset not found");
+                continue;
+            }
+            results.get(index).setSuccess(true);
+            logs.put(index, activityLog(userId, userName, operation, asset, null));
+        }
+        Set<String> deletedAssetIds = deleted.stream().map(Asset::getId).collect(Collectors.toSet());
+        releaseFiles(deleted);
+        storageUsageService.recordDeleted(deleted);
+        assetVersionService.releaseVersions(deletedAssetIds);
+        changedAssetIds.removeAll(deletedAssetIds);
+        assetSearchIndexer.refresh(changedAssetIds);
+        activityLogService.logAll(new ArrayList<>(logs.values()));
+        return results;
+    }
+
+    /**
+     * Removes the user's assets among the given ids and returns the removed
+     * documents. Only the request that removes an asset may release its
+     * file, usage and versions, so the assets are first claimed with a token
+     * in one updateMulti, the claimed documents are read back, and then they
+     * are removed with one deleteMany on the token. Assets that another
+     * delete claims or removes first are left to it; the single delete in
+     * AssetService skips claimed assets.
+     */
+    private List<Asset> removeOwned(String userId, Set<String> assetIds) {
+        if (assetIds.isEmpty()) {
+            return List.of();
+        }
+        String token = new ObjectId().toHexString();
+        LocalDateTime now = LocalDateTime.now();
+        mongoTemplate.updateMulti(
+                query(where("_id").in(assetIds).and("userId").is(userId).orOperator(
+                        where("deleteClaimUntil").is(null),
+                        where("deleteClaimUntil").lt(now))),
+                new Update().set("deleteClaim", token).set("deleteClaimUntil", now.plusMinutes(DELETE_CLAIM_MINUTES)),
+                Asset.class);
+        Query claimed = query(where("_id").in(assetIds).and("deleteClaim").is(token));
+        List<Asset> assets = mongoTemplate.find(claimed, Asset.class);
+        if (!assets.isEmpty()) {
+            mongoTemplate.remove(claimed, Asset.class);
+        }
+        return assets;
+    }
+
+    private Set<String> stillOwned(String userId, Set<String> assetIds) {
+        if (assetIds.isEmpty()) {
+            return Set.of();
+        }
+        Query owned = query(where("_id").in(assetIds).and("userId").is(userId));
+        owned.fields().include("_id");
+        return mongoTemplate.find(owned, Asset.class).stream().map(Asset::getId).collect(Collectors.toSet());
+    }
+
+    /**
+     * Validates one operation and adds its write to the bulk; deletes are
+     * validated only and removed separately
+     * @return Why the operation was rejected, or null if it was accepted
+     */
+    private String queue(BulkOperations bulk, String userId, BulkAssetOperationDTO operation,
+                         Map<String, Asset> assets, Map<String, Nominee> nominees) {
+        Asset asset = operation.getAssetId() != null ? assets.get(operation.getAssetId()) : null;
+        if (asset == null) {
+            return "Asset not found";
+        }
+        if (!userId.equals(asset.getUserId())) {
+            return "Ownership check failed";
+        }
+        String op = operation.getOp() != null ? operation.getOp() : "";
+        switch (op) {
+            case DELETE -> {
+                // Removed by apply through removeOwned, not through the bulk
+            }
+            case UPDATE_DESCRIPTION -> {
+                if (operation.getDescription() == null) {
+                    return "Description is required";
+                }
+                bulk.updateOne(query(where("_id").is(asset.getId()).and("userId").is(userId)),
+                        new Update().set("description", operation.getDescription()));
+            }
+            case ASSIGN_NOMINEE, UNASSIGN_NOMINEE -> {
+                if (operation.getNomineeId() == null) {
+                    return "Nominee is required";
+                }
+                // Unassigning a nominee that has since been deleted is allowed
+                Nominee nominee = nominees.get(operation.getNomineeId());
+                if (ASSIGN_NOMINEE.equals(op) && nominee == null) {
+                    return "Nominee not found";
+                }
+                if (nominee != null && !userId.equals(nominee.getUserId())) {
+                    return "Nominee does not belong to the user";
+                }
+                Update update = ASSIGN_NOMINEE.equals(op)
+                        ? new Update().addToSet("nomineeIds", operation.getNomineeId())
+                        : new Update().pull("nomineeIds", operation.getNomineeId());
+                bulk.updateOne(query(where("_id").is(asset.getId()).and("userId").is(userId)), update);
+            }
+            default -> {
+                return "Unknown operation: " + operation.getOp();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Releases the files and previews of deleted assets in one batch.
+     * A preview is shared by every asset of the same content, so it only goes
+     * once no remaining asset points at it.
+     */
+    private void releaseFiles(List<Asset> deleted) {
+        if (deleted.isEmpty()) {
+            return;
+        }
+        List<String> fileIds = new ArrayList<>(deleted.stream().map(Asset::getFileId).filter(Objects::nonNull).toList());
+        Set<String> previewIds = deleted.stream().map(Asset::getPreviewFileId)
+                .filter(Objects::nonNull).collect(Collectors.toSet());
+        if (!previewIds.isEmpty()) {
+            Set<String> stillUsed = mongoTemplate.findDistinct(query(where("previewFileId").in(previewIds)),
+                    "previewFileId", Asset.class, String.class).stream().collect(Collectors.toSet());
+            previewIds.stream().filter(id -> !stillUsed.contains(id)).forEach(fileIds::add);
+        }
+        storageService.deleteFiles(fileIds);
+    }
+
+    private ActivityLog activityLog(String userId, String userName, BulkAssetOperationDTO operation,
+                                    Asset asset, Nominee nominee) {
+        String nomineeName = nominee != null ? nominee.getName() : "Unknown";
+        String fileName = asset.getFileName();
+        return switch (operation.getOp()) {
+            case DELETE -> activityLogService.entry(userId, userName, "ASSET_DELETE",
+                    "Deleted asset: " + fileName, asset.getId(), "USER");
+            case UPDATE_DESCRIPTION -> activityLogService.entry(userId, userName, "ASSET_UPDATE",
+                    "Updated description for asset: " + fileName, asset.getId(), "USER");
+            case ASSIGN_NOMINEE -> activityLogService.entry(userId, userName, "NOMINEE_ASSIGNED",
+                    "Assigned nominee " + nomineeName + " to asset: " + fileName, asset.getId(), "USER");
+            default -> activityLogService.entry(userId, userName, "NOMINEE_REMOVED",
+                    "Removed nominee " + nomineeName + " from asset: " + fileName, asset.getId(), "USER");
+        };
+    }
+}
@@ -0,0 +1,206 @@
+package com.securevault.service;
+
+import com.securevault.model.Asset;
+import com.securevault.model.AssetState;
+import com.securevault.model.Nominee;
+import com.securevault.repository.AssetRepository;
+import com.securevault.repository.NomineeRepository;
+import com.securevault.repository.VerificationRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Streams every asset assigned to a nominee as one ZIP archive.
+ * Entries are written while their bytes are read from storage, so nothing is
+ * buffered beyond the copy buffer and no temp files are created.
+ */
+@Service
+public class AssetExportService {
+
+    private static final Logger log = LoggerFactory.getLogger(AssetExportService.class);
+
+    static final String MISSING_MANIFEST = "MISSING_FILES.txt";
+
+    private final AssetRepository assetRepository;
+    private final NomineeRepository nomineeRepository;
+    private final VerificationRepository verificationRepository;
+    private final StorageService storageService;
+    private final ActivityLogService activityLogService;
+
+    public AssetExportService(AssetRepository assetRepository, NomineeRepository nomineeRepository,
+                              VerificationRepository verificationRepository, StorageService storageService,
+                              ActivityLogService activityLogService) {
+        this.assetRepository = assetRepository;
+        this.nomineeRepository = nomineeRepository;
+        this.verificationRepository = verificationRepository;
+        this.storageService = storageService;
+        this.activityLogService = activityLogService;
+    }
+
+    /**
+     * Assets the nominee may export. Only available once their claim is approved.
+     */
+    public List<Asset> getExportableAssets(String nomineeId) {
+        Nominee nominee = nomineeRepository.findById(nomineeId)
+                .orElseThrow(() -> new RuntimeException("Nominee not found"));
+        boolean approved = verificationRepository.findByNomineeId(nomineeId)
+                .map(request -> "APPROVED".equals(request.getStatus()))
+                .orElse(false);
+        if (!approved) {
+            throw new AccessDeniedException("Claim has not been approved");
+        }
+        return assetRepository.findByNomineeIdsContaining(nomineeId).stream()
+                .filter(asset -> nominee.getUserId().equals(asset.getUserId()))
+                .filter(asset -> asset.getFileId() != null && asset.getState() != AssetState.PENDING
+                        && asset.getState() != AssetState.FAILED)
+                .toList();
+    }
+
+    /**
+     * An export resolved up front: the files that could be found, and the
+     * assets whose file could not
+     */
+    public record Export(List<Entry> entries, List<String> missing) {}
+
+    public record Entry(Asset asset, BlobInfo file) {}
+
+    /**
+     * Looks up every asset's file before the response starts, so a missing
+     * file is reported in the archive instead of cutting it short
+     */
+    public Export prepareExport(String nomineeId) {
+        List<Entry> entries = new ArrayList<>();
+        List<String> missing = new ArrayList<>();
+        for (Asset asset : getExportableAssets(nomineeId)) {
+            try {
+                entries.add(new Entry(asset, storageService.getFileMetadata(asset.getFileId())));
+            } catch (RuntimeException e) {
+                log.warn("Leaving asset {} out of the export: {}", asset.getId(), e.getMessage());
+                missing.add(displayName(asset));
+            }
+        }
+        return new Export(entries, missing);
+    }
+
+    /**
+     * Writes the assets as a ZIP archive. Already-compressed files are
+     * STORED with their recorded size and CRC; everything else is deflated.
+     * Files that cannot be opened are listed in {@value #MISSING_MANIFEST}.
+     * @param out Destination stream; it is finished but not closed
+     */
+    public void writeZip(String nomineeId, Export export, OutputStream out) throws IOException {
+        ZipOutputStream zip = new ZipOutputStream(out);
+        Set<String> usedNames = new HashSet<>();
+        usedNames.add(MISSING_MANIFEST.toLowerCase());
+        List<String> missing = new ArrayList<>(export.missing());
+        int written = 0;
+        for (Entry item : export.entries()) {
+            Asset asset = item.asset();
+            BlobInfo file = item.file();
+            InputStream in;
+            ZipEntry entry;
+            try {
+                in = new BufferedInputStream(storageService.openStream(file, 0));
+                try {
+                    in.mark(BlobCompression.MAGIC_LENGTH);
+                    byte[] head = in.readNBytes(BlobCompression.MAGIC_LENGTH);
+                    in.reset();
+                    entry = new ZipEntry(entryName(asset, usedNames));
+                    if (!BlobCompression.isCompressible(storageService.getContentType(file), head)) {
+                        long size = storageService.getContentLength(file);
+                        entry.setMethod(ZipEntry.STORED);
+                        entry.setSize(size);
+                        entry.setCompressedSize(size);
+                        entry.setCrc(crc32(file));
+                    }
+                } catch (IOException | RuntimeException e) {
+                    in.close();
+                    throw e;
+                }
+            } catch (IOException | RuntimeException e) {
+                // Nothing of this entry has been written yet, so the archive stays valid
+                log.warn("Leaving asset {} out of the export: {}", asset.getId(), e.getMessage());
+                missing.add(displayName(asset));
+                continue;
+            }
+            try (in) {
+                if (asset.getUploadedAt() != null) {
+                    entry.setTimeLocal(asset.getUploadedAt());
+                }
+                zip.putNextEntry(entry);
+                in.transferTo(zip);
+                zip.closeEntry();
+            }
+            written++;
+        }
+        if (!missing.isEmpty()) {
+            zip.putNextEntry(new ZipEntry(MISSING_MANIFEST));
+            zip.write(("These files could not be read and are not in this archive:\n"
+                    + String.join("\n", missing) + "\n").getBytes(StandardCharsets.UTF_8));
+            zip.closeEntry();
+        }
+        zip.finish();
+        zip.flush();
+
+        log.info("Exported {} assets for nominee {}, {} missing", written, nomineeId, missing.size());
+        int exported = written;
+        nomineeRepository.findById(nomineeId).ifPresent(nominee ->
+                activityLogService.log(nomineeId, nominee.getName(), "NOMINEE_ASSETS_EXPORTED",
+                        "Downloaded " + exported + " assets as ZIP", nomineeId, "NOMINEE"));
+    }
+
+    /**
+     * CRC recorded when the file was stored; files from before that are read once to compute it
+     */
+    private long crc32(BlobInfo file) throws IOException {
+        Long recorded = storageService.getCrc32(file);
+        if (recorded != null) {
+            return recorded;
+        }
+        CRC32 crc = new CRC32();
+        try (InputStream in = new CheckedInputStream(storageService.openStream(file, 0), crc)) {
+            in.transferTo(OutputStream.nullOutputStream());
+        }
+        return crc.getValue();
+    }
+
+    private String displayName(Asset asset) {
+        return asset.getFileName() != null ? asset.getFileName() : asset.getId();
+    }
+
+    /**
+     * File name inside the archive: path separators removed and duplicates
+     * numbered, so entries cannot escape the extraction directory or collide
+     */
+    private String entryName(Asset asset, Set<String> usedNames) {
+        String name = asset.getFileName() != null ? asset.getFileName() : asset.getId();
+        name = name.replace('\\', '_').replace('/', '_').replace(':', '_');
+        if (name.isBlank() || name.equals(".") || name.equals("..")) {
+            name = asset.getId();
+        }
+        String candidate = name;
+        int dot = name.lastIndexOf('.');
+        String base = dot > 0 ? name.substring(0, dot) : name;
+        String extension = dot > 0 ? name.substring(dot) : "";
+        for (int n = 2; !usedNames.add(candidate.toLowerCase()); n++) {
+            candidate = base + " (" + n + ")" + extension;
+        }
+        return candidate;
+    }
+}
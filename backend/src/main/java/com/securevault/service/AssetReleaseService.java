@@ -0,0 +1,309 @@
+package com.securevault.service;
+
+import com.securevault.model.ActivityLog;
+import com.securevault.model.Asset;
+import com.securevault.model.Nominee;
+import com.securevault.model.ReleaseJob;
+import com.securevault.model.VerificationRequest;
+import com.securevault.repository.NomineeRepository;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+/**
+ * Releases a deceased user's assets to a nominee once their claim is approved.
+ * Approval only records a job; a background worker claims it under a lease
+ * and releases the nominee's assets in id order, one updateMany per batch,
+ * checkpointing the last id after each. Activity logs go in with one
+ * insertMany per batch and the nominee is emailed once every batch is done.
+ * A job whose worker died is picked up again when its lease runs out and
+ * resumes after its last checkpoint; a batch may be logged twice then, but
+ * never skipped. A failed attempt is retried after an exponential backoff;
+ * once max-attempts is reached the job is FAILED until an admin requeues it.
+ * The approval itself marks the claim as pending release, and every drain
+ * first creates the jobs of pending claims, so an approval whose enqueue was
+ * lost to a crash is still released.
+ */
+@Service
+public class AssetReleaseService {
+
+    private static final Logger log = LoggerFactory.getLogger(AssetReleaseService.class);
+
+    public static final String QUEUED = "QUEUED";
+    public static final String RUNNING = "RUNNING";
+    public static final String COMPLETED = "COMPLETED";
+    public static final String FAILED = "FAILED";
+
+    private final MongoTemplate mongoTemplate;
+    private final NomineeRepository nomineeRepository;
+    private final ActivityLogService activityLogService;
+    private final EmailService emailService;
+    private final ExecutorService worker = Executors.newSingleThreadExecutor(
+            runnable -> new Thread(runnable, "asset-release"));
+    // Keeps approvals from queueing a drain while one is already running
+    private final AtomicBoolean draining = new AtomicBoolean();
+
+    @Value("${app.release.batch-size:500}")
+    private int batchSize;
+
+    @Value("${app.release.lease-minutes:10}")
+    private long leaseMinutes;
+
+    @Value("${app.release.max-attempts:5}")
+    private int maxAttempts;
+
+    // Doubled after every failed attempt, up to the maximum
+    @Value("${app.release.retry-backoff-seconds:30}")
+    private long retryBackoffSeconds;
+
+    @Value("${app.release.max-backoff-minutes:60}")
+    private long maxBackoffMinutes;
+
+    public AssetReleaseService(MongoTemplate mongoTemplate, NomineeRepository nomineeRepository,
+                               ActivityLogService activityLogService, EmailService emailService) {
+        this.mongoTemplate = mongoTemplate;
+        this.nomineeRepository = nomineeRepository;
+        this.activityLogService = activityLogService;
+        this.emailService = emailService;
+    }
+
+    /**
+     * Records the release job for an approved claim and wakes the worker.
+     * Approving the same claim again does not create a second job.
+     */
+    public ReleaseJob enqueue(VerificationRequest request) {
+        ReleaseJob job = createJob(request);
+        wake();
+        return job;
+    }
+
+    /**
+     * Puts a FAILED job back in the queue with a fresh set of attempts. It
+     * resumes after its last checkpoint.
+     */
+    public ReleaseJob requeue(String requestId) {
+        ReleaseJob job = mongoTemplate.findAndModify(
+                query(where("_id").is(requestId).and("status").is(FAILED)),
+                new Update().set("status", QUEUED)
+                        .set("attempts", 0)
+                        .set("updatedAt", LocalDateTime.now())
+                        .unset("leaseOwner")
+                        .unset("leaseUntil"),
+                FindAndModifyOptions.options().returnNew(true),
+                ReleaseJob.class);
+        if (job == null) {
+            throw new RuntimeException("Release job " + requestId + " is " + getJob(requestId).getStatus()
+                    + ", only FAILED jobs can be requeued");
+        }
+        log.info("Release job {} requeued", requestId);
+        wake();
+        return job;
+    }
+
+    /**
+     * Creates the job of an approved claim, if it does not exist yet, and
+     * clears the claim's pending mark
+     */
+    private ReleaseJob createJob(VerificationRequest request) {
+        ReleaseJob job = new ReleaseJob();
+        job.setId(request.getId());
+        job.setNomineeId(request.getNomineeId());
+        job.setDeceasedUserId(request.getDeceasedUserId());
+        job.setStatus(QUEUED);
+        job.setCreatedAt(LocalDateTime.now());
+        job.setUpdatedAt(LocalDateTime.now());
+        try {
+            job = mongoTemplate.insert(job);
+        } catch (DuplicateKeyException e) {
+            job = mongoTemplate.findById(request.getId(), ReleaseJob.class);
+        }
+        mongoTemplate.updateFirst(query(where("_id").is(request.getId())),
+                new Update().unset("releasePending"), VerificationRequest.class);
+        return job;
+    }
+
+    /**
+     * Creates the jobs of approved claims that have none yet, e.g. because
+     * the process died between saving the approval and enqueueing it
+     */
+    private void createPendingJobs() {
+        List<VerificationRequest> pending = mongoTemplate.find(
+                query(where("releasePending").is(true).and("status").is("APPROVED")), VerificationRequest.class);
+        for (VerificationRequest request : pending) {
+            createJob(request);
+        }
+        if (!pending.isEmpty()) {
+            log.info("Queued {} approved claims that had no release job", pending.size());
+        }
+    }
+
+    public ReleaseJob getJob(String requestId) {
+        ReleaseJob job = mongoTemplate.findById(requestId, ReleaseJob.class);
+        if (job == null) {
+            throw new RuntimeException("No release job for verification request " + requestId);
+        }
+        return job;
+    }
+
+    /**
+     * Picks up queued jobs and jobs whose worker died, e.g. after a restart
+     */
+    @Scheduled(fixedDelayString = "${app.release.poll-interval-ms:30000}",
+               initialDelayString = "${app.release.initial-delay-ms:30000}")
+    public void poll() {
+        wake();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        worker.shutdownNow();
+    }
+
+    private void wake() {
+        if (!draining.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            worker.execute(this::drain);
+        } catch (RejectedExecutionException e) {
+            draining.set(false);
+        }
+    }
+
+    private void drain() {
+        try {
+            createPendingJobs();
+            String owner = UUID.randomUUID().toString();
+            ReleaseJob job;
+            while (!Thread.currentThread().isInterrupted() && (job = claim(owner)) != null) {
+                run(job, owner);
+            }
+        } finally {
+            draining.set(false);
+        }
+    }
+
+    /**
+     * Takes the oldest job that is queued or whose lease has run out
+     */
+    private ReleaseJob claim(String owner) {
+        LocalDateTime now = LocalDateTime.now();
+        return mongoTemplate.findAndModify(
+                new Query(where("status").in(QUEUED, RUNNING).orOperator(
+                        where("leaseUntil").is(null),
+                        where("leaseUntil").lt(now)))
+                        .with(Sort.by("createdAt")),
+                new Update().set("status", RUNNING)
+                        .set("leaseOwner", owner)
+                        .set("leaseUntil", now.plusMinutes(leaseMinutes))
+                        .inc("attempts", 1)
+                        .set("updatedAt", now),
+                FindAndModifyOptions.options().returnNew(true),
+                ReleaseJob.class);
+    }
+
+    private void run(ReleaseJob job, String owner) {
+        try {
+            Nominee nominee = nomineeRepository.findById(job.getNomineeId()).orElse(null);
+            String nomineeName = nominee != null ? nominee.getName() : "Unknown";
+            while (!job.isAssetsReleased()) {
+                job = releaseBatch(job, owner, nomineeName);
+                if (job == null) {
+                    log.warn("Lost the lease on release job, another worker has taken it over");
+                    return;
+                }
+            }
+            if (nominee != null && nominee.getEmail() != null) {
+                emailService.sendAssetsReleasedEmail(nominee.getEmail(), nominee.getName(), job.getReleasedAssets());
+            }
+            mongoTemplate.updateFirst(owned(job.getId(), owner), new Update()
+                    .set("status", COMPLETED)
+                    .set("completedAt", LocalDateTime.now())
+                    .set("updatedAt", LocalDateTime.now())
+                    .unset("leaseOwner")
+                    .unset("leaseUntil"), ReleaseJob.class);
+            log.info("Released {} assets of user {} to nominee {}", job.getReleasedAssets(),
+                    job.getDeceasedUserId(), job.getNomineeId());
+        } catch (RuntimeException e) {
+            log.warn("Release job {} failed on attempt {}: {}", job.getId(), job.getAttempts(), e.getMessage());
+            Update update = new Update().set("lastError", e.getMessage())
+                    .set("updatedAt", LocalDateTime.now())
+                    .unset("leaseOwner");
+            if (job.getAttempts() >= maxAttempts) {
+                update.set("status", FAILED).unset("leaseUntil");
+            } else {
+                // Not claimable again until the backoff has passed
+                update.set("status", QUEUED).set("leaseUntil", LocalDateTime.now().plus(backoff(job.getAttempts())));
+            }
+            mongoTemplate.updateFirst(owned(job.getId(), owner), update, ReleaseJob.class);
+        }
+    }
+
+    /**
+     * Releases the next batch after the job's cursor and checkpoints it
+     * @return The job after the checkpoint, or null if the lease was lost
+     */
+    private ReleaseJob releaseBatch(ReleaseJob job, String owner, String nomineeName) {
+        Criteria assigned = where("userId").is(job.getDeceasedUserId()).and("nomineeIds").is(job.getNomineeId());
+        if (job.getCursor() != null) {
+            assigned.and("_id").gt(job.getCursor());
+        }
+        Query next = query(assigned).with(Sort.by("_id")).limit(batchSize);
+        next.fields().include("_id", "fileName");
+        List<Asset> batch = mongoTemplate.find(next, Asset.class);
+
+        Update checkpoint = new Update()
+                .set("leaseUntil", LocalDateTime.now().plusMinutes(leaseMinutes))
+                .set("updatedAt", LocalDateTime.now());
+        if (batch.isEmpty()) {
+            checkpoint.set("assetsReleased", true);
+        } else {
+            LocalDateTime now = LocalDateTime.now();
+            List<String> ids = batch.stream().map(Asset::getId).toList();
+            mongoTemplate.updateMulti(query(where("_id").in(ids)),
+                    new Update().set("isReleased", true).set("releasedAt", now), Asset.class);
+
+            List<ActivityLog> logs = batch.stream()
+                    .map(asset -> activityLogService.entry(job.getNomineeId(), nomineeName, "ASSET_RELEASED",
+                            "Asset released: " + asset.getFileName(), asset.getId(), "NOMINEE"))
+                    .toList();
+            activityLogService.logAll(logs);
+
+            checkpoint.set("cursor", ids.get(ids.size() - 1)).inc("releasedAssets", (long) ids.size());
+        }
+        return mongoTemplate.findAndModify(owned(job.getId(), owner), checkpoint,
+                FindAndModifyOptions.options().returnNew(true), ReleaseJob.class);
+    }
+
+    private Duration backoff(int attempts) {
+        Duration max = Duration.ofMinutes(maxBackoffMinutes);
+        Duration delay = Duration.ofSeconds(retryBackoffSeconds).multipliedBy(1L << Math.min(attempts - 1, 20));
+        return delay.compareTo(max) > 0 ? max : delay;
+    }
+
+    private Query owned(String jobId, String owner) {
+        return query(where("_id").is(jobId).and("leaseOwner").is(owner));
+    }
+}
@@ -0,0 +1,191 @@
+package com.securevault.service;
+
+import com.securevault.model.Asset;
+import com.securevault.model.Nominee;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.mongodb.core.schema.JsonSchemaObject;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+/**
+ * Keeps the search terms of assets in step with their names, descriptions and
+ * nominees. Each word is stored with its leading prefixes ("tax" also as
+ * "ta"), so the text index, which only matches whole terms, answers prefix
+ * queries. The terms are rebuilt by the write paths that change their sources.
+ * Nominee terms are kept as one entry per nominee, led by the nominee's id,
+ * so assigning or removing a nominee can change them in the same update as
+ * nomineeIds (see {@link #addNominee} and {@link #removeNominee}). The id is
+ * a single 24-character word with no stored prefixes, and searches are cut
+ * to 20 characters, so it never matches a search.
+ */
+@Component
+public class AssetSearchIndexer {
+
+    private static final Logger log = LoggerFactory.getLogger(AssetSearchIndexer.class);
+
+    private static final int MIN_PREFIX = 2;
+    private static final int MAX_PREFIX = 20;
+    // Long descriptions only contribute their opening text
+    private static final int MAX_SOURCE_CHARS = 4000;
+    private static final int BATCH_SIZE = 500;
+
+    private final MongoTemplate mongoTemplate;
+    private final ReferenceResolver referenceResolver;
+
+    public AssetSearchIndexer(MongoTemplate mongoTemplate, ReferenceResolver referenceResolver) {
+        this.mongoTemplate = mongoTemplate;
+        this.referenceResolver = referenceResolver;
+    }
+
+    /**
+     * Sets the search terms on an asset that is about to be saved
+     */
+    public void apply(Asset asset, Collection<Nominee> nominees) {
+        asset.setSearchName(terms(asset.getFileName()));
+        asset.setSearchDescription(terms(asset.getDescription()));
+        asset.setSearchNominees(nominees.stream().map(this::nomineeTerms).toList());
+    }
+
+    /**
+     * Adds the nominee's terms to an update that assigns it to an asset
+     */
+    public Update addNominee(Update update, Nominee nominee) {
+        return update.addToSet("searchNominees", nomineeTerms(nominee));
+    }
+
+    /**
+     * Removes the nominee's terms in an update that unassigns it from an
+     * asset. Matched by id, so it works whatever the nominee is called now.
+     */
+    public Update removeNominee(Update update, String nomineeId) {
+        return update.pull("searchNominees", new Document("$regex", "^" + Pattern.quote(nomineeId) + " "));
+    }
+
+    /**
+     * Rebuilds the search terms of saved assets with one bulk write
+     */
+    public void refresh(Collection<String> assetIds) {
+        if (assetIds.isEmpty()) {
+            return;
+        }
+        Query assets = query(where("_id").in(assetIds));
+        assets.fields().include("fileName", "description", "nomineeIds");
+        write(mongoTemplate.find(assets, Asset.class));
+    }
+
+    /**
+     * Rebuilds the search terms of every asset the nominee is assigned to,
+     * after it was renamed or deleted
+     */
+    public void refreshNominee(String nomineeId) {
+        Query assets = query(where("nomineeIds").is(nomineeId));
+        assets.fields().include("_id");
+        refresh(mongoTemplate.find(assets, Asset.class).stream().map(Asset::getId).toList());
+    }
+
+    /**
+     * Indexes assets created before search existed, one batch at a time
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfill() {
+        int indexed = 0;
+        List<Asset> batch;
+        do {
+            // Also assets whose nominee terms predate the per-nominee entries
+            Query missing = query(new Criteria().orOperator(
+                    where("searchName").exists(false),
+                    where("searchNominees").exists(true).not().type(JsonSchemaObject.Type.ARRAY))).limit(BATCH_SIZE);
+            missing.fields().include("fileName", "description", "nomineeIds");
+            batch = mongoTemplate.find(missing, Asset.class);
+            write(batch);
+            indexed += batch.size();
+        } while (batch.size() == BATCH_SIZE);
+        if (indexed > 0) {
+            log.info("Built search terms for {} assets", indexed);
+        }
+    }
+
+    /**
+     * Turns user input into a $text search string. Every word is quoted, so
+     * all of them must match, and cut to the longest stored prefix.
+     * @return The search string, or null if the input has no words
+     */
+    public String searchString(String input) {
+        List<String> words = words(input);
+        if (words.isEmpty()) {
+            return null;
+        }
+        return words.stream()
+                .map(word -> "\"" + word.substring(0, Math.min(word.length(), MAX_PREFIX)) + "\"")
+                .distinct()
+                .collect(Collectors.joining(" "));
+    }
+
+    private void write(List<Asset> assets) {
+        if (assets.isEmpty()) {
+            return;
+        }
+        Map<String, Nominee> nominees = referenceResolver.nominees(
+                assets.stream().flatMap(asset -> asset.getNomineeIds().stream()).toList());
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Asset.class);
+        for (Asset asset : assets) {
+            apply(asset, asset.getNomineeIds().stream().map(nominees::get).filter(Objects::nonNull).toList());
+            bulk.updateOne(query(where("_id").is(asset.getId())), new Update()
+                    .set("searchName", asset.getSearchName())
+                    .set("searchDescription", asset.getSearchDescription())
+                    .set("searchNominees", asset.getSearchNominees()));
+        }
+        bulk.execute();
+    }
+
+    private String nomineeTerms(Nominee nominee) {
+        return nominee.getId() + " " + terms(nominee.getName());
+    }
+
+    private String terms(String text) {
+        Set<String> terms = new LinkedHashSet<>();
+        for (String word : words(text)) {
+            for (int length = Math.min(MIN_PREFIX, word.length()); length <= Math.min(word.length(), MAX_PREFIX); length++) {
+                terms.add(word.substring(0, length));
+            }
+            terms.add(word);
+        }
+        return String.join(" ", terms);
+    }
+
+    private List<String> words(String text) {
+        List<String> words = new ArrayList<>();
+        if (text == null) {
+            return words;
+        }
+        String source = text.length() > MAX_SOURCE_CHARS ? text.substring(0, MAX_SOURCE_CHARS) : text;
+        for (String word : source.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+")) {
+            if (!word.isEmpty()) {
+                words.add(word);
+            }
+        }
+        return words;
+    }
+}
@@ -1,21 +1,46 @@
 package com.securevault.service;
 
+import com.securevault.dto.AssetPageDTO;
 import com.securevault.dto.AssetResponseDTO;
 import com.securevault.model.Asset;
+import com.securevault.model.AssetState;
 import com.securevault.model.Nominee;
 import com.securevault.model.User;
 import com.securevault.repository.AssetRepository;
 import com.securevault.repository.NomineeRepository;
 import com.securevault.repository.UserRepository;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
+import org.springframework.data.mongodb.core.aggregation.TypedAggregation;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.security.access.AccessDeniedException;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
 import java.util.stream.Collectors;
 
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
 @Service
 public class AssetService {
 
@@ -24,15 +49,31 @@ public class AssetService {
     private final NomineeRepository nomineeRepository;
     private final StorageService storageService;
     private final ActivityLogService activityLogService;
+    private final PreviewService previewService;
+    private final MongoTemplate mongoTemplate;
+    private final AssetSearchIndexer assetSearchIndexer;
+    private final StorageUsageService storageUsageService;
+    private final AssetVersionService assetVersionService;
+
+    // Fields of AssetResponseDTO a listing can select
+    private static final Set<String> LISTING_FIELDS = Set.of("id", "fileName", "fileType", "fileSize", "description",
+            "fileId", "previewFileId", "nominees", "uploadedAt", "isReleased", "state", "archivedAt");
 
     public AssetService(AssetRepository assetRepository, UserRepository userRepository, 
                         NomineeRepository nomineeRepository, StorageService storageService,
-                        ActivityLogService activityLogService) {
+                        ActivityLogService activityLogService, PreviewService previewService,
+                        MongoTemplate mongoTemplate, AssetSearchIndexer assetSearchIndexer,
+                        StorageUsageService storageUsageService, AssetVersionService assetVersionService) {
         this.assetRepository = assetRepository;
         this.userRepository = userRepository;
         this.nomineeRepository = nomineeRepository;
         this.storageService = storageService;
         this.activityLogService = activityLogService;
+        this.previewService = previewService;
+        this.mongoTemplate = mongoTemplate;
+        this.assetSearchIndexer = assetSearchIndexer;
+        this.storageUsageService = storageUsageService;
+        this.assetVersionService = assetVersionService;
     }
 
     private String getUserName(String userId) {
@@ -45,6 +86,19 @@ public class AssetService {
         User user = userRepository.findById(userId)
                 .orElseThrow(() -> new RuntimeException("User not found"));
 
+        verifyNomineeOwnership(userId, nomineeId);
+        storageUsageService.checkQuota(userId, file.getSize());
+
+        String fileId = storageService.saveFile(file, userId);
+
+        return createAsset(user, nomineeId, description, file.getOriginalFilename(),
+                file.getContentType(), file.getSize(), fileId);
+    }
+
+    /**
+     * Ensures the nominee exists and belongs to the user
+     */
+    public Nominee verifyNomineeOwnership(String userId, String nomineeId) {
         Nominee nominee = nomineeRepository.findById(nomineeId)
                 .orElseThrow(() -> new RuntimeException("Nominee not found"));
 
@@ -52,14 +106,58 @@ public class AssetService {
         if (!nominee.getUserId().equals(userId)) {
             throw new AccessDeniedException("Nominee does not belong to the user");
         }
+        return nominee;
+    }
 
-        String fileId = storageService.saveFile(file);
+    /**
+     * Creates the asset record for a file that is already in storage
+     */
+    public Asset createAsset(User user, String nomineeId, String description, String fileName,
+                             String fileType, long fileSize, String fileId) {
+        return createAsset(user, null, nomineeId, description, fileName, fileType, fileSize, fileId);
+    }
 
-        Asset asset = new Asset();
-        asset.setFileName(file.getOriginalFilename());
-        asset.setFileType(file.getContentType());
-        asset.setFileSize(file.getSize());
+    /**
+     * @param assetId Pre-assigned id, so a retried commit can tell whether the asset exists already;
+     *                null to let MongoDB assign one
+     */
+    public Asset createAsset(User user, String assetId, String nomineeId, String description, String fileName,
+                             String fileType, long fileSize, String fileId) {
+        Asset asset = newAsset(user.getId(), nomineeId, description, fileName, fileType, fileSize);
+        asset.setId(assetId);
         asset.setFileId(fileId);
+        asset.setState(AssetState.UPLOADED);
+
+        Asset saved = assetRepository.insert(asset);
+        storageUsageService.recordCreated(saved);
+        activityLogService.log(user.getId(), user.getFullName(), "ASSET_UPLOAD", "Uploaded asset: " + saved.getFileName(), saved.getId(), "USER");
+        previewService.requestPreview(saved);
+        return saved;
+    }
+
+    /**
+     * Creates the asset record for an async upload before its file is stored.
+     * The asset stays PENDING, without a fileId, until the upload worker finishes.
+     * @param assetId Pre-assigned id, so the spooled file can be named after it
+     * @param leaseUntil Until when the submitting node holds the upload
+     */
+    public Asset createPendingAsset(String userId, String assetId, String nomineeId, String description,
+                                    String fileName, String fileType, long fileSize, LocalDateTime leaseUntil) {
+        Asset asset = newAsset(userId, nomineeId, description, fileName, fileType, fileSize);
+        asset.setId(assetId);
+        asset.setState(AssetState.PENDING);
+        asset.setUploadLeaseUntil(leaseUntil);
+        Asset saved = assetRepository.insert(asset);
+        storageUsageService.recordCreated(saved);
+        return saved;
+    }
+
+    private Asset newAsset(String userId, String nomineeId, String description, String fileName,
+                           String fileType, long fileSize) {
+        Asset asset = new Asset();
+        asset.setFileName(fileName);
+        asset.setFileType(fileType);
+        asset.setFileSize(fileSize);
         asset.setDescription(description);
         asset.setUserId(userId);
 
@@ -70,46 +168,240 @@ public class AssetService {
 
         asset.setUploadedAt(LocalDateTime.now());
         asset.setIsReleased(false);
-
-        Asset saved = assetRepository.save(asset);
-        activityLogService.log(userId, user.getFullName(), "ASSET_UPLOAD", "Uploaded asset: " + saved.getFileName(), saved.getId(), "USER");
-        return saved;
+        assetSearchIndexer.apply(asset, nomineeRepository.findById(nomineeId).stream().toList());
+        return asset;
     }
 
     public List<AssetResponseDTO> getUserAssets(String userId) {
-        List<Asset> assets = assetRepository.findByUserId(userId);
-        return assets.stream().map(this::mapToDTO).toList();
-    }
-
-    private AssetResponseDTO mapToDTO(Asset asset) {
-        AssetResponseDTO dto = new AssetResponseDTO();
-        dto.setId(asset.getId());
-        dto.setFileName(asset.getFileName());
-        dto.setFileType(asset.getFileType());
-        dto.setFileSize(asset.getFileSize());
-        dto.setDescription(asset.getDescription());
-        dto.setFileId(asset.getFileId());
-        dto.setUploadedAt(asset.getUploadedAt());
-        dto.setIsReleased(asset.getIsReleased());
-
-        // Fetch ALL nominees assigned to this asset
-        List<AssetResponseDTO.NomineeInfo> nomineeInfoList = new ArrayList<>();
-        List<String> nomineeIds = asset.getNomineeIds();
-        if (nomineeIds != null && !nomineeIds.isEmpty()) {
-            for (String nomineeId : nomineeIds) {
-                nomineeRepository.findById(nomineeId).ifPresent(nominee -> {
-                    nomineeInfoList.add(new AssetResponseDTO.NomineeInfo(
-                            nominee.getId(),
-                            nominee.getName(),
-                            nominee.getEmail(),
-                            nominee.getRelationship()
-                    ));
-                });
+        return getUserAssets(userId, null);
+    }
+
+    /**
+     * @param fields Sparse fieldset, e.g. "fileName,nominees"; null for every field
+     */
+    public List<AssetResponseDTO> getUserAssets(String userId, String fields) {
+        Set<String> selected = parseFields(fields);
+        return mongoTemplate.aggregate(listing(newestFirst(where("userId").is(userId), null), selected), AssetResponseDTO.class)
+                .getMappedResults();
+    }
+
+    /**
+     * One page of the user's assets, newest first. Pages are cut by the
+     * (uploadedAt, id) of the last asset returned rather than by offset, so
+     * each page is an index range scan and uploads in between do not shift it.
+     * @param cursor nextCursor of the previous page, or null for the first page
+     * @param fileType Optional filter; a value ending in "/" matches the whole type, e.g. "image/"
+     * @param released Optional filter on the released flag
+     * @param fields Sparse fieldset; null for every field
+     */
+    public AssetPageDTO getUserAssetsPage(String userId, String cursor, int limit, String fileType, Boolean released,
+                                          String fields) {
+        Set<String> selected = parseFields(fields);
+        // The cursor is cut from uploadedAt, so it is read even when not asked for
+        Set<String> read = new LinkedHashSet<>(selected);
+        read.add("uploadedAt");
+        List<AssetResponseDTO> assets = new ArrayList<>(mongoTemplate.aggregate(
+                listing(newestFirst(userAssetsCriteria(userId, fileType, released, cursor), limit + 1), read),
+                AssetResponseDTO.class).getMappedResults());
+        String nextCursor = null;
+        if (assets.size() > limit) {
+            assets = assets.subList(0, limit);
+            AssetResponseDTO last = assets.get(limit - 1);
+            nextCursor = encodeCursor(last.getUploadedAt(), last.getId());
+        }
+        if (!selected.contains("uploadedAt")) {
+            assets.forEach(asset -> asset.setUploadedAt(null));
+        }
+        return new AssetPageDTO(assets, nextCursor);
+    }
+
+    /**
+     * Hands every matching asset to the consumer as the Mongo cursor advances,
+     * newest first, so memory stays flat however large the vault is
+     */
+    public void streamUserAssets(String userId, String fileType, Boolean released, String fields,
+                                 Consumer<AssetResponseDTO> consumer) {
+        Set<String> selected = parseFields(fields);
+        try (Stream<AssetResponseDTO> assets = mongoTemplate.aggregateStream(
+                listing(newestFirst(userAssetsCriteria(userId, fileType, released, null), null), selected),
+                AssetResponseDTO.class)) {
+            assets.forEach(consumer);
+        }
+    }
+
+    /**
+     * Searches the user's asset names, descriptions and nominee names. Every
+     * word must match the start of a word in one of them; results are ranked
+     * with name matches above nominee and description matches.
+     * @param cursor nextCursor of the previous page, or null for the first page
+     * @param fields Sparse fieldset; null for every field
+     */
+    public AssetPageDTO searchUserAssets(String userId, String text, String cursor, int limit, String fields) {
+        Set<String> selected = parseFields(fields);
+        String search = assetSearchIndexer.searchString(text);
+        if (search == null) {
+            return new AssetPageDTO(List.of(), null);
+        }
+        int offset = decodeSearchCursor(cursor);
+        // userId is the equality prefix of the text index, so only the caller's assets are scanned
+        List<AggregationOperation> selection = new ArrayList<>();
+        selection.add(context -> new Document("$match", new Document("userId", userId)
+                .append("$text", new Document("$search", search))));
+        selection.add(context -> new Document("$sort", new Document("score", new Document("$meta", "textScore"))
+                .append("_id", -1)));
+        selection.add(Aggregation.skip((long) offset));
+        selection.add(Aggregation.limit(limit + 1));
+        List<AssetResponseDTO> assets = new ArrayList<>(mongoTemplate.aggregate(listing(selection, selected),
+                AssetResponseDTO.class).getMappedResults());
+        String nextCursor = null;
+        if (assets.size() > limit) {
+            assets = assets.subList(0, limit);
+            nextCursor = Integer.toString(offset + limit);
+        }
+        return new AssetPageDTO(assets, nextCursor);
+    }
+
+    private int decodeSearchCursor(String cursor) {
+        if (cursor == null || cursor.isBlank()) {
+            return 0;
+        }
+        try {
+            return Math.max(0, Integer.parseInt(cursor));
+        } catch (NumberFormatException e) {
+            throw new RuntimeException("Invalid cursor");
+        }
+    }
+
+    private List<AggregationOperation> newestFirst(Criteria criteria, Integer limit) {
+        List<AggregationOperation> selection = new ArrayList<>();
+        selection.add(Aggregation.match(criteria));
+        selection.add(Aggregation.sort(Sort.by(Sort.Direction.DESC, "uploadedAt", "_id")));
+        if (limit != null) {
+            selection.add(Aggregation.limit(limit));
+        }
+        return selection;
+    }
+
+    /**
+     * The listing read model: takes the stages that select and order the
+     * assets, projects only the selected fields and, when nominees are
+     * selected, joins them with a $lookup that returns just what NomineeInfo
+     * needs. Results map straight onto AssetResponseDTO without loading Asset
+     * or Nominee entities.
+     */
+    private TypedAggregation<Asset> listing(List<AggregationOperation> selection, Set<String> fields) {
+        List<AggregationOperation> stages = new ArrayList<>(selection);
+
+        Document projection = projectionOf(fields);
+        if (fields.contains("nominees")) {
+            // nomineeIds hold the hex strings of nominee ObjectIds
+            projection.append("nomineeOids", new Document("$map", new Document("input", new Document("$ifNull", List.of("$nomineeIds", List.of())))
+                    .append("as", "id")
+                    .append("in", new Document("$convert", new Document("input", "$$id").append("to", "objectId")
+                            .append("onError", null).append("onNull", null)))));
+        }
+        stages.add(context -> new Document("$project", projection));
+
+        if (fields.contains("nominees")) {
+            stages.add(context -> new Document("$lookup", new Document("from", "nominees")
+                    .append("localField", "nomineeOids")
+                    .append("foreignField", "_id")
+                    .append("pipeline", List.of(new Document("$project",
+                            new Document("name", 1).append("email", 1).append("relationship", 1))))
+                    .append("as", "nominees")));
+            // $lookup returns nominees in collection order; restore the order they were assigned in
+            stages.add(context -> new Document("$project", new Document(projectionOf(fields))
+                    .append("nominees", new Document("$filter", new Document("input", new Document("$map", new Document("input", new Document("$ifNull", List.of("$nomineeOids", List.of())))
+                            .append("as", "oid")
+                            .append("in", new Document("$arrayElemAt", List.of(
+                                    new Document("$filter", new Document("input", "$nominees")
+                                            .append("cond", new Document("$eq", List.of("$$this._id", "$$oid")))),
+                                    0)))))
+                            .append("cond", new Document("$ne", Arrays.asList("$$this", null)))))));
+        }
+        return Aggregation.newAggregation(Asset.class, stages);
+    }
+
+    /**
+     * Fields missing on older documents get the defaults the Asset entity
+     * gives them, so listings match what loading the entity returned
+     */
+    private Document projectionOf(Set<String> fields) {
+        Document projection = new Document("_id", 1);
+        fields.stream().filter(field -> !field.equals("id") && !field.equals("nominees"))
+                .forEach(field -> projection.append(field, switch (field) {
+                    case "state" -> new Document("$ifNull", List.of("$state", AssetState.UPLOADED.name()));
+                    case "isReleased" -> new Document("$ifNull", List.of("$isReleased", false));
+                    default -> 1;
+                }));
+        return projection;
+    }
+
+    /**
+     * Parses a comma-separated sparse fieldset. The id is always returned.
+     */
+    private Set<String> parseFields(String fields) {
+        if (fields == null || fields.isBlank()) {
+            return LISTING_FIELDS;
+        }
+        Set<String> selected = new LinkedHashSet<>();
+        selected.add("id");
+        for (String field : fields.split(",")) {
+            String name = field.trim();
+            if (name.isEmpty()) {
+                continue;
+            }
+            if (!LISTING_FIELDS.contains(name)) {
+                throw new RuntimeException("Unknown field: " + name);
+            }
+            selected.add(name);
+        }
+        return selected;
+    }
+
+    private Criteria userAssetsCriteria(String userId, String fileType, Boolean released, String cursor) {
+        Criteria criteria = where("userId").is(userId);
+        if (fileType != null && !fileType.isBlank()) {
+            if (fileType.endsWith("/")) {
+                criteria.and("fileType").regex("^" + Pattern.quote(fileType));
+            } else {
+                criteria.and("fileType").is(fileType);
+            }
+        }
+        if (released != null) {
+            // ne(true) also matches assets from before the flag existed
+            if (released) {
+                criteria.and("isReleased").is(true);
+            } else {
+                criteria.and("isReleased").ne(true);
             }
         }
-        dto.setNominees(nomineeInfoList);
+        if (cursor != null && !cursor.isBlank()) {
+            String[] position = decodeCursor(cursor);
+            LocalDateTime uploadedAt = LocalDateTime.parse(position[0]);
+            criteria.orOperator(
+                    where("uploadedAt").lt(uploadedAt),
+                    where("uploadedAt").is(uploadedAt).and("_id").lt(new ObjectId(position[1])));
+        }
+        return criteria;
+    }
+
+    private String encodeCursor(LocalDateTime uploadedAt, String id) {
+        String position = uploadedAt + "|" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(position.getBytes(StandardCharsets.UTF_8));
+    }
 
-        return dto;
+    private String[] decodeCursor(String cursor) {
+        try {
+            String[] position = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split("\\|");
+            if (position.length != 2 || !ObjectId.isValid(position[1])) {
+                throw new IllegalArgumentException();
+            }
+            LocalDateTime.parse(position[0]);
+            return position;
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            throw new RuntimeException("Invalid cursor");
+        }
     }
 
     /**
@@ -123,32 +415,21 @@ public class AssetService {
             asset.setDescription(description);
         }
         Asset saved = assetRepository.save(asset);
+        assetSearchIndexer.refresh(List.of(saved.getId()));
         activityLogService.log(userId, getUserName(userId), "ASSET_UPDATE", "Updated description for asset: " + saved.getFileName(), saved.getId(), "USER");
         return saved;
     }
 
     /**
-     * Assign a nominee to an asset (called from Manage Nominees)
+     * Assign a nominee to an asset (called from Manage Nominees).
+     * One conditional $addToSet, so concurrent edits of the same asset never
+     * overwrite each other.
      */
     public Asset assignNomineeToAsset(String assetId, String userId, String nomineeId) {
-        Asset asset = getAsset(assetId, userId);
-        
-        Nominee nominee = nomineeRepository.findById(nomineeId)
-                .orElseThrow(() -> new RuntimeException("Nominee not found"));
-        if (!nominee.getUserId().equals(userId)) {
-            throw new AccessDeniedException("Nominee does not belong to the user");
-        }
+        Nominee nominee = verifyNomineeOwnership(userId, nomineeId);
 
-        List<String> nomineeIds = asset.getNomineeIds();
-        if (nomineeIds == null) {
-            nomineeIds = new ArrayList<>();
-        }
-        if (!nomineeIds.contains(nomineeId)) {
-            nomineeIds.add(nomineeId);
-            asset.setNomineeIds(nomineeIds);
-        }
-
-        Asset saved = assetRepository.save(asset);
+        Asset saved = updateNominees(assetId, userId,
+                assetSearchIndexer.addNominee(new Update().addToSet("nomineeIds", nomineeId), nominee));
         activityLogService.log(userId, getUserName(userId), "NOMINEE_ASSIGNED", "Assigned nominee " + nominee.getName() + " to asset: " + saved.getFileName(), saved.getId(), "USER");
         return saved;
     }
@@ -157,20 +438,34 @@ public class AssetService {
      * Remove a specific nominee from an asset (called from Manage Nominees)
      */
     public Asset removeNomineeFromAsset(String assetId, String userId, String nomineeId) {
-        Asset asset = getAsset(assetId, userId);
-        
-        List<String> nomineeIds = asset.getNomineeIds();
+        Asset saved = updateNominees(assetId, userId,
+                assetSearchIndexer.removeNominee(new Update().pull("nomineeIds", nomineeId), nomineeId));
         String nomineeName = nomineeRepository.findById(nomineeId).map(Nominee::getName).orElse("Unknown");
-        if (nomineeIds != null) {
-            nomineeIds.remove(nomineeId);
-            asset.setNomineeIds(nomineeIds);
-        }
-
-        Asset saved = assetRepository.save(asset);
         activityLogService.log(userId, getUserName(userId), "NOMINEE_REMOVED", "Removed nominee " + nomineeName + " from asset: " + saved.getFileName(), saved.getId(), "USER");
         return saved;
     }
 
+    /**
+     * Applies the update to the asset if the user owns it, in the same
+     * operation as the ownership check. The update carries the matching
+     * change to the search terms, so this is the only write.
+     * @return The asset after the update, with only id, fileName and nomineeIds loaded
+     */
+    private Asset updateNominees(String assetId, String userId, Update update) {
+        Query owned = query(where("_id").is(assetId).and("userId").is(userId));
+        owned.fields().include("fileName", "nomineeIds");
+        Asset updated = mongoTemplate.findAndModify(owned, update,
+                FindAndModifyOptions.options().returnNew(true), Asset.class);
+        if (updated == null) {
+            // Only the failure path pays for telling the two cases apart
+            if (!assetRepository.existsById(assetId)) {
+                throw new RuntimeException("Asset not found");
+            }
+            throw new AccessDeniedException("Ownership check failed");
+        }
+        return updated;
+    }
+
     public Asset getAsset(String assetId, String userId) {
         Asset asset = assetRepository.findById(assetId)
                 .orElseThrow(() -> new RuntimeException("Asset not found"));
@@ -184,14 +479,27 @@ public class AssetService {
     }
 
     public void deleteAsset(String assetId, String userId) {
-        Asset asset = getAsset(assetId, userId);
-        String fileName = asset.getFileName();
-        // Delete the file from GridFS storage
+        getAsset(assetId, userId);
+        // Remove the document first: only the request that actually removed it
+        // releases the file, so a double-submitted delete drops one reference.
+        // An asset a bulk delete has claimed is left to that bulk delete.
+        LocalDateTime now = LocalDateTime.now();
+        Asset asset = mongoTemplate.findAndRemove(
+                query(where("_id").is(assetId).and("userId").is(userId).orOperator(
+                        where("deleteClaimUntil").is(null),
+                        where("deleteClaimUntil").lt(now))), Asset.class);
+        if (asset == null) {
+            throw new RuntimeException("Asset not found");
+        }
         if (asset.getFileId() != null) {
             storageService.deleteFile(asset.getFileId());
         }
-        // Delete asset metadata from MongoDB
-        assetRepository.delete(asset);
-        activityLogService.log(userId, getUserName(userId), "ASSET_DELETE", "Deleted asset: " + fileName, assetId, "USER");
+        storageUsageService.recordDeleted(asset);
+        assetVersionService.releaseVersions(List.of(assetId));
+        // The preview is shared with other assets of the same content
+        if (asset.getPreviewFileId() != null && !assetRepository.existsByPreviewFileId(asset.getPreviewFileId())) {
+            storageService.deleteFile(asset.getPreviewFileId());
+        }
+        activityLogService.log(userId, getUserName(userId), "ASSET_DELETE", "Deleted asset: " + asset.getFileName(), assetId, "USER");
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,517 @@
+package com.securevault.service;
+
+import com.securevault.model.Asset;
+import com.securevault.model.AssetState;
+import com.securevault.model.AssetVersion;
+import com.securevault.model.StoredBlob;
+import com.securevault.model.User;
+import com.securevault.model.VersionChunk;
+import com.securevault.repository.UserRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+/**
+ * Version history of assets. Uploading a new version replaces the asset's
+ * file as before, so downloads, previews and range requests are unchanged;
+ * the replaced content is split with FastCDC and kept as a list of chunks
+ * (see {@link AssetVersion}). Only chunks the owner does not already have
+ * are written, so successive edits of a document cost the changed chunks
+ * rather than a full copy each; those new chunks count towards the owner's
+ * usage. New chunks are packed into container files of about
+ * {@code app.versions.container-bytes}, and {@link VersionChunk} entries
+ * say where each one is, so a version takes a file and a lookup per
+ * container rather than per chunk both to store and to read back.
+ */
+@Service
+public class AssetVersionService {
+
+    private static final Logger log = LoggerFactory.getLogger(AssetVersionService.class);
+
+    private final MongoTemplate mongoTemplate;
+    private final StorageService storageService;
+    private final StorageUsageService storageUsageService;
+    private final PreviewService previewService;
+    private final AssetSearchIndexer assetSearchIndexer;
+    private final ActivityLogService activityLogService;
+    private final UserRepository userRepository;
+    private final FastCdcChunker chunker;
+    private final int containerBytes;
+
+    public AssetVersionService(MongoTemplate mongoTemplate, StorageService storageService,
+                               StorageUsageService storageUsageService, PreviewService previewService,
+                               AssetSearchIndexer assetSearchIndexer, ActivityLogService activityLogService,
+                               UserRepository userRepository,
+                               @Value("${app.versions.chunk.min-bytes:8192}") int minChunk,
+                               @Value("${app.versions.chunk.avg-bytes:32768}") int avgChunk,
+                               @Value("${app.versions.chunk.max-bytes:131072}") int maxChunk,
+                               @Value("${app.versions.container-bytes:4194304}") int containerBytes) {
+        this.mongoTemplate = mongoTemplate;
+        this.storageService = storageService;
+        this.storageUsageService = storageUsageService;
+        this.previewService = previewService;
+        this.assetSearchIndexer = assetSearchIndexer;
+        this.activityLogService = activityLogService;
+        this.userRepository = userRepository;
+        this.chunker = new FastCdcChunker(minChunk, avgChunk, maxChunk);
+        this.containerBytes = containerBytes;
+    }
+
+    /**
+     * Makes the upload the asset's current content and keeps the previous
+     * content as a chunked version. The previous content is only chunked once
+     * the swap has gone through, so an upload that loses a race leaves no
+     * version behind; if chunking fails the previous file is kept whole.
+     * @return The new current version
+     */
+    public AssetVersion uploadVersion(String assetId, String userId, MultipartFile file) throws IOException {
+        Asset asset = getOwnedAsset(assetId, userId);
+        if (asset.getFileId() == null || asset.getState() != AssetState.UPLOADED) {
+            throw new RuntimeException("Asset has no stored file to version yet");
+        }
+        storageUsageService.checkQuota(userId, file.getSize());
+
+        AssetVersion previous = currentVersion(asset);
+        String fileId = storageService.saveFile(file, userId);
+        if (fileId.equals(asset.getFileId())) {
+            storageService.deleteFile(fileId);
+            throw new RuntimeException("The upload is identical to the current version");
+        }
+
+        Asset updated;
+        try {
+            Query unchanged = query(where("_id").is(assetId).and("userId").is(userId).and("fileId").is(asset.getFileId()));
+            updated = mongoTemplate.findAndModify(unchanged, new Update()
+                            .set("fileId", fileId)
+                            .set("fileName", file.getOriginalFilename())
+                            .set("fileType", file.getContentType())
+                            .set("fileSize", file.getSize())
+                            .unset("previewFileId")
+                            .unset("previewSize")
+                            .unset("previewUnavailable")
+                            .unset("archivedAt"),
+                    FindAndModifyOptions.options().returnNew(true), Asset.class);
+            if (updated == null) {
+                throw new RuntimeException("The asset changed while the version was uploading");
+            }
+        } catch (RuntimeException e) {
+            storageService.deleteFile(fileId);
+            throw e;
+        }
+
+        AssetVersion current;
+        try {
+            current = mongoTemplate.insert(newVersion(updated, previous.getVersion() + 1));
+        } catch (DuplicateKeyException e) {
+            // A concurrent read recorded the new content first
+            current = currentVersion(updated);
+        }
+
+        boolean chunked = false;
+        try {
+            chunked = chunkVersion(previous);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Could not chunk version {} of asset {}, keeping its file: {}",
+                    previous.getVersion(), assetId, e.getMessage());
+        }
+        if (chunked) {
+            // The previous content now lives on in its chunks
+            storageService.deleteFile(asset.getFileId());
+        } else {
+            keepFile(previous);
+        }
+        if (asset.getPreviewFileId() != null
+                && !mongoTemplate.exists(query(where("previewFileId").is(asset.getPreviewFileId())), Asset.class)) {
+            storageService.deleteFile(asset.getPreviewFileId());
+        }
+        storageUsageService.recordDeleted(asset);
+        storageUsageService.recordCreated(updated);
+        previewService.requestPreview(updated);
+        assetSearchIndexer.refresh(List.of(assetId));
+
+        String userName = userRepository.findById(userId).map(User::getFullName).orElse("Unknown User");
+        activityLogService.log(userId, userName, "ASSET_VERSION_UPLOAD",
+                "Uploaded version " + current.getVersion() + " of asset: " + updated.getFileName(), assetId, "USER");
+        return current;
+    }
+
+    /**
+     * @return The asset's versions, newest first
+     */
+    public List<AssetVersion> listVersions(String assetId, String userId) {
+        Asset asset = getOwnedAsset(assetId, userId);
+        if (asset.getFileId() != null) {
+            currentVersion(asset);
+        }
+        Query versions = query(where("assetId").is(assetId)).with(Sort.by(Sort.Direction.DESC, "version"));
+        versions.fields().exclude("chunks");
+        return mongoTemplate.find(versions, AssetVersion.class);
+    }
+
+    public AssetVersion getVersion(String assetId, String userId, int version) {
+        Asset asset = getOwnedAsset(assetId, userId);
+        if (asset.getFileId() != null) {
+            currentVersion(asset);
+        }
+        AssetVersion found = mongoTemplate.findOne(
+                query(where("assetId").is(assetId).and("version").is(version)), AssetVersion.class);
+        if (found == null) {
+            throw new RuntimeException("Version not found");
+        }
+        return found;
+    }
+
+    /**
+     * Writes a version's content, reassembling it from its chunks if it is
+     * not current. Each file is looked up once, and consecutive chunks that
+     * sit next to each other in a container are read as one range.
+     */
+    public void copyContent(AssetVersion version, OutputStream out) throws IOException {
+        if (version.getFileId() != null) {
+            BlobInfo file = storageService.rehydrate(storageService.getFileMetadata(version.getFileId()));
+            try (InputStream in = storageService.openStream(file, 0)) {
+                in.transferTo(out);
+            }
+            return;
+        }
+        List<AssetVersion.ChunkRef> chunks = version.getChunks();
+        if (chunks == null) {
+            throw new RuntimeException("Version content is not available");
+        }
+        Map<String, BlobInfo> files = new HashMap<>();
+        int next = 0;
+        while (next < chunks.size()) {
+            AssetVersion.ChunkRef first = chunks.get(next);
+            long end = first.getOffset() + first.getLength();
+            for (next++; next < chunks.size(); next++) {
+                AssetVersion.ChunkRef chunk = chunks.get(next);
+                if (!chunk.getFileId().equals(first.getFileId()) || chunk.getOffset() != end) {
+                    break;
+                }
+                end += chunk.getLength();
+            }
+            BlobInfo file = files.get(first.getFileId());
+            if (file == null) {
+                file = storageService.rehydrate(storageService.getFileMetadata(first.getFileId()));
+                files.put(first.getFileId(), file);
+            }
+            storageService.copyRange(file, first.getOffset(), end - 1, out);
+        }
+    }
+
+    /**
+     * Drops the version history of deleted assets, the chunks and kept files
+     * it references, and their bytes from the owners' usage
+     */
+    public void releaseVersions(Collection<String> assetIds) {
+        if (assetIds.isEmpty()) {
+            return;
+        }
+        Query versions = query(where("assetId").in(assetIds));
+        versions.fields().include("userId").include("fileId").include("chunks").include("storedBytes");
+        List<AssetVersion> released = mongoTemplate.find(versions, AssetVersion.class);
+        List<String> fileIds = new ArrayList<>();
+        for (AssetVersion version : released) {
+            if (version.getChunks() != null) {
+                version.getChunks().forEach(chunk -> fileIds.add(chunk.getFileId()));
+            } else if (version.getStoredBytes() != null && version.getFileId() != null) {
+                // A version that could not be chunked kept its file
+                fileIds.add(version.getFileId());
+            }
+        }
+        mongoTemplate.remove(query(where("assetId").in(assetIds)), AssetVersion.class);
+        storageService.deleteFiles(fileIds);
+        forgetDeletedChunks(fileIds);
+        storageUsageService.recordVersionsDeleted(released);
+    }
+
+    /**
+     * Drops the chunk entries of containers the release deleted. Entries
+     * left behind are harmless, since a container that is gone cannot be
+     * acquired, but would pile up.
+     */
+    private void forgetDeletedChunks(Collection<String> fileIds) {
+        if (fileIds.isEmpty()) {
+            return;
+        }
+        try {
+            Set<String> deleted = new HashSet<>(fileIds);
+            Query remaining = query(where("fileId").in(deleted));
+            remaining.fields().include("fileId");
+            mongoTemplate.find(remaining, StoredBlob.class).forEach(blob -> deleted.remove(blob.getFileId()));
+            if (!deleted.isEmpty()) {
+                mongoTemplate.remove(query(where("fileId").in(deleted)), VersionChunk.class);
+            }
+        } catch (RuntimeException e) {
+            log.warn("Could not drop the chunk entries of {} released files: {}", fileIds.size(), e.getMessage());
+        }
+    }
+
+    /**
+     * The version holding the asset's current file. Assets uploaded before
+     * versioning, or whose last version swap was interrupted, get one here.
+     */
+    private AssetVersion currentVersion(Asset asset) {
+        AssetVersion current = mongoTemplate.findOne(query(where("assetId").is(asset.getId())
+                .and("fileId").is(asset.getFileId()).and("storedBytes").exists(false)), AssetVersion.class);
+        if (current != null) {
+            return current;
+        }
+        Query latest = query(where("assetId").is(asset.getId())).with(Sort.by(Sort.Direction.DESC, "version"));
+        latest.fields().include("version");
+        AssetVersion last = mongoTemplate.findOne(latest, AssetVersion.class);
+        try {
+            return mongoTemplate.insert(newVersion(asset, last != null ? last.getVersion() + 1 : 1));
+        } catch (DuplicateKeyException e) {
+            // Another request recorded it first
+            return currentVersion(asset);
+        }
+    }
+
+    /**
+     * Splits a superseded version's file into chunks and records them in
+     * place of the file, charging the owner for the containers that were new.
+     * Each reference taken is released again if the version was converted by
+     * someone else in the meantime, or on failure.
+     * @return Whether this call converted the version
+     */
+    private boolean chunkVersion(AssetVersion version) throws IOException {
+        ChunkPacker packer = new ChunkPacker(version.getUserId());
+        boolean recorded = false;
+        try {
+            BlobInfo file = storageService.rehydrate(storageService.getFileMetadata(version.getFileId()));
+            try (InputStream in = storageService.openStream(file, 0)) {
+                chunker.chunk(in, packer::add);
+            }
+            List<AssetVersion.ChunkRef> chunks = packer.finish();
+            recorded = mongoTemplate.updateFirst(
+                    query(where("_id").is(version.getId()).and("fileId").is(version.getFileId())
+                            .and("storedBytes").exists(false)),
+                    new Update().set("chunks", chunks).set("storedBytes", packer.storedBytes).unset("fileId"),
+                    AssetVersion.class).getModifiedCount() > 0;
+        } finally {
+            if (!recorded) {
+                storageService.deleteFiles(packer.references());
+            }
+        }
+        if (recorded) {
+            version.setStoredBytes(packer.storedBytes);
+            storageUsageService.recordCreated(version);
+            log.debug("Version {} of asset {} stored as {} chunks in {} files, {} bytes new",
+                    version.getVersion(), version.getAssetId(), packer.chunks.size(), packer.held.size(),
+                    packer.storedBytes);
+        }
+        return recorded;
+    }
+
+    /**
+     * Keeps a superseded version's file as it is when it could not be
+     * chunked, and charges the owner for all of it
+     */
+    private void keepFile(AssetVersion version) {
+        boolean kept = mongoTemplate.updateFirst(
+                query(where("_id").is(version.getId()).and("fileId").is(version.getFileId())
+                        .and("storedBytes").exists(false)),
+                new Update().set("storedBytes", version.getSize()),
+                AssetVersion.class).getModifiedCount() > 0;
+        if (kept) {
+            version.setStoredBytes(version.getSize());
+            storageUsageService.recordCreated(version);
+        }
+    }
+
+    /**
+     * Packs one version's chunks into containers. Chunks are looked up a
+     * container's worth at a time with one query on version_chunks; those
+     * the owner already has point into their container, which gains a
+     * reference the first time this version uses it. The rest are appended
+     * to the container being filled, which is written and indexed once full.
+     * Every chunk holds a reference to its container in the end, so
+     * releasing a version drops one per chunk as before; the references
+     * beyond the first per container are added in one update by
+     * {@link #finish}.
+     */
+    private final class ChunkPacker {
+        private final String ownerId;
+        private final List<AssetVersion.ChunkRef> chunks = new ArrayList<>();
+        // Read but not looked up yet
+        private final List<PendingChunk> pending = new ArrayList<>();
+        private long pendingBytes;
+        // First placement of each chunk this version stored; its fileId is set once its container is written
+        private final Map<String, AssetVersion.ChunkRef> placed = new HashMap<>();
+        private final ByteArrayOutputStream container = new ByteArrayOutputStream();
+        private final List<AssetVersion.ChunkRef> inContainer = new ArrayList<>();
+        private final List<String> containerKeys = new ArrayList<>();
+        // References held per file, and files that could not be shared
+        private final Map<String, Integer> held = new HashMap<>();
+        private final Set<String> unavailable = new HashSet<>();
+        private long storedBytes;
+
+        ChunkPacker(String ownerId) {
+            this.ownerId = ownerId;
+        }
+
+        void add(byte[] data, int length) throws IOException {
+            AssetVersion.ChunkRef chunk = new AssetVersion.ChunkRef(null, 0, length);
+            chunks.add(chunk);
+            pending.add(new PendingChunk(storageService.chunkKey(data, length, ownerId),
+                    Arrays.copyOf(data, length), chunk));
+            pendingBytes += length;
+            if (pendingBytes >= containerBytes) {
+                place();
+            }
+        }
+
+        /**
+         * Places the remaining chunks, writes the last container and takes
+         * the remaining references
+         * @return The version's chunks in order
+         */
+        List<AssetVersion.ChunkRef> finish() throws IOException {
+            place();
+            writeContainer();
+            Map<String, Integer> missing = new HashMap<>();
+            chunks.forEach(chunk -> missing.merge(chunk.getFileId(), 1, Integer::sum));
+            held.forEach((fileId, count) -> missing.merge(fileId, -count, Integer::sum));
+            storageService.addReferences(missing);
+            missing.forEach((fileId, count) -> held.merge(fileId, count, Integer::sum));
+            return chunks;
+        }
+
+        /**
+         * Each file once per reference held on it
+         */
+        List<String> references() {
+            List<String> references = new ArrayList<>();
+            held.forEach((fileId, count) -> references.addAll(Collections.nCopies(count, fileId)));
+            return references;
+        }
+
+        private void place() throws IOException {
+            if (pending.isEmpty()) {
+                return;
+            }
+            Map<String, VersionChunk> stored = new HashMap<>();
+            mongoTemplate.find(query(where("_id").in(pending.stream().map(PendingChunk::key).toList())),
+                    VersionChunk.class).forEach(chunk -> stored.put(chunk.getId(), chunk));
+            for (PendingChunk pendingChunk : pending) {
+                AssetVersion.ChunkRef chunk = pendingChunk.chunk();
+                AssetVersion.ChunkRef earlier = placed.get(pendingChunk.key());
+                VersionChunk existing = stored.get(pendingChunk.key());
+                if (earlier != null) {
+                    chunk.setFileId(earlier.getFileId());
+                    chunk.setOffset(earlier.getOffset());
+                    if (earlier.getFileId() == null) {
+                        inContainer.add(chunk);
+                    }
+                } else if (existing != null && hold(existing.getFileId())) {
+                    chunk.setFileId(existing.getFileId());
+                    chunk.setOffset(existing.getOffset());
+                } else {
+                    chunk.setOffset(container.size());
+                    container.write(pendingChunk.data());
+                    inContainer.add(chunk);
+                    containerKeys.add(pendingChunk.key());
+                    placed.put(pendingChunk.key(), chunk);
+                    if (container.size() >= containerBytes) {
+                        writeContainer();
+                    }
+                }
+            }
+            pending.clear();
+            pendingBytes = 0;
+        }
+
+        private void writeContainer() throws IOException {
+            if (container.size() == 0) {
+                return;
+            }
+            StorageService.SavedChunk saved = storageService.saveChunkContainer(
+                    container.toByteArray(), container.size(), ownerId);
+            held.merge(saved.fileId(), 1, Integer::sum);
+            if (saved.created()) {
+                storedBytes += container.size();
+            }
+            inContainer.forEach(chunk -> chunk.setFileId(saved.fileId()));
+            BulkOperations entries = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, VersionChunk.class);
+            containerKeys.forEach(key -> entries.upsert(query(where("_id").is(key)),
+                    new Update().set("fileId", saved.fileId()).set("offset", placed.get(key).getOffset())));
+            entries.execute();
+            container.reset();
+            inContainer.clear();
+            containerKeys.clear();
+        }
+
+        /**
+         * Takes this version's first reference on a container that holds chunks it needs
+         */
+        private boolean hold(String fileId) {
+            if (held.containsKey(fileId)) {
+                return true;
+            }
+            if (unavailable.contains(fileId)) {
+                return false;
+            }
+            if (storageService.acquireFile(fileId)) {
+                held.put(fileId, 1);
+                return true;
+            }
+            unavailable.add(fileId);
+            return false;
+        }
+    }
+
+    private record PendingChunk(String key, byte[] data, AssetVersion.ChunkRef chunk) {}
+
+    private AssetVersion newVersion(Asset asset, int number) {
+        AssetVersion version = new AssetVersion();
+        version.setAssetId(asset.getId());
+        version.setUserId(asset.getUserId());
+        version.setVersion(number);
+        version.setFileName(asset.getFileName());
+        version.setFileType(asset.getFileType());
+        version.setSize(asset.getFileSize() != null ? asset.getFileSize() : 0);
+        version.setFileId(asset.getFileId());
+        version.setCreatedAt(LocalDateTime.now());
+        return version;
+    }
+
+    private Asset getOwnedAsset(String assetId, String userId) {
+        Asset asset = mongoTemplate.findById(assetId, Asset.class);
+        if (asset == null) {
+            throw new RuntimeException("Asset not found");
+        }
+        if (!asset.getUserId().equals(userId)) {
+            throw new AccessDeniedException("Ownership check failed");
+        }
+        return asset;
+    }
+}
@@ -0,0 +1,321 @@
+package com.securevault.service;
+
+import com.securevault.model.Asset;
+import com.securevault.model.AssetState;
+import com.securevault.model.User;
+import com.securevault.repository.AssetRepository;
+import com.securevault.repository.UserRepository;
+import jakarta.annotation.PreDestroy;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+/**
+ * Asynchronous uploads.
+ * The request thread only spools the file to local disk and inserts a PENDING
+ * asset; a bounded worker pool writes the spool into storage and flips the
+ * asset to UPLOADED (or FAILED). Clients poll the asset state or long-poll
+ * {@link #awaitCompletion}, which is answered from whichever node the
+ * request reaches.
+ *
+ * When the queue is full the upload is rejected, so the request thread
+ * never does the storage write itself. The node holding a spool renews a
+ * lease on its PENDING assets; an upload whose lease lapsed was lost with
+ * its node and is marked FAILED by any node.
+ */
+@Service
+public class AsyncUploadService {
+
+    private static final Logger log = LoggerFactory.getLogger(AsyncUploadService.class);
+
+    private final AssetService assetService;
+    private final StorageService storageService;
+    private final AssetRepository assetRepository;
+    private final UserRepository userRepository;
+    private final ActivityLogService activityLogService;
+    private final PreviewService previewService;
+    private final MongoTemplate mongoTemplate;
+    private final StorageUsageService storageUsageService;
+    private final Path spoolDir;
+    private final long leaseMinutes;
+    private final ThreadPoolExecutor executor;
+
+    // Long-poll requests on this node waiting for an asset to leave PENDING
+    private final Map<String, List<DeferredResult<Asset>>> waiters = new ConcurrentHashMap<>();
+    // Uploads spooled on this node and not yet stored; their leases are renewed here
+    private final Set<String> held = ConcurrentHashMap.newKeySet();
+
+    public AsyncUploadService(AssetService assetService, StorageService storageService,
+                              AssetRepository assetRepository, UserRepository userRepository,
+                              ActivityLogService activityLogService, PreviewService previewService,
+                              MongoTemplate mongoTemplate, StorageUsageService storageUsageService,
+                              @Value("${app.upload.async.spool-dir:./data/spool}") String spoolDir,
+                              @Value("${app.upload.async.worker-threads:4}") int workerThreads,
+                              @Value("${app.upload.async.queue-capacity:64}") int queueCapacity,
+                              @Value("${app.upload.async.lease-minutes:5}") long leaseMinutes) {
+        this.assetService = assetService;
+        this.storageService = storageService;
+        this.assetRepository = assetRepository;
+        this.userRepository = userRepository;
+        this.activityLogService = activityLogService;
+        this.previewService = previewService;
+        this.mongoTemplate = mongoTemplate;
+        this.storageUsageService = storageUsageService;
+        this.spoolDir = Paths.get(spoolDir).toAbsolutePath().normalize();
+        this.leaseMinutes = leaseMinutes;
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(workerThreads, workerThreads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> new Thread(runnable, "asset-upload-" + threadNumber.incrementAndGet()),
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * Spools the file, records a PENDING asset and queues the storage write
+     * @return The PENDING asset; its id is what clients poll
+     * @throws RejectedExecutionException If the upload queue is full
+     */
+    public Asset submit(String userId, String nomineeId, String description, MultipartFile file) throws IOException {
+        userRepository.findById(userId)
+                .orElseThrow(() -> new RuntimeException("User not found"));
+        assetService.verifyNomineeOwnership(userId, nomineeId);
+        storageUsageService.checkQuota(userId, file.getSize());
+        if (executor.getQueue().remainingCapacity() == 0) {
+            throw new RejectedExecutionException("Upload queue is full");
+        }
+
+        String assetId = new ObjectId().toHexString();
+        Path spool = spoolPath(assetId);
+        Files.createDirectories(spoolDir);
+        // The File overload moves the container's spooled part instead of copying it
+        file.transferTo(spool.toFile());
+
+        Asset asset;
+        try {
+            asset = assetService.createPendingAsset(userId, assetId, nomineeId, description,
+                    file.getOriginalFilename(), file.getContentType(), file.getSize(),
+                    LocalDateTime.now().plusMinutes(leaseMinutes));
+        } catch (RuntimeException e) {
+            Files.deleteIfExists(spool);
+            throw e;
+        }
+        held.add(assetId);
+        try {
+            executor.execute(() -> store(asset));
+        } catch (RejectedExecutionException e) {
+            // Filled up since the check above; take the upload back
+            held.remove(assetId);
+            withdraw(assetId);
+            Files.deleteIfExists(spool);
+            throw e;
+        }
+        return asset;
+    }
+
+    /**
+     * Completes once the asset leaves PENDING or the timeout passes, with the
+     * asset as it is at that moment
+     */
+    public DeferredResult<Asset> awaitCompletion(String assetId, String userId, long timeoutMs) {
+        Asset asset = assetService.getAsset(assetId, userId);
+        DeferredResult<Asset> result = new DeferredResult<>(timeoutMs);
+        if (asset.getState() != AssetState.PENDING || timeoutMs <= 0) {
+            result.setResult(asset);
+            return result;
+        }
+
+        waiters.computeIfAbsent(assetId, id -> new CopyOnWriteArrayList<>()).add(result);
+        result.onTimeout(() -> result.setResult(assetRepository.findById(assetId).orElse(asset)));
+        result.onCompletion(() -> waiters.computeIfPresent(assetId, (id, list) -> {
+            list.remove(result);
+            return list.isEmpty() ? null : list;
+        }));
+
+        // The worker may have finished between the read above and registering
+        assetRepository.findById(assetId)
+                .filter(current -> current.getState() != AssetState.PENDING)
+                .ifPresent(result::setResult);
+        return result;
+    }
+
+    /**
+     * Requeues uploads that were spooled on this node but not stored before
+     * the last shutdown, taking their leases back
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumePendingUploads() {
+        List<Asset> pending = mongoTemplate.find(query(where("state").is(AssetState.PENDING)), Asset.class);
+        int resumed = 0;
+        for (Asset asset : pending) {
+            if (!Files.exists(spoolPath(asset.getId()))) {
+                continue;
+            }
+            boolean claimed = mongoTemplate.updateFirst(
+                    query(where("_id").is(asset.getId()).and("state").is(AssetState.PENDING)),
+                    new Update().set("uploadLeaseUntil", LocalDateTime.now().plusMinutes(leaseMinutes)),
+                    Asset.class).getModifiedCount() > 0;
+            if (!claimed) {
+                continue;
+            }
+            held.add(asset.getId());
+            try {
+                executor.execute(() -> store(asset));
+            } catch (RejectedExecutionException e) {
+                // More backlog than queue; no request is waiting on this thread
+                store(asset);
+            }
+            resumed++;
+        }
+        if (resumed > 0) {
+            log.info("Resumed {} pending uploads", resumed);
+        }
+    }
+
+    /**
+     * Renews the leases of the uploads this node holds, and fails PENDING
+     * uploads whose lease lapsed because their node went away
+     */
+    @Scheduled(fixedDelayString = "${app.upload.async.heartbeat-ms:60000}")
+    public void renewLeases() {
+        LocalDateTime now = LocalDateTime.now();
+        if (!held.isEmpty()) {
+            mongoTemplate.updateMulti(query(where("_id").in(held).and("state").is(AssetState.PENDING)),
+                    new Update().set("uploadLeaseUntil", now.plusMinutes(leaseMinutes)), Asset.class);
+        }
+        long failed = mongoTemplate.updateMulti(
+                query(where("state").is(AssetState.PENDING).and("_id").nin(held).orOperator(
+                        where("uploadLeaseUntil").lt(now),
+                        // Submitted before uploads carried a lease
+                        where("uploadLeaseUntil").exists(false).and("uploadedAt").lt(now.minusMinutes(leaseMinutes)))),
+                new Update().set("state", AssetState.FAILED)
+                        .set("failureReason", "Upload was interrupted")
+                        .unset("uploadLeaseUntil"),
+                Asset.class).getModifiedCount();
+        if (failed > 0) {
+            log.warn("Marked {} uploads whose node stopped renewing them as failed", failed);
+        }
+    }
+
+    /**
+     * Answers long-polls on this node for uploads that finished anywhere,
+     * with one query for all of them
+     */
+    @Scheduled(fixedDelayString = "${app.upload.async.waiter-poll-ms:1000}")
+    public void pollWaiters() {
+        if (waiters.isEmpty()) {
+            return;
+        }
+        mongoTemplate.find(query(where("_id").in(waiters.keySet()).and("state").ne(AssetState.PENDING)), Asset.class)
+                .forEach(asset -> complete(asset.getId(), asset));
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        // Queued uploads keep their spool and PENDING state and resume on next start
+        executor.shutdown();
+        if (!executor.awaitTermination(30, TimeUnit.SECONDS)) {
+            log.warn("Upload workers still running at shutdown");
+        }
+    }
+
+    private void store(Asset asset) {
+        String assetId = asset.getId();
+        Path spool = spoolPath(assetId);
+        try {
+            String fileId = storageService.saveFile(new SpooledUpload(spool, asset.getFileName(), asset.getFileType()),
+                    asset.getUserId());
+            Asset stored = mongoTemplate.findAndModify(
+                    query(where("_id").is(assetId).and("state").is(AssetState.PENDING)),
+                    new Update().set("fileId", fileId).set("state", AssetState.UPLOADED).unset("uploadLeaseUntil"),
+                    FindAndModifyOptions.options().returnNew(true),
+                    Asset.class);
+            if (stored == null) {
+                // The asset was deleted, or failed after losing its lease, while its file was being stored
+                storageService.deleteFile(fileId);
+                complete(assetId, null);
+                return;
+            }
+            String userName = userRepository.findById(stored.getUserId()).map(User::getFullName).orElse("Unknown User");
+            activityLogService.log(stored.getUserId(), userName, "ASSET_UPLOAD", "Uploaded asset: " + stored.getFileName(), assetId, "USER");
+            previewService.requestPreview(stored);
+            complete(assetId, stored);
+        } catch (Exception e) {
+            log.warn("Async upload of asset {} failed: {}", assetId, e.getMessage());
+            complete(assetId, markFailed(assetId, e.getMessage()));
+        } finally {
+            held.remove(assetId);
+            try {
+                Files.deleteIfExists(spool);
+            } catch (IOException e) {
+                log.warn("Could not delete spooled upload {}: {}", spool, e.getMessage());
+            }
+        }
+    }
+
+    private Asset markFailed(String assetId, String reason) {
+        return mongoTemplate.findAndModify(
+                query(where("_id").is(assetId).and("state").is(AssetState.PENDING)),
+                new Update().set("state", AssetState.FAILED).set("failureReason", reason).unset("uploadLeaseUntil"),
+                FindAndModifyOptions.options().returnNew(true),
+                Asset.class);
+    }
+
+    /**
+     * Removes a PENDING asset whose upload was turned away, and its usage
+     */
+    private void withdraw(String assetId) {
+        Asset removed = mongoTemplate.findAndRemove(
+                query(where("_id").is(assetId).and("state").is(AssetState.PENDING)), Asset.class);
+        if (removed != null) {
+            storageUsageService.recordDeleted(removed);
+        }
+    }
+
+    private void complete(String assetId, Asset asset) {
+        List<DeferredResult<Asset>> waiting = waiters.remove(assetId);
+        if (waiting == null) {
+            return;
+        }
+        for (DeferredResult<Asset> result : waiting) {
+            if (asset != null) {
+                result.setResult(asset);
+            } else {
+                result.setErrorResult(new RuntimeException("Asset not found"));
+            }
+        }
+    }
+
+    private Path spoolPath(String assetId) {
+        return spoolDir.resolve(assetId + ".upload");
+    }
+}
@@ -0,0 +1,212 @@
+package com.securevault.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory cache in front of the blob stores.
+ * Stored files never change after they are written, so entries are keyed by
+ * fileId and only need invalidating when a file is deleted.
+ *
+ * Content of small and medium files is held off-heap in direct buffers inside
+ * an LRU bounded by total bytes. File descriptors are cached separately in an
+ * LRU bounded by entry count, because they are needed for every request.
+ * A descriptor names the store holding the file, which other instances can
+ * change by rebalancing, archiving or rehydrating it, so descriptors expire
+ * after a short TTL; StorageService also drops one that fails to open.
+ */
+@Component
+public class BlobCache {
+
+    private final boolean enabled;
+    private final long maxBytes;
+    private final long maxEntryBytes;
+    private final int maxMetadataEntries;
+    private final long metadataTtlMillis;
+
+    private final LinkedHashMap<String, ByteBuffer> content = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<String, CachedInfo> metadata = new LinkedHashMap<>(16, 0.75f, true);
+    private long currentBytes;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong metadataHits = new AtomicLong();
+    private final AtomicLong metadataMisses = new AtomicLong();
+
+    public BlobCache(@Value("${app.storage.cache.enabled:true}") boolean enabled,
+                     @Value("${app.storage.cache.max-bytes:268435456}") long maxBytes,
+                     @Value("${app.storage.cache.max-entry-bytes:4194304}") long maxEntryBytes,
+                     @Value("${app.storage.cache.metadata-max-entries:10000}") int maxMetadataEntries,
+                     @Value("${app.storage.cache.metadata-ttl-seconds:30}") long metadataTtlSeconds) {
+        this.enabled = enabled;
+        this.maxBytes = maxBytes;
+        this.maxEntryBytes = maxEntryBytes;
+        this.maxMetadataEntries = maxMetadataEntries;
+        this.metadataTtlMillis = metadataTtlSeconds * 1000;
+    }
+
+    /**
+     * Whether a file of this stored length is worth caching
+     */
+    public boolean isCacheable(long length) {
+        return enabled && length <= maxEntryBytes && length <= maxBytes;
+    }
+
+    public BlobInfo getMetadata(String fileId) {
+        if (!enabled) {
+            return null;
+        }
+        BlobInfo info = null;
+        synchronized (this) {
+            CachedInfo cached = metadata.get(fileId);
+            if (cached != null && cached.expiresAt() > System.currentTimeMillis()) {
+                info = cached.info();
+            } else if (cached != null) {
+                metadata.remove(fileId);
+            }
+        }
+        (info != null ? metadataHits : metadataMisses).incrementAndGet();
+        return info;
+    }
+
+    public void putMetadata(BlobInfo info) {
+        if (!enabled) {
+            return;
+        }
+        synchronized (this) {
+            metadata.put(info.getFileId(), new CachedInfo(info, System.currentTimeMillis() + metadataTtlMillis));
+            if (metadata.size() > maxMetadataEntries) {
+                Iterator<String> eldest = metadata.keySet().iterator();
+                eldest.next();
+                eldest.remove();
+            }
+        }
+    }
+
+    /**
+     * @return a stream over the cached bytes from {@code offset}, or null on a miss
+     */
+    public InputStream open(String fileId, long offset) {
+        if (!enabled) {
+            return null;
+        }
+        ByteBuffer buffer;
+        synchronized (this) {
+            buffer = content.get(fileId);
+        }
+        if (buffer == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        ByteBuffer view = buffer.duplicate();
+        view.position((int) Math.min(offset, view.limit()));
+        return new ByteBufferInputStream(view);
+    }
+
+    /**
+     * Copies the bytes off-heap and caches them, evicting least recently used
+     * entries until the byte budget fits
+     */
+    public void put(String fileId, byte[] bytes) {
+        if (!isCacheable(bytes.length)) {
+            return;
+        }
+        ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+        buffer.put(bytes).flip();
+        ByteBuffer readOnly = buffer.asReadOnlyBuffer();
+        synchronized (this) {
+            ByteBuffer previous = content.put(fileId, readOnly);
+            if (previous != null) {
+                currentBytes -= previous.capacity();
+            }
+            currentBytes += readOnly.capacity();
+            Iterator<Map.Entry<String, ByteBuffer>> it = content.entrySet().iterator();
+            while (currentBytes > maxBytes && it.hasNext()) {
+                Map.Entry<String, ByteBuffer> eldest = it.next();
+                if (eldest.getKey().equals(fileId)) {
+                    continue;
+                }
+                currentBytes -= eldest.getValue().capacity();
+                it.remove();
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    public void invalidate(String fileId) {
+        synchronized (this) {
+            ByteBuffer removed = content.remove(fileId);
+            if (removed != null) {
+                currentBytes -= removed.capacity();
+            }
+            metadata.remove(fileId);
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        synchronized (this) {
+            stats.put("entries", content.size());
+            stats.put("bytes", currentBytes);
+            stats.put("metadataEntries", metadata.size());
+        }
+        stats.put("enabled", enabled);
+        stats.put("maxBytes", maxBytes);
+        stats.put("hits", hits.get());
+        stats.put("misses", misses.get());
+        stats.put("evictions", evictions.get());
+        stats.put("metadataHits", metadataHits.get());
+        stats.put("metadataMisses", metadataMisses.get());
+        return stats;
+    }
+
+    private record CachedInfo(BlobInfo info, long expiresAt) {}
+
+    private static final class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(len, buffer.remaining());
+            buffer.get(b, off, count);
+            return count;
+        }
+
+        @Override
+        public long skip(long n) {
+            int count = (int) Math.max(0, Math.min(n, buffer.remaining()));
+            buffer.position(buffer.position() + count);
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
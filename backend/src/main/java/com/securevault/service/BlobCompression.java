@@ -0,0 +1,189 @@
+package com.securevault.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Decides which uploads are worth compressing before they are stored.
+ * Compressed files are stored gzip-encoded so the stored bytes can be sent
+ * as-is to clients that accept {@code Content-Encoding: gzip}.
+ *
+ * A file is skipped if either its declared content type or its leading bytes
+ * say it is already compressed; the declared type alone is not trusted.
+ *
+ * The gzip stream is written with a full flush after every block of input,
+ * which resets the compressor at a byte boundary. Inflation can start at any
+ * recorded block offset, so a range request or resumed download inflates at
+ * most one block it does not send instead of everything before its offset.
+ */
+public final class BlobCompression {
+
+    public static final String CODEC = "gzip";
+
+    // Number of leading bytes needed to recognise the formats below
+    public static final int MAGIC_LENGTH = 12;
+
+    private static final byte[][] COMPRESSED_MAGIC = {
+            { (byte) 0xFF, (byte) 0xD8, (byte) 0xFF },             // JPEG
+            { (byte) 0x89, 'P', 'N', 'G' },                         // PNG
+            { 'G', 'I', 'F', '8' },                                 // GIF
+            { 'P', 'K', 0x03, 0x04 },                               // ZIP, OOXML, ODF, JAR, EPUB
+            { '%', 'P', 'D', 'F' },                                 // PDF (content streams are deflated)
+            { 0x1F, (byte) 0x8B },                                  // gzip
+            { 'B', 'Z', 'h' },                                      // bzip2
+            { (byte) 0xFD, '7', 'z', 'X', 'Z', 0x00 },              // xz
+            { '7', 'z', (byte) 0xBC, (byte) 0xAF, 0x27, 0x1C },     // 7-Zip
+            { 'R', 'a', 'r', '!' },                                 // RAR
+            { 0x28, (byte) 0xB5, 0x2F, (byte) 0xFD },               // zstd
+            { 'O', 'g', 'g', 'S' },                                 // Ogg
+            { 'I', 'D', '3' },                                      // MP3
+            { 0x1A, 0x45, (byte) 0xDF, (byte) 0xA3 },               // Matroska, WebM
+    };
+
+    private static final Set<String> COMPRESSED_TYPES = Set.of(
+            "application/zip",
+            "application/gzip",
+            "application/x-gzip",
+            "application/x-bzip2",
+            "application/x-xz",
+            "application/x-7z-compressed",
+            "application/vnd.rar",
+            "application/x-rar-compressed",
+            "application/zstd",
+            "application/pdf",
+            "application/epub+zip",
+            "application/java-archive");
+
+    // Header as written by GZIPOutputStream: deflate, no flags, no mtime, unknown OS
+    private static final byte[] GZIP_HEADER = { 0x1F, (byte) 0x8B, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0 };
+
+    private BlobCompression() {}
+
+    /**
+     * Gzips the input, fully flushing after every {@code blockSize} bytes
+     * @return Offset in the output at which each block's deflate data starts
+     */
+    public static List<Long> compress(InputStream in, OutputStream out, int blockSize) throws IOException {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        CRC32 crc = new CRC32();
+        byte[] input = new byte[blockSize];
+        byte[] output = new byte[64 * 1024];
+        List<Long> blocks = new ArrayList<>();
+        long written = GZIP_HEADER.length;
+        long length = 0;
+        try {
+            out.write(GZIP_HEADER);
+            int read;
+            while ((read = in.readNBytes(input, 0, blockSize)) > 0) {
+                blocks.add(written);
+                crc.update(input, 0, read);
+                length += read;
+                deflater.setInput(input, 0, read);
+                int produced;
+                do {
+                    produced = deflater.deflate(output, 0, output.length, Deflater.FULL_FLUSH);
+                    out.write(output, 0, produced);
+                    written += produced;
+                } while (produced == output.length);
+            }
+            deflater.finish();
+            while (!deflater.finished()) {
+                out.write(output, 0, deflater.deflate(output));
+            }
+        } finally {
+            deflater.end();
+        }
+        writeIntLE(out, crc.getValue());
+        writeIntLE(out, length);
+        return blocks;
+    }
+
+    /**
+     * Inflates a stream positioned at one of the block offsets returned by
+     * {@link #compress}. The gzip trailer is not checked.
+     */
+    public static InputStream inflateFrom(InputStream blockStart, int bufferSize) {
+        return new InflaterInputStream(blockStart, new Inflater(true), bufferSize) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    inf.end();
+                }
+            }
+        };
+    }
+
+    private static void writeIntLE(OutputStream out, long value) throws IOException {
+        out.write((int) value & 0xFF);
+        out.write((int) (value >> 8) & 0xFF);
+        out.write((int) (value >> 16) & 0xFF);
+        out.write((int) (value >> 24) & 0xFF);
+    }
+
+    /**
+     * @param contentType Declared content type, may be null
+     * @param head The first {@link #MAGIC_LENGTH} bytes of the file (or fewer if it is shorter)
+     */
+    public static boolean isCompressible(String contentType, byte[] head) {
+        return !isCompressedType(contentType) && !hasCompressedMagic(head);
+    }
+
+    private static boolean isCompressedType(String contentType) {
+        if (contentType == null) {
+            return false;
+        }
+        String type = contentType.toLowerCase(Locale.ROOT);
+        int semicolon = type.indexOf(';');
+        if (semicolon >= 0) {
+            type = type.substring(0, semicolon);
+        }
+        type = type.trim();
+        if (type.startsWith("image/")) {
+            // Bitmap, TIFF and SVG are typically stored uncompressed
+            return !(type.equals("image/bmp") || type.equals("image/tiff") || type.equals("image/svg+xml"));
+        }
+        if (type.startsWith("video/") || type.startsWith("audio/")) {
+            return !type.equals("audio/wav") && !type.equals("audio/x-wav");
+        }
+        // OOXML and ODF documents are ZIP containers
+        return COMPRESSED_TYPES.contains(type)
+                || type.startsWith("application/vnd.openxmlformats-officedocument.")
+                || type.startsWith("application/vnd.oasis.opendocument.");
+    }
+
+    private static boolean hasCompressedMagic(byte[] head) {
+        for (byte[] magic : COMPRESSED_MAGIC) {
+            if (startsWith(head, 0, magic)) {
+                return true;
+            }
+        }
+        // ISO media (MP4, MOV, HEIC, AVIF) have "ftyp" at offset 4; WebP is RIFF....WEBP
+        return startsWith(head, 4, "ftyp".getBytes(StandardCharsets.US_ASCII))
+                || (startsWith(head, 0, "RIFF".getBytes(StandardCharsets.US_ASCII))
+                    && startsWith(head, 8, "WEBP".getBytes(StandardCharsets.US_ASCII)));
+    }
+
+    private static boolean startsWith(byte[] data, int offset, byte[] prefix) {
+        if (data.length < offset + prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (data[offset + i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,228 @@
+package com.securevault.service;
+
+import com.securevault.model.BlobGcState;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+/**
+ * Incremental mark-and-sweep for stored files that nothing references.
+ * Each run walks a bounded number of batches of every BlobStore in id order,
+ * checks each batch against the referencing collections with $in queries
+ * (indexed through IndexCatalog), and deletes unreferenced files older than the grace window.
+ * The cursor is persisted, so a pass spreads over many runs and survives
+ * restarts; batches are separated by a pause to keep foreground latency flat.
+ */
+@Service
+public class BlobGarbageCollector {
+
+    private static final Logger log = LoggerFactory.getLogger(BlobGarbageCollector.class);
+
+    private final StorageService storageService;
+    private final MongoTemplate mongoTemplate;
+
+    @Value("${app.storage.gc.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.storage.gc.batch-size:500}")
+    private int batchSize;
+
+    @Value("${app.storage.gc.max-batches-per-run:20}")
+    private int maxBatchesPerRun;
+
+    @Value("${app.storage.gc.batch-pause-ms:200}")
+    private long batchPauseMs;
+
+    // Files younger than this are never collected: uploads store the file before the asset
+    @Value("${app.storage.gc.grace-hours:24}")
+    private long graceHours;
+
+    @Value("${app.storage.gc.lease-minutes:30}")
+    private long leaseMinutes;
+
+    public BlobGarbageCollector(StorageService storageService, MongoTemplate mongoTemplate) {
+        this.storageService = storageService;
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @Scheduled(fixedDelayString = "${app.storage.gc.interval-ms:600000}",
+               initialDelayString = "${app.storage.gc.initial-delay-ms:300000}")
+    public void scheduledRun() {
+        if (enabled) {
+            run();
+        }
+    }
+
+    /**
+     * Advances the sweep of every store by up to max-batches-per-run batches
+     * @return The progress of each store after this run
+     */
+    public List<BlobGcState> run() {
+        List<BlobGcState> states = new ArrayList<>();
+        for (BlobStore store : storageService.getStores()) {
+            try {
+                BlobGcState state = sweep(store);
+                if (state != null) {
+                    states.add(state);
+                }
+            } catch (Exception e) {
+                log.warn("Orphan sweep of store {} failed: {}", store.getName(), e.getMessage());
+            }
+        }
+        return states;
+    }
+
+    public List<BlobGcState> getStates() {
+        return mongoTemplate.findAll(BlobGcState.class);
+    }
+
+    private BlobGcState sweep(BlobStore store) throws Exception {
+        BlobGcState state = acquireLease(store.getName());
+        if (state == null) {
+            // Another instance is sweeping this store
+            return null;
+        }
+        try {
+            LocalDateTime cutoff = LocalDateTime.now().minusHours(graceHours);
+            if (state.getPassStartedAt() == null) {
+                state.setPassStartedAt(LocalDateTime.now());
+            }
+            for (int batch = 0; batch < maxBatchesPerRun; batch++) {
+                if (batch > 0) {
+                    Thread.sleep(batchPauseMs);
+                }
+                List<BlobInfo> files = store.list(state.getCursor(), batchSize);
+                if (files.isEmpty()) {
+                    completePass(state);
+                    break;
+                }
+                sweepBatch(files, cutoff, state);
+                state.setCursor(files.get(files.size() - 1).getFileId());
+                state.setLeaseUntil(LocalDateTime.now().plusMinutes(leaseMinutes));
+                mongoTemplate.save(state);
+            }
+            return state;
+        } finally {
+            state.setLeaseUntil(null);
+            mongoTemplate.save(state);
+        }
+    }
+
+    private void sweepBatch(List<BlobInfo> files, LocalDateTime cutoff, BlobGcState state) {
+        List<BlobInfo> candidates = new ArrayList<>();
+        for (BlobInfo file : files) {
+            if (file.getUploadDate() != null
+                    && LocalDateTime.ofInstant(file.getUploadDate().toInstant(), ZoneId.systemDefault()).isBefore(cutoff)) {
+                candidates.add(file);
+            }
+        }
+        state.setScannedFiles(state.getScannedFiles() + files.size());
+        if (candidates.isEmpty()) {
+            return;
+        }
+
+        Set<String> referenced = findReferenced(candidates.stream().map(BlobInfo::getFileId).toList());
+        for (BlobInfo file : candidates) {
+            if (referenced.contains(file.getFileId())) {
+                continue;
+            }
+            try {
+                if (storageService.deleteOrphan(file, cutoff)) {
+                    state.setDeletedFiles(state.getDeletedFiles() + 1);
+                    state.setReclaimedBytes(state.getReclaimedBytes() + file.getLength());
+                    state.setTotalReclaimedBytes(state.getTotalReclaimedBytes() + file.getLength());
+                }
+            } catch (Exception e) {
+                log.warn("Could not delete orphaned file {}: {}", file.getFileId(), e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Which of the ids are still pointed at by an asset, its preview, a chunk
+     * of an older version, a death certificate, or an upload session that
+     * has not been aborted
+     */
+    private Set<String> findReferenced(Collection<String> fileIds) {
+        Set<String> referenced = new HashSet<>();
+        collect(referenced, "assets", where("fileId").in(fileIds), "fileId");
+        collect(referenced, "assets", where("previewFileId").in(fileIds), "previewFileId");
+        collect(referenced, "asset_versions", where("fileId").in(fileIds), "fileId");
+        collectChunks(referenced, fileIds);
+        collect(referenced, "verification_requests", where("deathCertificateFileId").in(fileIds), "deathCertificateFileId");
+        collect(referenced, "upload_sessions", where("fileId").in(fileIds).and("status").ne("ABORTED"), "fileId");
+        return referenced;
+    }
+
+    private void collect(Set<String> referenced, String collection, Criteria criteria, String field) {
+        Query query = query(criteria);
+        query.fields().include(field).exclude("_id");
+        for (Document doc : mongoTemplate.find(query, Document.class, collection)) {
+            Object value = doc.get(field);
+            if (value != null) {
+                referenced.add(value.toString());
+            }
+        }
+    }
+
+    private void collectChunks(Set<String> referenced, Collection<String> fileIds) {
+        Query query = query(where("chunks.fileId").in(fileIds));
+        query.fields().include("chunks.fileId").exclude("_id");
+        for (Document doc : mongoTemplate.find(query, Document.class, "asset_versions")) {
+            for (Document chunk : doc.getList("chunks", Document.class, List.of())) {
+                Object value = chunk.get("fileId");
+                if (value != null) {
+                    referenced.add(value.toString());
+                }
+            }
+        }
+    }
+
+    private void completePass(BlobGcState state) {
+        log.info("Orphan sweep of store {} finished: scanned {} files, deleted {}, reclaimed {} bytes",
+                state.getId(), state.getScannedFiles(), state.getDeletedFiles(), state.getReclaimedBytes());
+        state.setLastPassCompletedAt(LocalDateTime.now());
+        state.setLastPassDeletedFiles(state.getDeletedFiles());
+        state.setLastPassReclaimedBytes(state.getReclaimedBytes());
+        state.setCursor(null);
+        state.setPassStartedAt(null);
+        state.setScannedFiles(0);
+        state.setDeletedFiles(0);
+        state.setReclaimedBytes(0);
+    }
+
+    private BlobGcState acquireLease(String storeName) {
+        LocalDateTime now = LocalDateTime.now();
+        try {
+            return mongoTemplate.findAndModify(
+                    query(where("_id").is(storeName).orOperator(
+                            where("leaseUntil").is(null),
+                            where("leaseUntil").lt(now))),
+                    new Update().set("leaseUntil", now.plusMinutes(leaseMinutes)),
+                    FindAndModifyOptions.options().returnNew(true).upsert(true),
+                    BlobGcState.class);
+        } catch (DuplicateKeyException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.securevault.service;
+
+import org.bson.Document;
+
+import java.util.Date;
+
+/**
+ * Descriptor of a stored file, independent of the backend holding it.
+ * {@code length} is the stored length; see StorageService.getContentLength
+ * for the length clients see. {@code location} is where inside the store
+ * the file was found, for stores that would otherwise have to look it up
+ * again on every open; it is null for stores that do not need one.
+ */
+public class BlobInfo {
+    private final String fileId;
+    private final String fileName;
+    private final long length;
+    private final Date uploadDate;
+    private final Document metadata;
+    private final BlobStore store;
+    private final String location;
+
+    public BlobInfo(String fileId, String fileName, long length, Date uploadDate, Document metadata, BlobStore store) {
+        this(fileId, fileName, length, uploadDate, metadata, store, null);
+    }
+
+    public BlobInfo(String fileId, String fileName, long length, Date uploadDate, Document metadata, BlobStore store,
+                    String location) {
+        this.fileId = fileId;
+        this.fileName = fileName;
+        this.length = length;
+        this.uploadDate = uploadDate;
+        this.metadata = metadata != null ? metadata : new Document();
+        this.store = store;
+        this.location = location;
+    }
+
+    public String getFileId() { return fileId; }
+    public String getFileName() { return fileName; }
+    public long getLength() { return length; }
+    public Date getUploadDate() { return uploadDate; }
+    public Document getMetadata() { return metadata; }
+    public BlobStore getStore() { return store; }
+    public String getLocation() { return location; }
+}
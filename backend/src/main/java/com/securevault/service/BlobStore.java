@@ -0,0 +1,84 @@
+package com.securevault.service;
+
+import org.bson.Document;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Storage backend for file bytes. StorageService layers deduplication and
+ * encryption on top; a BlobStore only moves opaque bytes by fileId.
+ * Stored files are immutable: they are written once and then only read or deleted.
+ * Stores that can take chunked uploads implement {@link ChunkedBlobStore};
+ * only those can be the primary store.
+ */
+public interface BlobStore {
+
+    /**
+     * Name used by app.storage.backend to select the primary store
+     */
+    String getName();
+
+    /**
+     * Writes a complete file under the given id.
+     * {@code metadata.owner}, when present, is the user the file was stored for.
+     */
+    void store(String fileId, String fileName, InputStream content, Document metadata) throws IOException;
+
+    /**
+     * Writes a complete file from a local file. Backends that can take the
+     * file over by moving it should override this; the caller deletes
+     * whatever is left at {@code file} afterwards.
+     */
+    default void store(String fileId, String fileName, Path file, Document metadata) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            store(fileId, fileName, in, metadata);
+        }
+    }
+
+    /**
+     * Where an upload for {@code fileId} should be staged so that
+     * {@link #store(String, String, Path, Document)} can take it over with a
+     * rename, or null to stage in the system temp directory
+     */
+    default Path stagingPath(String fileId) throws IOException {
+        return null;
+    }
+
+    /**
+     * @return the file's info, or null if this store does not hold it
+     */
+    BlobInfo find(String fileId);
+
+    /**
+     * Opens the stored bytes starting at {@code offset}
+     */
+    InputStream open(String fileId, long offset) throws IOException;
+
+    /**
+     * Opens a file this store returned from {@link #find}. Stores that put
+     * a location in the descriptor open it there without looking it up again.
+     */
+    default InputStream open(BlobInfo file, long offset) throws IOException {
+        return open(file.getFileId(), offset);
+    }
+
+    /**
+     * Local file holding the stored bytes, for zero-copy serving, or null
+     */
+    default Path getLocalPath(String fileId) {
+        return null;
+    }
+
+    void delete(String fileId);
+
+    /**
+     * Lists stored files in a stable store-specific order, for background sweeps
+     * @param afterFileId Resume after this file, or null to start from the beginning
+     * @param limit Maximum number of files to return
+     */
+    List<BlobInfo> list(String afterFileId, int limit) throws IOException;
+}
@@ -0,0 +1,256 @@
+package com.securevault.service;
+
+import com.securevault.model.Asset;
+import com.securevault.model.AssetState;
+import com.securevault.model.User;
+import jakarta.annotation.PreDestroy;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+/**
+ * Moves the files of long-inactive users to the cold archive store.
+ * A file is archived when its owner has not logged in for inactive-days and
+ * none of its assets was uploaded or downloaded within idle-days. Its assets
+ * keep {@code archivedAt} as a stub. The first read is served from the
+ * archive while a background worker moves the file back (see
+ * {@link StorageService#rehydrate}).
+ *
+ * Downloads are collected in memory and stamped on their assets in one
+ * write per flush interval, not one write per download.
+ */
+@Service
+public class BlobTieringService {
+
+    private static final Logger log = LoggerFactory.getLogger(BlobTieringService.class);
+
+    private static final String STATE = "blob_tiering_state";
+    private static final int ACCESS_FLUSH_BATCH = 1000;
+
+    private final StorageService storageService;
+    private final MongoTemplate mongoTemplate;
+    // Downloaded since the last flush
+    private final Set<String> accessed = ConcurrentHashMap.newKeySet();
+    // Queued or being rehydrated on this instance
+    private final Set<String> rehydrating = ConcurrentHashMap.newKeySet();
+    private final ThreadPoolExecutor rehydrator = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(100), runnable -> {
+                Thread thread = new Thread(runnable, "blob-rehydrate");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    @Value("${app.storage.tiering.enabled:false}")
+    private boolean enabled;
+
+    @Value("${app.storage.tiering.inactive-days:365}")
+    private long inactiveDays;
+
+    @Value("${app.storage.tiering.idle-days:180}")
+    private long idleDays;
+
+    @Value("${app.storage.tiering.max-files-per-run:200}")
+    private int maxFilesPerRun;
+
+    @Value("${app.storage.tiering.lease-minutes:60}")
+    private long leaseMinutes;
+
+    public BlobTieringService(StorageService storageService, MongoTemplate mongoTemplate) {
+        this.storageService = storageService;
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    /**
+     * Records a download of the file's assets. Nothing is written here; see
+     * {@link #flushAccesses}.
+     */
+    public void recordAccess(String fileId) {
+        accessed.add(fileId);
+    }
+
+    /**
+     * Stamps the assets of the files downloaded since the last flush, with
+     * one update per batch of files. Each asset is stamped at most once a
+     * day, so files that are read all the time do not turn into writes.
+     * Idle-days is counted in months, so stamps a minute late change nothing.
+     */
+    @Scheduled(fixedDelayString = "${app.storage.tiering.access-flush-ms:60000}")
+    public void flushAccesses() {
+        List<String> fileIds = new ArrayList<>();
+        Iterator<String> pending = accessed.iterator();
+        while (pending.hasNext()) {
+            fileIds.add(pending.next());
+            pending.remove();
+        }
+        LocalDateTime now = LocalDateTime.now();
+        for (int from = 0; from < fileIds.size(); from += ACCESS_FLUSH_BATCH) {
+            mongoTemplate.updateMulti(
+                    query(where("fileId").in(fileIds.subList(from, Math.min(from + ACCESS_FLUSH_BATCH, fileIds.size())))
+                            .orOperator(
+                                    where("lastAccessedAt").is(null),
+                                    where("lastAccessedAt").lt(now.minusDays(1)))),
+                    new Update().set("lastAccessedAt", now),
+                    Asset.class);
+        }
+    }
+
+    /**
+     * Moves an archived file back to the primary store without making the
+     * caller wait; the caller keeps reading the archive copy meanwhile.
+     * Files that are not archived are ignored. When the queue is full the
+     * file stays archived until a later read asks again.
+     */
+    public void rehydrateInBackground(BlobInfo file) {
+        if (!storageService.isArchived(file) || !rehydrating.add(file.getFileId())) {
+            return;
+        }
+        try {
+            rehydrator.execute(() -> {
+                try {
+                    storageService.rehydrate(file);
+                } catch (Exception e) {
+                    log.warn("Could not rehydrate archived file {}: {}", file.getFileId(), e.getMessage());
+                } finally {
+                    rehydrating.remove(file.getFileId());
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rehydrating.remove(file.getFileId());
+            log.debug("Rehydration queue full, file {} stays archived for now", file.getFileId());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        rehydrator.shutdownNow();
+        flushAccesses();
+    }
+
+    @Scheduled(fixedDelayString = "${app.storage.tiering.interval-ms:3600000}",
+               initialDelayString = "${app.storage.tiering.initial-delay-ms:600000}")
+    public void scheduledRun() {
+        if (enabled) {
+            run();
+        }
+    }
+
+    /**
+     * Archives up to max-files-per-run cold files
+     * @return Counts of archived files and bytes, or a note if another instance is running
+     */
+    public Map<String, Object> run() {
+        Map<String, Object> result = new HashMap<>();
+        if (!acquireLease()) {
+            result.put("skipped", "Another instance is archiving");
+            return result;
+        }
+        int archived = 0;
+        long archivedBytes = 0;
+        try {
+            // Downloads not stamped yet would otherwise look idle
+            flushAccesses();
+            LocalDateTime idleCutoff = LocalDateTime.now().minusDays(idleDays);
+            Query inactiveUsers = query(where("lastLoginAt").lt(LocalDateTime.now().minusDays(inactiveDays)));
+            inactiveUsers.fields().include("_id");
+            for (User user : mongoTemplate.find(inactiveUsers, User.class)) {
+                for (String fileId : findColdFiles(user.getId(), idleCutoff)) {
+                    if (archived >= maxFilesPerRun) {
+                        break;
+                    }
+                    try {
+                        BlobInfo file = storageService.getFileMetadata(fileId);
+                        if (storageService.archiveFile(fileId)) {
+                            archived++;
+                            archivedBytes += file.getLength();
+                        }
+                        mongoTemplate.updateMulti(query(where("fileId").is(fileId)),
+                                new Update().set("archivedAt", LocalDateTime.now()), Asset.class);
+                    } catch (Exception e) {
+                        log.warn("Could not archive file {}: {}", fileId, e.getMessage());
+                    }
+                }
+                if (archived >= maxFilesPerRun) {
+                    break;
+                }
+            }
+        } finally {
+            mongoTemplate.updateFirst(query(where("_id").is("lease")), new Update().set("leaseUntil", null), STATE);
+        }
+        if (archived > 0) {
+            log.info("Archived {} cold files ({} bytes)", archived, archivedBytes);
+        }
+        result.put("archivedFiles", archived);
+        result.put("archivedBytes", archivedBytes);
+        return result;
+    }
+
+    /**
+     * Files of the user's stored assets that are not archived yet and whose
+     * assets have all been idle since the cutoff
+     */
+    private Set<String> findColdFiles(String userId, LocalDateTime idleCutoff) {
+        Query candidates = query(where("userId").is(userId)
+                .and("fileId").ne(null)
+                .and("archivedAt").is(null)
+                .and("state").nin(AssetState.PENDING, AssetState.FAILED)
+                .and("uploadedAt").lt(idleCutoff)
+                .orOperator(where("lastAccessedAt").is(null), where("lastAccessedAt").lt(idleCutoff)));
+        candidates.fields().include("fileId");
+        Set<String> fileIds = new LinkedHashSet<>();
+        for (Asset asset : mongoTemplate.find(candidates, Asset.class)) {
+            fileIds.add(asset.getFileId());
+        }
+        if (fileIds.isEmpty()) {
+            return fileIds;
+        }
+
+        // A deduplicated file is shared by several assets; any recent use keeps it hot
+        Query recent = query(where("fileId").in(fileIds).orOperator(
+                where("uploadedAt").gte(idleCutoff),
+                where("lastAccessedAt").gte(idleCutoff)));
+        recent.fields().include("fileId");
+        List<Asset> recentlyUsed = mongoTemplate.find(recent, Asset.class);
+        recentlyUsed.forEach(asset -> fileIds.remove(asset.getFileId()));
+        return fileIds;
+    }
+
+    private boolean acquireLease() {
+        LocalDateTime now = LocalDateTime.now();
+        try {
+            return mongoTemplate.findAndModify(
+                    query(where("_id").is("lease").orOperator(
+                            where("leaseUntil").is(null),
+                            where("leaseUntil").lt(now))),
+                    new Update().set("leaseUntil", now.plusMinutes(leaseMinutes)),
+                    FindAndModifyOptions.options().returnNew(true).upsert(true),
+                    Document.class, STATE) != null;
+        } catch (DuplicateKeyException e) {
+            return false;
+        }
+    }
+}
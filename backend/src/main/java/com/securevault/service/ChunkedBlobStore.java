@@ -0,0 +1,28 @@
+package com.securevault.service;
+
+import org.bson.Document;
+
+import java.io.IOException;
+
+/**
+ * BlobStore that can also assemble a file from chunks uploaded separately
+ * and in any order. New files go to the primary store, so it must be one of
+ * these; stores that only receive whole files, like the archive, are not.
+ */
+public interface ChunkedBlobStore extends BlobStore {
+
+    /**
+     * Writes chunk {@code index} of a file being uploaded in pieces. Chunks
+     * stay invisible until {@link #finalizeChunked} and may be rewritten.
+     * @param ownerId The uploading user; every chunk of a file carries the same owner
+     * @param chunkSize Stored bytes per chunk (all chunks but the last are this size)
+     */
+    void writeChunk(String fileId, String ownerId, int index, int chunkSize, byte[] data) throws IOException;
+
+    /**
+     * Publishes a file whose chunks have all been written
+     */
+    void finalizeChunked(String fileId, String fileName, long length, int chunkSize, Document metadata) throws IOException;
+
+    void discardChunks(String fileId) throws IOException;
+}
@@ -0,0 +1,316 @@
+package com.securevault.service;
+
+import com.securevault.model.Asset;
+import com.securevault.model.UploadSession;
+import com.securevault.model.User;
+import com.securevault.repository.UploadSessionRepository;
+import com.securevault.repository.UserRepository;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+/**
+ * Session-based resumable uploads.
+ * The client creates a session, PUTs numbered chunks in order and commits.
+ * Each chunk goes straight into fs.chunks, so an interrupted upload resumes
+ * from {@code nextChunkIndex} instead of starting over.
+ */
+@Service
+public class ChunkedUploadService {
+
+    private static final Logger log = LoggerFactory.getLogger(ChunkedUploadService.class);
+
+    private final UploadSessionRepository uploadSessionRepository;
+    private final UserRepository userRepository;
+    private final AssetService assetService;
+    private final StorageService storageService;
+    private final MongoTemplate mongoTemplate;
+    private final StorageUsageService storageUsageService;
+
+    @Value("${app.upload.chunk-size-bytes:4194304}")
+    private int chunkSize;
+
+    @Value("${app.upload.max-file-size-bytes:2147483648}")
+    private long maxFileSize;
+
+    @Value("${app.upload.session-ttl-hours:24}")
+    private long sessionTtlHours;
+
+    @Value("${app.upload.commit-lease-minutes:10}")
+    private long commitLeaseMinutes;
+
+    public ChunkedUploadService(UploadSessionRepository uploadSessionRepository, UserRepository userRepository,
+                                AssetService assetService, StorageService storageService,
+                                MongoTemplate mongoTemplate, StorageUsageService storageUsageService) {
+        this.uploadSessionRepository = uploadSessionRepository;
+        this.userRepository = userRepository;
+        this.assetService = assetService;
+        this.storageService = storageService;
+        this.mongoTemplate = mongoTemplate;
+        this.storageUsageService = storageUsageService;
+    }
+
+    public UploadSession createSession(String userId, String nomineeId, String description,
+                                       String fileName, String contentType, long totalSize) {
+        if (totalSize < 0 || totalSize > maxFileSize) {
+            throw new RuntimeException("File size must be between 0 and " + maxFileSize + " bytes");
+        }
+        assetService.verifyNomineeOwnership(userId, nomineeId);
+        // The declared size is reserved before the first chunk is accepted
+        boolean reserved = storageUsageService.reserve(userId, totalSize);
+
+        UploadSession session = new UploadSession();
+        session.setUserId(userId);
+        session.setNomineeId(nomineeId);
+        session.setDescription(description);
+        session.setFileName(fileName);
+        session.setContentType(contentType);
+        session.setTotalSize(totalSize);
+        session.setChunkSize(chunkSize);
+        session.setFileId(new ObjectId().toString());
+        session.setNextChunkIndex(0);
+        session.setReceivedBytes(0);
+        session.setStatus("OPEN");
+        session.setQuotaReserved(reserved);
+        session.setCreatedAt(LocalDateTime.now());
+        session.setUpdatedAt(LocalDateTime.now());
+        try {
+            return uploadSessionRepository.save(session);
+        } catch (RuntimeException e) {
+            if (reserved) {
+                storageUsageService.release(userId, totalSize);
+            }
+            throw e;
+        }
+    }
+
+    public UploadSession getSession(String sessionId, String userId) {
+        UploadSession session = uploadSessionRepository.findById(sessionId)
+                .orElseThrow(() -> new RuntimeException("Upload session not found"));
+
+        // Ownership check
+        if (!session.getUserId().equals(userId)) {
+            throw new AccessDeniedException("Ownership check failed");
+        }
+        return session;
+    }
+
+    /**
+     * Stores chunk {@code index}. Chunks must arrive in order; re-sending an
+     * already acknowledged chunk is a no-op so retries after a dropped response are safe.
+     */
+    public UploadSession uploadChunk(String sessionId, String userId, int index, InputStream body) throws IOException {
+        UploadSession session = getSession(sessionId, userId);
+        if (!"OPEN".equals(session.getStatus())) {
+            throw new RuntimeException("Upload session is " + session.getStatus());
+        }
+        if (index < session.getNextChunkIndex()) {
+            return session;
+        }
+        if (index > session.getNextChunkIndex()) {
+            throw new RuntimeException("Expected chunk " + session.getNextChunkIndex() + " but received " + index);
+        }
+
+        long offset = (long) index * session.getChunkSize();
+        int expected = (int) Math.min(session.getChunkSize(), session.getTotalSize() - offset);
+        if (expected <= 0) {
+            throw new RuntimeException("Chunk " + index + " is past the end of the file");
+        }
+        byte[] data = body.readNBytes(expected);
+        if (data.length != expected || body.read() != -1) {
+            throw new RuntimeException("Chunk " + index + " must be exactly " + expected + " bytes");
+        }
+
+        storageService.writeChunk(session.getFileId(), userId, index, data,
+                session.getChunkSize(), session.getTotalSize());
+
+        // Only advance if nobody else acknowledged this chunk in the meantime
+        UploadSession updated = mongoTemplate.findAndModify(
+                query(where("_id").is(sessionId).and("status").is("OPEN").and("nextChunkIndex").is(index)),
+                new Update().inc("nextChunkIndex", 1)
+                        .inc("receivedBytes", expected)
+                        .set("updatedAt", LocalDateTime.now()),
+                FindAndModifyOptions.options().returnNew(true),
+                UploadSession.class);
+        return updated != null ? updated : getSession(sessionId, userId);
+    }
+
+    /**
+     * Publishes the uploaded file and creates its asset.
+     * The session is held as COMMITTING under a lease while this runs and
+     * each finished step is recorded on it. If a step fails the session
+     * goes back to OPEN, so the client can simply commit again; a commit
+     * whose process died is taken over once its lease runs out. A session
+     * that is aborted or cleaned up after its asset was created is marked
+     * committed rather than losing the asset's file.
+     * Committing an already committed session returns its asset.
+     */
+    public Asset commit(String sessionId, String userId) throws IOException {
+        UploadSession session = getSession(sessionId, userId);
+        if (session.getReceivedBytes() != session.getTotalSize()) {
+            throw new RuntimeException("Upload incomplete: received " + session.getReceivedBytes()
+                    + " of " + session.getTotalSize() + " bytes");
+        }
+        User user = userRepository.findById(userId)
+                .orElseThrow(() -> new RuntimeException("User not found"));
+
+        // Claim atomically so a double-submitted commit creates one asset
+        LocalDateTime now = LocalDateTime.now();
+        UploadSession claimed = mongoTemplate.findAndModify(
+                query(where("_id").is(sessionId).orOperator(
+                        where("status").is("OPEN"),
+                        where("status").is("COMMITTING").and("leaseUntil").lt(now))),
+                new Update().set("status", "COMMITTING")
+                        .set("leaseUntil", now.plusMinutes(commitLeaseMinutes))
+                        .set("updatedAt", now),
+                FindAndModifyOptions.options().returnNew(true),
+                UploadSession.class);
+        if (claimed == null) {
+            UploadSession current = getSession(sessionId, userId);
+            if ("COMMITTED".equals(current.getStatus())) {
+                // In case the committing process died right after marking it
+                releaseQuota(current);
+                return assetService.getAsset(current.getAssetId(), userId);
+            }
+            throw new RuntimeException("Upload session is " + current.getStatus());
+        }
+
+        try {
+            if (!claimed.isFinalized()) {
+                storageService.finalizeChunkedFile(claimed.getFileId(), userId, claimed.getFileName(),
+                        claimed.getContentType(), claimed.getTotalSize(), claimed.getChunkSize());
+                checkpoint(sessionId, new Update().set("finalized", true));
+            }
+            String fileId = claimed.getStoredFileId();
+            if (fileId == null) {
+                fileId = storageService.registerStoredFile(claimed.getFileId(), userId);
+                checkpoint(sessionId, new Update().set("storedFileId", fileId));
+            }
+            String assetId = claimed.getAssetId() != null ? claimed.getAssetId() : new ObjectId().toString();
+            checkpoint(sessionId, new Update().set("assetId", assetId));
+
+            // The asset id is fixed before the insert, so a retry after a lost write finds it
+            Asset asset = mongoTemplate.findById(assetId, Asset.class);
+            if (asset == null) {
+                asset = assetService.createAsset(user, assetId, claimed.getNomineeId(), claimed.getDescription(),
+                        claimed.getFileName(), claimed.getContentType(), claimed.getTotalSize(), fileId);
+            }
+            checkpoint(sessionId, new Update().set("status", "COMMITTED").unset("leaseUntil"));
+            // The asset is on the counters now
+            releaseQuota(claimed);
+            return asset;
+        } catch (IOException | RuntimeException e) {
+            log.warn("Commit of upload session {} failed, reopening it: {}", sessionId, e.getMessage());
+            mongoTemplate.updateFirst(
+                    query(where("_id").is(sessionId).and("status").is("COMMITTING")),
+                    new Update().set("status", "OPEN").unset("leaseUntil").set("updatedAt", LocalDateTime.now()),
+                    UploadSession.class);
+            throw e;
+        }
+    }
+
+    /**
+     * Gives the session's quota reservation back, at most once however many
+     * commits, aborts or cleanups reach this point
+     */
+    private void releaseQuota(UploadSession session) {
+        UploadSession held = mongoTemplate.findAndModify(
+                query(where("_id").is(session.getId()).and("quotaReserved").is(true)),
+                new Update().set("quotaReserved", false),
+                UploadSession.class);
+        if (held != null) {
+            storageUsageService.release(held.getUserId(), held.getTotalSize());
+        }
+    }
+
+    private void checkpoint(String sessionId, Update update) {
+        mongoTemplate.updateFirst(query(where("_id").is(sessionId).and("status").is("COMMITTING")),
+                update.set("updatedAt", LocalDateTime.now()), UploadSession.class);
+    }
+
+    public void abort(String sessionId, String userId) throws IOException {
+        UploadSession session = getSession(sessionId, userId);
+        if ("OPEN".equals(session.getStatus())) {
+            discard(session);
+        }
+    }
+
+    /**
+     * Drops sessions that stopped receiving chunks, together with their
+     * partial data, and forgets sessions that finished long ago
+     */
+    @Scheduled(fixedDelayString = "${app.upload.cleanup-interval-ms:3600000}")
+    public void cleanupStaleSessions() {
+        LocalDateTime cutoff = LocalDateTime.now().minusHours(sessionTtlHours);
+        List<UploadSession> stale = new ArrayList<>(uploadSessionRepository.findByStatusAndUpdatedAtBefore("OPEN", cutoff));
+        // A commit whose worker died and that nobody retried
+        stale.addAll(uploadSessionRepository.findByStatusAndUpdatedAtBefore("COMMITTING", cutoff));
+        for (UploadSession session : stale) {
+            try {
+                discard(session);
+            } catch (IOException e) {
+                log.warn("Could not discard chunks of upload session {}: {}", session.getId(), e.getMessage());
+            }
+        }
+        if (!stale.isEmpty()) {
+            log.info("Discarded {} stale upload sessions", stale.size());
+        }
+
+        // Committed files belong to their assets by now; aborted ones are gone
+        long removed = mongoTemplate.remove(
+                query(where("status").in("COMMITTED", "ABORTED").and("updatedAt").lt(cutoff)),
+                UploadSession.class).getDeletedCount();
+        if (removed > 0) {
+            log.info("Removed {} finished upload sessions", removed);
+        }
+    }
+
+    private void discard(UploadSession session) throws IOException {
+        // Conditional on the status read, so a commit racing with cleanup keeps its data
+        LocalDateTime now = LocalDateTime.now();
+        UploadSession aborted = mongoTemplate.findAndModify(
+                query(where("_id").is(session.getId()).orOperator(
+                        where("status").is("OPEN"),
+                        where("status").is("COMMITTING").and("leaseUntil").lt(now))),
+                new Update().set("status", "ABORTED").set("updatedAt", now),
+                UploadSession.class);
+        if (aborted == null) {
+            return;
+        }
+        releaseQuota(aborted);
+        if (aborted.getAssetId() != null
+                && mongoTemplate.exists(query(where("_id").is(aborted.getAssetId())), Asset.class)) {
+            // An earlier commit created the asset but could not mark the session;
+            // the file is the asset's now, so finish the commit instead
+            mongoTemplate.updateFirst(query(where("_id").is(aborted.getId()).and("status").is("ABORTED")),
+                    new Update().set("status", "COMMITTED").unset("leaseUntil").set("updatedAt", now),
+                    UploadSession.class);
+            log.info("Upload session {} already has asset {}, marked it committed", aborted.getId(), aborted.getAssetId());
+            return;
+        }
+        // Undo however far an earlier commit attempt got
+        if (aborted.getStoredFileId() != null) {
+            storageService.deleteFile(aborted.getStoredFileId());
+        } else if (aborted.isFinalized()) {
+            storageService.deleteFile(aborted.getFileId());
+        } else {
+            storageService.discardChunks(aborted.getFileId());
+        }
+    }
+}
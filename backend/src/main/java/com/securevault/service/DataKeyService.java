@@ -0,0 +1,140 @@
+package com.securevault.service;
+
+import com.securevault.model.DataKey;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Service;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Envelope encryption keys: every user gets a random AES-256 data key that is
+ * persisted wrapped by the master key and kept unwrapped in a bounded LRU cache.
+ * The enabled flag only decides whether new files are encrypted; reading
+ * encrypted files needs just the master key.
+ */
+@Service
+public class DataKeyService {
+
+    private static final int IV_LENGTH = 12;
+    private static final int TAG_BITS = 128;
+
+    private final MongoTemplate mongoTemplate;
+    private final SecureRandom random = new SecureRandom();
+    private Map<String, SecretKey> cache;
+    private SecretKey masterKey;
+
+    @Value("${app.storage.encryption.enabled:false}")
+    private boolean encryptionEnabled;
+
+    @Value("${app.storage.encryption.master-key:}")
+    private String masterKeyBase64;
+
+    @Value("${app.storage.encryption.key-cache-size:10000}")
+    private int keyCacheSize;
+
+    public DataKeyService(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @PostConstruct
+    void init() {
+        cache = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, SecretKey> eldest) {
+                return size() > keyCacheSize;
+            }
+        });
+        if (masterKeyBase64 == null || masterKeyBase64.isBlank()) {
+            if (encryptionEnabled) {
+                throw new IllegalStateException("app.storage.encryption.master-key must be set when encryption is enabled");
+            }
+            return;
+        }
+        // Loaded even with encryption off, so files stored while it was on stay readable
+        byte[] raw = Base64.getDecoder().decode(masterKeyBase64.trim());
+        if (raw.length != 16 && raw.length != 24 && raw.length != 32) {
+            throw new IllegalStateException("Master key must be 128, 192 or 256 bits");
+        }
+        masterKey = new SecretKeySpec(raw, "AES");
+    }
+
+    /**
+     * Whether new files are encrypted
+     */
+    public boolean isEncryptionEnabled() {
+        return encryptionEnabled;
+    }
+
+    /**
+     * Returns the user's data key, creating and persisting one on first use
+     */
+    public SecretKey getDataKey(String ownerId) {
+        SecretKey key = cache.get(ownerId);
+        if (key != null) {
+            return key;
+        }
+        key = loadOrCreate(ownerId);
+        cache.put(ownerId, key);
+        return key;
+    }
+
+    private SecretKey loadOrCreate(String ownerId) {
+        if (masterKey == null) {
+            throw new IllegalStateException("Encryption is not configured");
+        }
+        DataKey stored = mongoTemplate.findById(ownerId, DataKey.class);
+        if (stored != null) {
+            return unwrap(stored.getWrappedKey());
+        }
+        try {
+            KeyGenerator generator = KeyGenerator.getInstance("AES");
+            generator.init(256, random);
+            SecretKey key = generator.generateKey();
+            mongoTemplate.insert(new DataKey(ownerId, wrap(key), LocalDateTime.now()));
+            return key;
+        } catch (DuplicateKeyException e) {
+            // Another request created the key first
+            return unwrap(mongoTemplate.findById(ownerId, DataKey.class).getWrappedKey());
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Could not generate data key", e);
+        }
+    }
+
+    private String wrap(SecretKey key) throws GeneralSecurityException {
+        byte[] iv = new byte[IV_LENGTH];
+        random.nextBytes(iv);
+        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+        cipher.init(Cipher.ENCRYPT_MODE, masterKey, new GCMParameterSpec(TAG_BITS, iv));
+        byte[] encrypted = cipher.doFinal(key.getEncoded());
+        byte[] wrapped = new byte[IV_LENGTH + encrypted.length];
+        System.arraycopy(iv, 0, wrapped, 0, IV_LENGTH);
+        System.arraycopy(encrypted, 0, wrapped, IV_LENGTH, encrypted.length);
+        return Base64.getEncoder().encodeToString(wrapped);
+    }
+
+    private SecretKey unwrap(String wrappedKey) {
+        try {
+            byte[] wrapped = Base64.getDecoder().decode(wrappedKey);
+            Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+            cipher.init(Cipher.DECRYPT_MODE, masterKey, new GCMParameterSpec(TAG_BITS, wrapped, 0, IV_LENGTH));
+            byte[] raw = cipher.doFinal(wrapped, IV_LENGTH, wrapped.length - IV_LENGTH);
+            return new SecretKeySpec(raw, "AES");
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Could not unwrap data key", e);
+        }
+    }
+}
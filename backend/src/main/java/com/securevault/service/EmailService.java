@@ -105,4 +105,24 @@ public class EmailService {
             throw new RuntimeException("Failed to initiate password reset: " + e.getMessage());
         }
     }
-}
\ No newline at end of file
+
+    public void sendAssetsReleasedEmail(String email, String nomineeName, long assetCount) {
+        SimpleMailMessage message = new SimpleMailMessage();
+        message.setTo(email);
+        message.setSubject("SecureVault - Assets Released to You");
+        message.setText(
+            "Hello " + nomineeName + ",\n\n" +
+            "Your claim has been approved and " + assetCount + " asset(s) have been released to you.\n\n" +
+            "Sign in to SecureVault to view and download them.\n\n" +
+            "Best regards,\n" +
+            "SecureVault Team"
+        );
+
+        try {
+            mailSender.send(message);
+            System.out.println("✅ Release notification sent to: " + email);
+        } catch (Exception mailException) {
+            System.err.println("⚠️ SMTP Error: Release notification not sent to " + email + ": " + mailException.getMessage());
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.securevault.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.SplittableRandom;
+
+/**
+ * Content-defined chunking with FastCDC (Xia et al., USENIX ATC 2016).
+ * Boundaries come from a gear rolling hash over the content itself, so an
+ * edit only changes the chunks around it; the rest of the file splits into
+ * the same chunks as before and deduplicates against them.
+ *
+ * Uses normalized chunking: a stricter mask before the average size and a
+ * looser one after it keeps chunk sizes close to the average.
+ */
+public final class FastCdcChunker {
+
+    /**
+     * Receives each chunk in turn. The array is reused for the next chunk.
+     */
+    @FunctionalInterface
+    public interface ChunkSink {
+        void accept(byte[] data, int length) throws IOException;
+    }
+
+    // Fixed seed: boundaries must not change between runs, or nothing would deduplicate
+    private static final long[] GEAR = new long[256];
+
+    static {
+        SplittableRandom random = new SplittableRandom(0x5EC0_7A17L);
+        for (int i = 0; i < GEAR.length; i++) {
+            GEAR[i] = random.nextLong();
+        }
+    }
+
+    private final int minSize;
+    private final int avgSize;
+    private final int maxSize;
+    private final long maskSmall;
+    private final long maskLarge;
+
+    public FastCdcChunker(int minSize, int avgSize, int maxSize) {
+        if (minSize <= 0 || minSize > avgSize || avgSize > maxSize || Integer.bitCount(avgSize) != 1) {
+            throw new IllegalArgumentException("Chunk sizes must satisfy 0 < min <= avg <= max with avg a power of two");
+        }
+        this.minSize = minSize;
+        this.avgSize = avgSize;
+        this.maxSize = maxSize;
+        int bits = Integer.numberOfTrailingZeros(avgSize);
+        // The gear hash shifts left, so its high bits cover the most bytes
+        this.maskSmall = highBits(bits + 1);
+        this.maskLarge = highBits(bits - 1);
+    }
+
+    /**
+     * Splits the stream into chunks and hands them to the sink in order
+     */
+    public void chunk(InputStream in, ChunkSink sink) throws IOException {
+        byte[] buffer = new byte[maxSize];
+        int length = 0;
+        boolean eof = false;
+        while (true) {
+            while (!eof && length < maxSize) {
+                int read = in.read(buffer, length, maxSize - length);
+                if (read == -1) {
+                    eof = true;
+                } else {
+                    length += read;
+                }
+            }
+            if (length == 0) {
+                return;
+            }
+            int cut = cut(buffer, length);
+            sink.accept(buffer, cut);
+            System.arraycopy(buffer, cut, buffer, 0, length - cut);
+            length -= cut;
+        }
+    }
+
+    /**
+     * @return Length of the chunk starting at the front of the buffer
+     */
+    private int cut(byte[] data, int length) {
+        if (length <= minSize) {
+            return length;
+        }
+        int end = Math.min(length, maxSize);
+        int normal = Math.min(end, avgSize);
+        long hash = 0;
+        int i = minSize;
+        for (; i < normal; i++) {
+            hash = (hash << 1) + GEAR[data[i] & 0xFF];
+            if ((hash & maskSmall) == 0) {
+                return i + 1;
+            }
+        }
+        for (; i < end; i++) {
+            hash = (hash << 1) + GEAR[data[i] & 0xFF];
+            if ((hash & maskLarge) == 0) {
+                return i + 1;
+            }
+        }
+        return end;
+    }
+
+    private static long highBits(int count) {
+        return count <= 0 ? 0 : -1L << (64 - count);
+    }
+}
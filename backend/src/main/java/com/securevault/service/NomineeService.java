@@ -8,6 +8,7 @@ import com.securevault.repository.NomineeRepository;
 import com.securevault.repository.UserRepository;
 import org.springframework.security.access.AccessDeniedException;
 import org.springframework.stereotype.Service;
+import java.util.ArrayList;
 import java.util.List;
 
 @Service
@@ -16,12 +17,14 @@ public class NomineeService {
     private final NomineeRepository nomineeRepository;
     private final UserRepository userRepository;
     private final AssetRepository assetRepository;
+    private final AssetSearchIndexer assetSearchIndexer;
 
     public NomineeService(NomineeRepository nomineeRepository, UserRepository userRepository,
-                          AssetRepository assetRepository) {
+                          AssetRepository assetRepository, AssetSearchIndexer assetSearchIndexer) {
         this.nomineeRepository = nomineeRepository;
         this.userRepository = userRepository;
         this.assetRepository = assetRepository;
+        this.assetSearchIndexer = assetSearchIndexer;
     }
 
     public Nominee addNominee(String userId, Nominee nomineeData) {
@@ -55,17 +58,21 @@ public class NomineeService {
 
         // Remove this nominee from all assets that reference it
         List<Asset> userAssets = assetRepository.findByUserId(userId);
+        List<String> changed = new ArrayList<>();
         for (Asset asset : userAssets) {
             List<String> nomineeIds = asset.getNomineeIds();
             if (nomineeIds != null && nomineeIds.contains(nomineeId)) {
                 nomineeIds.remove(nomineeId);
                 asset.setNomineeIds(nomineeIds);
                 assetRepository.save(asset);
+                changed.add(asset.getId());
             }
         }
 
         // Delete the nominee record
         nomineeRepository.delete(nominee);
+        // The assets are no longer found by the nominee's name
+        assetSearchIndexer.refresh(changed);
     }
 
     /**
@@ -79,11 +86,16 @@ public class NomineeService {
             throw new AccessDeniedException("Nominee does not belong to the user");
         }
 
+        boolean renamed = updatedData.getName() != null && !updatedData.getName().equals(nominee.getName());
         if (updatedData.getName() != null) nominee.setName(updatedData.getName());
         if (updatedData.getEmail() != null) nominee.setEmail(updatedData.getEmail());
         if (updatedData.getRelationship() != null) nominee.setRelationship(updatedData.getRelationship());
         if (updatedData.getPhoneNumber() != null) nominee.setPhoneNumber(updatedData.getPhoneNumber());
 
-        return nomineeRepository.save(nominee);
+        Nominee saved = nomineeRepository.save(nominee);
+        if (renamed) {
+            assetSearchIndexer.refreshNominee(nomineeId);
+        }
+        return saved;
     }
 }
\ No newline at end of file
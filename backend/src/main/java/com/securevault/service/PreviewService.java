@@ -0,0 +1,304 @@
+package com.securevault.service;
+
+import com.securevault.model.Asset;
+import com.securevault.model.AssetState;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+/**
+ * Generates small JPEG previews of uploaded images on a bounded background pool.
+ * A preview is stored as its own blob owned by the asset's owner, and linked
+ * from every asset of that owner sharing the source file through
+ * {@code Asset.previewFileId}. Its size is added to the owner's storage usage.
+ *
+ * Requests that find the queue full are dropped; a periodic sweep queues
+ * images that still have no preview. Images that cannot be decoded are
+ * marked {@code previewUnavailable} and not tried again.
+ */
+@Service
+public class PreviewService {
+
+    private static final Logger log = LoggerFactory.getLogger(PreviewService.class);
+
+    private static final String PREVIEW_TYPE = "image/jpeg";
+
+    // Images with more pixels than this are not decoded, to bound worker memory
+    private static final long MAX_SOURCE_PIXELS = 50_000_000L;
+
+    private final StorageService storageService;
+    private final MongoTemplate mongoTemplate;
+    private final StorageUsageService storageUsageService;
+    private final ThreadPoolExecutor executor;
+    // Source files queued or being rendered, keyed by owner and file
+    private final Set<String> inFlight = ConcurrentHashMap.newKeySet();
+
+    @Value("${app.preview.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.preview.max-dimension:320}")
+    private int maxDimension;
+
+    @Value("${app.preview.max-source-bytes:33554432}")
+    private long maxSourceBytes;
+
+    public PreviewService(StorageService storageService, MongoTemplate mongoTemplate,
+                          StorageUsageService storageUsageService,
+                          @Value("${app.preview.worker-threads:2}") int workerThreads,
+                          @Value("${app.preview.queue-capacity:100}") int queueCapacity) {
+        this.storageService = storageService;
+        this.mongoTemplate = mongoTemplate;
+        this.storageUsageService = storageUsageService;
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(workerThreads, workerThreads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "preview-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    return thread;
+                },
+                (runnable, pool) -> {
+                    throw new RejectedExecutionException("Preview queue full");
+                });
+    }
+
+    /**
+     * Queues preview generation for a newly created asset. Returns immediately.
+     */
+    public void requestPreview(Asset asset) {
+        if (!enabled || asset.getFileId() == null || !isPreviewable(asset.getFileType())) {
+            return;
+        }
+        if (!enqueue(asset.getFileId(), asset.getUserId())) {
+            log.debug("Preview queue full, the sweep will retry file {}", asset.getFileId());
+        }
+    }
+
+    /**
+     * Queues images that have no preview yet, e.g. because the queue was full
+     * when they were uploaded. Only fills the queue's free capacity.
+     */
+    @Scheduled(fixedDelayString = "${app.preview.sweep-interval-ms:600000}",
+               initialDelayString = "${app.preview.sweep-initial-delay-ms:120000}")
+    public void sweepMissingPreviews() {
+        int capacity = executor.getQueue().remainingCapacity();
+        if (!enabled || capacity == 0) {
+            return;
+        }
+        Query missing = query(where("previewFileId").is(null)
+                .and("fileType").regex("^image/")
+                .and("fileId").ne(null)
+                .and("previewUnavailable").ne(true)
+                .and("state").nin(AssetState.PENDING.name(), AssetState.FAILED.name()))
+                .limit(capacity + inFlight.size());
+        missing.fields().include("fileId", "userId", "fileType");
+        int queued = 0;
+        for (Asset asset : mongoTemplate.find(missing, Asset.class)) {
+            if (isPreviewable(asset.getFileType()) && enqueue(asset.getFileId(), asset.getUserId())) {
+                queued++;
+            }
+        }
+        if (queued > 0) {
+            log.info("Queued {} missing previews", queued);
+        }
+    }
+
+    private boolean enqueue(String fileId, String ownerId) {
+        String key = ownerId + ":" + fileId;
+        if (!inFlight.add(key)) {
+            return true;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    generate(fileId, ownerId);
+                } finally {
+                    inFlight.remove(key);
+                }
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            inFlight.remove(key);
+            return false;
+        }
+    }
+
+    /**
+     * @return The preview blob of a stored file, or null if it has none (yet)
+     */
+    public String findPreviewFileId(String fileId) {
+        Asset asset = mongoTemplate.findOne(
+                query(where("fileId").is(fileId).and("previewFileId").ne(null)),
+                Asset.class);
+        return asset != null ? asset.getPreviewFileId() : null;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private boolean isPreviewable(String contentType) {
+        if (contentType == null) {
+            return false;
+        }
+        String type = contentType.toLowerCase(Locale.ROOT);
+        return type.startsWith("image/") && ImageIO.getImageReadersByMIMEType(type).hasNext();
+    }
+
+    private void generate(String fileId, String ownerId) {
+        try {
+            // Identical content the owner uploaded again shares the existing preview
+            Query previewed = query(where("fileId").is(fileId).and("userId").is(ownerId).and("previewFileId").ne(null));
+            previewed.fields().include("previewFileId", "previewSize");
+            Asset existing = mongoTemplate.findOne(previewed, Asset.class);
+            if (existing != null) {
+                long size = existing.getPreviewSize() != null ? existing.getPreviewSize() : 0;
+                storageUsageService.recordPreview(ownerId, size, link(fileId, ownerId, existing.getPreviewFileId(), size));
+                return;
+            }
+
+            BlobInfo file = storageService.getFileMetadata(fileId);
+            if (storageService.getContentLength(file) > maxSourceBytes) {
+                markUnavailable(fileId, ownerId);
+                return;
+            }
+            BufferedImage source;
+            try (InputStream in = storageService.openStream(file, 0)) {
+                source = readDownsampled(in);
+            }
+            if (source == null) {
+                markUnavailable(fileId, ownerId);
+                return;
+            }
+
+            byte[] jpeg = encodeJpeg(scale(source));
+            String previewFileId = storageService.saveRendition(fileId, ownerId, "preview.jpg", PREVIEW_TYPE, jpeg);
+            long linked = link(fileId, ownerId, previewFileId, jpeg.length);
+            if (linked == 0) {
+                // The assets were deleted, or another worker linked a preview first
+                storageService.deleteFile(previewFileId);
+                return;
+            }
+            storageUsageService.recordPreview(ownerId, jpeg.length, linked);
+        } catch (Exception e) {
+            log.warn("Could not generate preview for file {}: {}", fileId, e.getMessage());
+        }
+    }
+
+    private long link(String fileId, String ownerId, String previewFileId, long previewSize) {
+        return mongoTemplate.updateMulti(
+                query(where("fileId").is(fileId).and("userId").is(ownerId).and("previewFileId").is(null)),
+                new Update().set("previewFileId", previewFileId).set("previewSize", previewSize),
+                Asset.class).getModifiedCount();
+    }
+
+    private void markUnavailable(String fileId, String ownerId) {
+        mongoTemplate.updateMulti(
+                query(where("fileId").is(fileId).and("userId").is(ownerId).and("previewFileId").is(null)),
+                new Update().set("previewUnavailable", true),
+                Asset.class);
+    }
+
+    /**
+     * Decodes the image, skipping source pixels so the decoded raster is only
+     * about twice the preview size instead of the full resolution
+     */
+    private BufferedImage readDownsampled(InputStream in) throws IOException {
+        try (ImageInputStream stream = ImageIO.createImageInputStream(in)) {
+            if (stream == null) {
+                return null;
+            }
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(stream);
+            if (!readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(stream, true, true);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                if ((long) width * height > MAX_SOURCE_PIXELS) {
+                    return null;
+                }
+                ImageReadParam param = reader.getDefaultReadParam();
+                int step = Math.max(1, Math.max(width, height) / (maxDimension * 2));
+                param.setSourceSubsampling(step, step, 0, 0);
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    private BufferedImage scale(BufferedImage source) {
+        double ratio = Math.min(1.0, (double) maxDimension / Math.max(source.getWidth(), source.getHeight()));
+        int width = Math.max(1, (int) Math.round(source.getWidth() * ratio));
+        int height = Math.max(1, (int) Math.round(source.getHeight() * ratio));
+
+        // JPEG has no alpha; transparent areas become white
+        BufferedImage target = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = target.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g.setColor(Color.WHITE);
+            g.fillRect(0, 0, width, height);
+            g.drawImage(source, 0, 0, width, height, null);
+        } finally {
+            g.dispose();
+        }
+        return target;
+    }
+
+    private byte[] encodeJpeg(BufferedImage image) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByMIMEType(PREVIEW_TYPE).next();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ImageOutputStream out = ImageIO.createImageOutputStream(bytes)) {
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(0.8f);
+            writer.setOutput(out);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return bytes.toByteArray();
+    }
+}
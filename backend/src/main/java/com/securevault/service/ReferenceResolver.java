@@ -0,0 +1,56 @@
+package com.securevault.service;
+
+import com.securevault.model.Nominee;
+import com.securevault.model.User;
+import com.securevault.repository.NomineeRepository;
+import com.securevault.repository.UserRepository;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Resolves the nominees and users referenced by a page of documents with one
+ * {@code $in} query per collection, instead of a findById per reference.
+ * Callers collect the ids of the whole page first and build their DTOs from
+ * the returned maps; ids that no longer exist are simply absent.
+ */
+@Component
+public class ReferenceResolver {
+
+    private final NomineeRepository nomineeRepository;
+    private final UserRepository userRepository;
+
+    public ReferenceResolver(NomineeRepository nomineeRepository, UserRepository userRepository) {
+        this.nomineeRepository = nomineeRepository;
+        this.userRepository = userRepository;
+    }
+
+    public Map<String, Nominee> nominees(Collection<String> nomineeIds) {
+        Map<String, Nominee> byId = new HashMap<>();
+        Set<String> ids = distinct(nomineeIds);
+        if (!ids.isEmpty()) {
+            nomineeRepository.findAllById(ids).forEach(nominee -> byId.put(nominee.getId(), nominee));
+        }
+        return byId;
+    }
+
+    public Map<String, User> users(Collection<String> userIds) {
+        Map<String, User> byId = new HashMap<>();
+        Set<String> ids = distinct(userIds);
+        if (!ids.isEmpty()) {
+            userRepository.findAllById(ids).forEach(user -> byId.put(user.getId(), user));
+        }
+        return byId;
+    }
+
+    private Set<String> distinct(Collection<String> ids) {
+        Set<String> distinct = new LinkedHashSet<>(ids);
+        distinct.removeIf(Objects::isNull);
+        return distinct;
+    }
+}
@@ -0,0 +1,77 @@
+package com.securevault.service;
+
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * An upload that was spooled to local disk, presented as a MultipartFile so
+ * it goes through the same StorageService.saveFile path as a live request.
+ * Like the container's own spooled parts, transferTo moves the file.
+ */
+class SpooledUpload implements MultipartFile {
+
+    private final Path path;
+    private final String fileName;
+    private final String contentType;
+
+    SpooledUpload(Path path, String fileName, String contentType) {
+        this.path = path;
+        this.fileName = fileName;
+        this.contentType = contentType;
+    }
+
+    @Override
+    public String getName() {
+        return "file";
+    }
+
+    @Override
+    public String getOriginalFilename() {
+        return fileName;
+    }
+
+    @Override
+    public String getContentType() {
+        return contentType;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return getSize() == 0;
+    }
+
+    @Override
+    public long getSize() {
+        try {
+            return Files.size(path);
+        } catch (IOException e) {
+            throw new IllegalStateException("Spooled upload is gone: " + path, e);
+        }
+    }
+
+    @Override
+    public byte[] getBytes() throws IOException {
+        return Files.readAllBytes(path);
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        return Files.newInputStream(path);
+    }
+
+    @Override
+    public void transferTo(File dest) throws IOException {
+        transferTo(dest.toPath());
+    }
+
+    @Override
+    public void transferTo(Path dest) throws IOException {
+        Files.move(path, dest, StandardCopyOption.REPLACE_EXISTING);
+    }
+}
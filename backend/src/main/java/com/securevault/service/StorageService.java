@@ -1,9 +1,50 @@
 package com.securevault.service;
 
-import org.springframework.data.mongodb.gridfs.GridFsTemplate;
+import com.securevault.model.Asset;
+import com.securevault.model.StoredBlob;
+import com.securevault.security.SegmentedAesGcm;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.InputStreamResource;
+import org.springframework.core.io.Resource;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.GZIPInputStream;
 import org.bson.types.ObjectId;
 import static org.springframework.data.mongodb.core.query.Criteria.where;
 import static org.springframework.data.mongodb.core.query.Query.query;
@@ -11,51 +52,860 @@ import static org.springframework.data.mongodb.core.query.Query.query;
 @Service
 public class StorageService {
 
-    private final GridFsTemplate gridFsTemplate;
+    private static final Logger log = LoggerFactory.getLogger(StorageService.class);
 
-    public StorageService(GridFsTemplate gridFsTemplate) {
-        this.gridFsTemplate = gridFsTemplate;
+    // Size of the per-thread copy buffer used when streaming file bytes to a client
+    private static final int STREAM_BUFFER_SIZE = 64 * 1024;
+
+    private static final ThreadLocal<byte[]> STREAM_BUFFER = ThreadLocal.withInitial(() -> new byte[STREAM_BUFFER_SIZE]);
+
+    private static final String ARCHIVE_STORE = "archive";
+    private static final String REHYDRATIONS = "blob_rehydrations";
+    private static final long REHYDRATION_LEASE_MINUTES = 30;
+
+    private final MongoTemplate mongoTemplate;
+    private final DataKeyService dataKeyService;
+    private final BlobCache blobCache;
+
+    // New files go to the primary store; lookups fall back to the others
+    private final ChunkedBlobStore primaryStore;
+    private final List<BlobStore> stores = new ArrayList<>();
+    // Cold tier; files are moved here by BlobTieringService and back on read
+    private final BlobStore archiveStore;
+
+    // Plaintext bytes per independently authenticated segment of an encrypted file
+    @Value("${app.storage.encryption.segment-size-bytes:65536}")
+    private int segmentSize;
+
+    @Value("${app.storage.compression.enabled:true}")
+    private boolean compressionEnabled;
+
+    // Files smaller than this are stored as-is; gzip framing would eat the gain
+    @Value("${app.storage.compression.min-size-bytes:1024}")
+    private long compressionMinSize;
+
+    // A range read inflates at most one block it does not send
+    @Value("${app.storage.compression.block-size-bytes:1048576}")
+    private int compressionBlockSize;
+
+    public StorageService(List<BlobStore> blobStores, MongoTemplate mongoTemplate, DataKeyService dataKeyService,
+                          BlobCache blobCache, @Value("${app.storage.backend:gridfs}") String backend) {
+        this.mongoTemplate = mongoTemplate;
+        this.dataKeyService = dataKeyService;
+        this.blobCache = blobCache;
+        BlobStore selected = blobStores.stream()
+                .filter(store -> store.getName().equals(backend))
+                .findFirst()
+                .orElseThrow(() -> new IllegalStateException("Unknown storage backend: " + backend));
+        if (!(selected instanceof ChunkedBlobStore chunked)) {
+            throw new IllegalStateException("Storage backend " + backend + " takes no chunked uploads and cannot be primary");
+        }
+        this.primaryStore = chunked;
+        this.stores.add(primaryStore);
+        blobStores.stream().filter(store -> store != primaryStore).forEach(this.stores::add);
+        this.archiveStore = blobStores.stream()
+                .filter(store -> store.getName().equals(ARCHIVE_STORE) && store != primaryStore)
+                .findFirst()
+                .orElse(null);
     }
 
     /**
-     * Saves a file to MongoDB Atlas using GridFS
+     * Saves a file to the primary storage backend.
+     * Content is deduplicated by SHA-256: if identical bytes are already stored,
+     * the existing file gains a reference and nothing is written.
+     * Compressible content is gzipped first (see {@link BlobCompression}).
+     * When encryption is enabled the bytes are encrypted with the owner's data key
+     * while they stream into storage.
+     * The upload is first moved out of the container's spool into a staging
+     * file, which is a rename when both share a filesystem; stores that keep
+     * files on disk stage next to their data and take the file over the same way.
      * @param file The file to save
+     * @param ownerId The user whose vault the file belongs to
      * @return The unique ObjectId (as String) of the saved file
      */
-    public String saveFile(MultipartFile file) throws IOException {
-        // Store the file in GridFS and get the generated ID
-        ObjectId fileId = gridFsTemplate.store(
-            file.getInputStream(), 
-            file.getOriginalFilename(), 
-            file.getContentType()
-        );
+    public String saveFile(MultipartFile file, String ownerId) throws IOException {
+        // Pick the id up front: encrypted segments are bound to it
+        String fileId = new ObjectId().toHexString();
+        long size = file.getSize();
+        String fileName = file.getOriginalFilename();
+        String contentType = file.getContentType();
+        Path upload = primaryStore.stagingPath(fileId);
+        if (upload == null) {
+            upload = Files.createTempFile("securevault-", ".upload");
+        }
+        Compressed compression = null;
+        try {
+            // transferTo(File) goes through Part.write, which moves the spooled
+            // part; the Path overload would copy it through a heap buffer
+            Files.deleteIfExists(upload);
+            file.transferTo(upload.toFile());
+
+            // Hashing the local copy is cheap compared to a storage round-trip
+            // and lets duplicates skip the write entirely
+            String sha256;
+            CRC32 crc = new CRC32();
+            try (InputStream in = new CheckedInputStream(Files.newInputStream(upload), crc)) {
+                sha256 = sha256(in);
+            }
+            String blobKey = blobKey(sha256, ownerId);
+            String existingFileId = acquireBlob(blobKey);
+            if (existingFileId != null) {
+                return existingFileId;
+            }
+
+            // owner is the first uploader of the content; backends may place files by it.
+            // crc32 lets ZIP exports store the file without reading it twice
+            Document metadata = new Document("sha256", sha256).append("crc32", crc.getValue()).append("owner", ownerId);
+            if (contentType != null) {
+                metadata.append("_contentType", contentType);
+            }
+            compression = compressIfWorthwhile(upload, size, contentType);
+            Path stored = compression != null ? compression.path() : upload;
+            long encodedLength = size;
+            if (compression != null) {
+                encodedLength = Files.size(compression.path());
+                metadata.append("compression", new Document("codec", BlobCompression.CODEC)
+                        .append("length", size)
+                        .append("blockSize", compressionBlockSize)
+                        .append("blocks", compression.blocks()));
+            }
+            if (dataKeyService.isEncryptionEnabled()) {
+                metadata.append("encryption", encryptionMetadata(ownerId, encodedLength));
+                try (InputStream in = Files.newInputStream(stored)) {
+                    primaryStore.store(fileId, fileName,
+                            SegmentedAesGcm.encryptingStream(in, dataKeyService.getDataKey(ownerId), fileId, segmentSize),
+                            metadata);
+                }
+            } else {
+                primaryStore.store(fileId, fileName, stored, metadata);
+            }
+            return registerBlob(blobKey, fileId, size);
+        } finally {
+            // Both are gone already if the store took them over
+            Files.deleteIfExists(upload);
+            if (compression != null) {
+                Files.deleteIfExists(compression.path());
+            }
+        }
+    }
+
+    /**
+     * Stores a small derived file such as a preview image. Renditions are not
+     * deduplicated; they are encrypted under the owner's key like the original.
+     * @param sourceFileId The file the rendition was derived from
+     * @return The ObjectId string of the stored rendition
+     */
+    public String saveRendition(String sourceFileId, String ownerId, String fileName, String contentType,
+                                byte[] data) throws IOException {
+        String fileId = new ObjectId().toHexString();
+        Document metadata = new Document("_contentType", contentType)
+                .append("owner", ownerId)
+                .append("renditionOf", sourceFileId);
+        InputStream in = new ByteArrayInputStream(data);
+        if (dataKeyService.isEncryptionEnabled()) {
+            metadata.append("encryption", encryptionMetadata(ownerId, data.length));
+            in = SegmentedAesGcm.encryptingStream(in, dataKeyService.getDataKey(ownerId), fileId, segmentSize);
+        }
+        primaryStore.store(fileId, fileName, in, metadata);
+        return fileId;
+    }
+
+    /**
+     * Stores a container packing content-defined chunks of asset versions.
+     * Containers are deduplicated like whole files; an identical container
+     * only gains a reference, and holds its chunks at the same offsets. They
+     * are not compressed; version history is mostly formats that already are.
+     * @return The stored container, and whether this call stored it rather
+     *         than referencing a copy the owner already had
+     */
+    public SavedChunk saveChunkContainer(byte[] data, int length, String ownerId) throws IOException {
+        String sha256 = sha256(new ByteArrayInputStream(data, 0, length));
+        String blobKey = blobKey(sha256, ownerId);
+        String existingFileId = acquireBlob(blobKey);
+        if (existingFileId != null) {
+            return new SavedChunk(existingFileId, false);
+        }
+
+        String fileId = new ObjectId().toHexString();
+        Document metadata = new Document("sha256", sha256).append("owner", ownerId).append("versionChunks", true);
+        InputStream in = new ByteArrayInputStream(data, 0, length);
+        if (dataKeyService.isEncryptionEnabled()) {
+            metadata.append("encryption", encryptionMetadata(ownerId, length));
+            in = SegmentedAesGcm.encryptingStream(in, dataKeyService.getDataKey(ownerId), fileId, segmentSize);
+        }
+        primaryStore.store(fileId, "chunks-" + sha256, in, metadata);
+        String registered = registerBlob(blobKey, fileId, length);
+        return new SavedChunk(registered, registered.equals(fileId));
+    }
+
+    public record SavedChunk(String fileId, boolean created) {}
+
+    /**
+     * Deduplication key of one chunk of version history, scoped like {@link #blobKey}
+     */
+    public String chunkKey(byte[] data, int length, String ownerId) throws IOException {
+        return blobKey(sha256(new ByteArrayInputStream(data, 0, length)), ownerId);
+    }
 
-        return fileId.toString();
+    /**
+     * Adds a reference to a stored file that is still referenced, the way
+     * deduplicated uploads do. Files nothing tracks cannot be shared.
+     * @return false if the file is untracked or being deleted
+     */
+    public boolean acquireFile(String fileId) {
+        return mongoTemplate.updateFirst(query(where("fileId").is(fileId).and("refCount").gt(0)),
+                new Update().inc("refCount", 1).set("lastAcquiredAt", LocalDateTime.now()),
+                StoredBlob.class).getModifiedCount() > 0;
     }
 
     /**
-     * Retrieves a file from MongoDB GridFS as a Resource
+     * Adds references to files the caller already holds one on, in one bulk update
+     * @param references How many references to add per fileId
+     */
+    public void addReferences(Map<String, Integer> references) {
+        if (references.values().stream().noneMatch(count -> count > 0)) {
+            return;
+        }
+        BulkOperations increments = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, StoredBlob.class);
+        references.forEach((fileId, count) -> {
+            if (count > 0) {
+                increments.updateOne(query(where("fileId").is(fileId)), new Update().inc("refCount", count));
+            }
+        });
+        increments.execute();
+    }
+
+    /**
+     * Deduplicates a file that was written in chunks.
+     * If the same content already exists the new copy is deleted.
+     * @param fileId The ObjectId string of the freshly written file
+     * @param ownerId The user whose vault the file belongs to
+     * @return The fileId that callers should reference from now on
+     */
+    public String registerStoredFile(String fileId, String ownerId) throws IOException {
+        BlobInfo file = getFileMetadata(fileId);
+        String sha256;
+        try (InputStream in = openStream(file, 0)) {
+            sha256 = sha256(in);
+        }
+        String blobKey = blobKey(sha256, ownerId);
+        String existingFileId = acquireBlob(blobKey);
+        if (existingFileId != null) {
+            file.getStore().delete(fileId);
+            blobCache.invalidate(fileId);
+            return existingFileId;
+        }
+        return registerBlob(blobKey, fileId, getContentLength(file));
+    }
+
+    /**
+     * Retrieves a stored file as a Resource
+     * @param fileId The ObjectId string
+     * @return Resource yielding the (decrypted) file content
+     */
+    public Resource getFileResource(String fileId) throws IOException {
+        BlobInfo file = rehydrate(getFileMetadata(fileId));
+        return new InputStreamResource(openStream(file, 0), file.getFileName());
+    }
+
+    /**
+     * Looks up a file's descriptor without reading its content
      * @param fileId The ObjectId string
-     * @return GridFsResource
+     * @return BlobInfo holding length, filename and metadata
+     */
+    public BlobInfo getFileMetadata(String fileId) {
+        if (!ObjectId.isValid(fileId)) {
+            throw new RuntimeException("File not found with ID: " + fileId);
+        }
+        BlobInfo cached = blobCache.getMetadata(fileId);
+        if (cached != null) {
+            return cached;
+        }
+        BlobInfo file = findInStores(fileId);
+        if (file == null) {
+            throw new RuntimeException("File not found with ID: " + fileId);
+        }
+        blobCache.putMetadata(file);
+        return file;
+    }
+
+    /**
+     * Whether the file currently lives in the cold archive store
+     */
+    public boolean isArchived(BlobInfo file) {
+        return archiveStore != null && file.getStore() == archiveStore;
+    }
+
+    /**
+     * Moves a file from its hot store into the archive store under the same id.
+     * The metadata moves with it, so encrypted and compressed files read back
+     * exactly as before.
+     * @return true if the file was moved, false if it was already archived
      */
-    public org.springframework.data.mongodb.gridfs.GridFsResource getFileResource(String fileId) {
-        com.mongodb.client.gridfs.model.GridFSFile file = gridFsTemplate.findOne(query(where("_id").is(new ObjectId(fileId))));
+    public boolean archiveFile(String fileId) throws IOException {
+        if (archiveStore == null) {
+            throw new IllegalStateException("No archive store is configured");
+        }
+        BlobInfo file = findInStores(fileId);
         if (file == null) {
             throw new RuntimeException("File not found with ID: " + fileId);
         }
-        return gridFsTemplate.getResource(file);
+        if (file.getStore() == archiveStore) {
+            return false;
+        }
+        // An earlier attempt may have archived it but not removed the hot copy
+        if (archiveStore.find(fileId) == null) {
+            try (InputStream in = file.getStore().open(file, 0)) {
+                archiveStore.store(fileId, file.getFileName(), in, file.getMetadata());
+            }
+        }
+        file.getStore().delete(fileId);
+        blobCache.invalidate(fileId);
+        return true;
+    }
+
+    /**
+     * Moves an archived file back into the primary store and clears the
+     * archive stub on its assets. Files that are not archived are returned
+     * unchanged. If another request is already rehydrating the file, this one
+     * is served from the archive copy instead of waiting.
+     * @return The file's descriptor after rehydration
+     */
+    public BlobInfo rehydrate(BlobInfo file) throws IOException {
+        if (!isArchived(file)) {
+            return file;
+        }
+        String fileId = file.getFileId();
+        if (!claimRehydration(fileId)) {
+            return file;
+        }
+        try {
+            if (primaryStore.find(fileId) == null) {
+                // Clears what an interrupted attempt may have left behind
+                primaryStore.delete(fileId);
+                try (InputStream in = archiveStore.open(fileId, 0)) {
+                    primaryStore.store(fileId, file.getFileName(), in, file.getMetadata());
+                }
+            }
+            archiveStore.delete(fileId);
+            blobCache.invalidate(fileId);
+            mongoTemplate.updateMulti(query(where("fileId").is(fileId)), new Update().unset("archivedAt"), Asset.class);
+            log.info("Rehydrated archived file {}", fileId);
+        } finally {
+            mongoTemplate.remove(query(where("_id").is(fileId)), REHYDRATIONS);
+        }
+        return getFileMetadata(fileId);
+    }
+
+    /**
+     * Content type recorded when the file was stored
+     */
+    public String getContentType(BlobInfo file) {
+        String contentType = file.getMetadata().getString("_contentType");
+        return contentType != null ? contentType : "application/octet-stream";
+    }
+
+    /**
+     * Length of the file as the client sees it (before compression and encryption)
+     */
+    public long getContentLength(BlobInfo file) {
+        Document compression = compressionOf(file);
+        return compression != null ? ((Number) compression.get("length")).longValue() : getEncodedLength(file);
+    }
+
+    /**
+     * CRC-32 of the original bytes, or null for files stored without one
+     */
+    public Long getCrc32(BlobInfo file) {
+        Number crc = file.getMetadata().get("crc32", Number.class);
+        return crc != null ? crc.longValue() : null;
+    }
+
+    /**
+     * HTTP content coding the file is stored with, or null if it is stored uncompressed
+     */
+    public String getContentEncoding(BlobInfo file) {
+        Document compression = compressionOf(file);
+        return compression != null ? compression.getString("codec") : null;
+    }
+
+    /**
+     * Length of the file in its stored content coding (after decryption)
+     */
+    public long getEncodedLength(BlobInfo file) {
+        Document encryption = encryptionOf(file);
+        return encryption != null ? ((Number) encryption.get("plainLength")).longValue() : file.getLength();
+    }
+
+    /**
+     * Local file that can be handed to the servlet container's sendfile support,
+     * or null if the bytes on disk are not the bytes the client should get
+     */
+    public Path getSendfilePath(BlobInfo file) {
+        if (encryptionOf(file) != null || compressionOf(file) != null) {
+            return null;
+        }
+        return file.getStore().getLocalPath(file.getFileId());
     }
 
     /**
-     * Deletes a file from MongoDB GridFS by its ObjectId string
+     * Opens the file content starting at an offset into the original bytes.
+     * Backends seek straight to the offset; for encrypted files only the
+     * segments from the one holding the offset onward are read and decrypted.
+     * Compressed files are inflated from the block holding the offset, or
+     * from the start for files stored before blocks were recorded.
+     */
+    public InputStream openStream(BlobInfo file, long offset) throws IOException {
+        Document compression = compressionOf(file);
+        if (compression == null) {
+            return openEncoded(file, offset);
+        }
+        List<Number> blocks = compression.getList("blocks", Number.class);
+        InputStream in;
+        long skip = offset;
+        if (offset > 0 && blocks != null && !blocks.isEmpty()) {
+            int blockSize = compression.getInteger("blockSize");
+            int block = (int) Math.min(offset / blockSize, blocks.size() - 1);
+            skip = offset - (long) block * blockSize;
+            in = BlobCompression.inflateFrom(openEncoded(file, blocks.get(block).longValue()), STREAM_BUFFER_SIZE);
+        } else {
+            in = new GZIPInputStream(openEncoded(file, 0), STREAM_BUFFER_SIZE);
+        }
+        try {
+            in.skipNBytes(skip);
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+        return in;
+    }
+
+    /**
+     * Copies the file to the output in its stored content coding, so a client
+     * that accepts {@link #getContentEncoding} can inflate it itself
+     */
+    public void copyEncoded(BlobInfo file, OutputStream out) throws IOException {
+        try (InputStream in = openEncoded(file, 0)) {
+            copy(in, Long.MAX_VALUE, out);
+        }
+    }
+
+    /**
+     * Opens the stored content coding of a file at an offset, decrypting if needed
+     */
+    private InputStream openEncoded(BlobInfo file, long offset) throws IOException {
+        Document encryption = encryptionOf(file);
+        if (encryption == null) {
+            return openStored(file, offset);
+        }
+        int fileSegmentSize = encryption.getInteger("segmentSize");
+        long firstSegment = offset / fileSegmentSize;
+        InputStream in = openStored(file, firstSegment * (fileSegmentSize + SegmentedAesGcm.OVERHEAD));
+        return SegmentedAesGcm.decryptingStream(in, dataKeyService.getDataKey(encryption.getString("keyOwner")),
+                file.getFileId(), fileSegmentSize, ((Number) encryption.get("plainLength")).longValue(),
+                firstSegment, (int) (offset % fileSegmentSize));
+    }
+
+    /**
+     * Opens the stored (possibly encrypted) bytes at a stored offset.
+     * Small and medium files are served from the hot-file cache, loading the
+     * whole file into it on a miss. Encrypted files are cached as ciphertext.
+     */
+    private InputStream openStored(BlobInfo file, long offset) throws IOException {
+        if (!blobCache.isCacheable(file.getLength())) {
+            return openInStore(file, offset);
+        }
+        InputStream cached = blobCache.open(file.getFileId(), offset);
+        if (cached != null) {
+            return cached;
+        }
+        byte[] bytes;
+        try (InputStream in = openInStore(file, 0)) {
+            bytes = in.readAllBytes();
+        }
+        blobCache.put(file.getFileId(), bytes);
+        InputStream in = new ByteArrayInputStream(bytes);
+        in.skip(offset);
+        return in;
+    }
+
+    /**
+     * Opens the bytes in the store the descriptor names. A descriptor cached
+     * on this node goes stale when another node moves the file, so if the
+     * open fails the file is looked up again and opened where it is now.
+     */
+    private InputStream openInStore(BlobInfo file, long offset) throws IOException {
+        try {
+            return file.getStore().open(file, offset);
+        } catch (IOException | RuntimeException e) {
+            BlobInfo current = relocate(file);
+            if (current == null) {
+                throw e;
+            }
+            return current.getStore().open(current, offset);
+        }
+    }
+
+    /**
+     * Drops the cached descriptor and looks the file up in the stores again
+     * @return The fresh descriptor, or null if no store holds the file
+     */
+    private BlobInfo relocate(BlobInfo file) {
+        blobCache.invalidate(file.getFileId());
+        BlobInfo current = findInStores(file.getFileId());
+        if (current != null) {
+            log.debug("File {} moved from {} to {}", file.getFileId(), file.getStore().getName(), current.getStore().getName());
+            blobCache.putMetadata(current);
+        }
+        return current;
+    }
+
+    /**
+     * Streams an inclusive byte range of a stored file to the given output.
+     * Plain files on local disk go through FileChannel.transferTo; everything
+     * else is copied through a fixed per-thread buffer.
+     * @param file The file's descriptor
+     * @param start First byte to send (inclusive)
+     * @param end Last byte to send (inclusive)
+     * @param out Destination stream; it is not closed
+     */
+    public void copyRange(BlobInfo file, long start, long end, OutputStream out) throws IOException {
+        Path localPath = getSendfilePath(file);
+        if (localPath != null && !Files.exists(localPath)) {
+            // Moved off this disk since the descriptor was cached
+            BlobInfo current = relocate(file);
+            file = current != null ? current : file;
+            localPath = getSendfilePath(file);
+        }
+        if (localPath != null) {
+            WritableByteChannel target = Channels.newChannel(out);
+            try (FileChannel channel = FileChannel.open(localPath, StandardOpenOption.READ)) {
+                long position = start;
+                while (position <= end) {
+                    long sent = channel.transferTo(position, end - position + 1, target);
+                    if (sent <= 0) {
+                        break;
+                    }
+                    position += sent;
+                }
+            }
+            return;
+        }
+        try (InputStream in = openStream(file, start)) {
+            copy(in, end - start + 1, out);
+        }
+    }
+
+    private void copy(InputStream in, long limit, OutputStream out) throws IOException {
+        byte[] buffer = STREAM_BUFFER.get();
+        long remaining = limit;
+        while (remaining > 0) {
+            int read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+            if (read == -1) {
+                break;
+            }
+            out.write(buffer, 0, read);
+            remaining -= read;
+        }
+    }
+
+    /**
+     * Writes one chunk of a file that is being uploaded in pieces.
+     * Re-sending the same chunk index overwrites it, so client retries are safe.
+     * The file stays invisible to readers until {@link #finalizeChunkedFile} runs.
+     * @param fileId The ObjectId string reserved for the file
+     * @param ownerId The user whose vault the file belongs to
+     * @param index Zero-based chunk number
+     * @param data Chunk bytes; every chunk except the last must be exactly chunkSize long
+     * @param chunkSize Plaintext bytes per chunk
+     * @param totalSize Plaintext length of the whole file
+     */
+    public void writeChunk(String fileId, String ownerId, int index, byte[] data, int chunkSize, long totalSize) throws IOException {
+        byte[] stored = data;
+        if (dataKeyService.isEncryptionEnabled()) {
+            requireSegmentAligned(chunkSize);
+            stored = SegmentedAesGcm.encryptSegments(dataKeyService.getDataKey(ownerId), fileId, segmentSize,
+                    totalSize, (long) index * (chunkSize / segmentSize), data);
+        }
+        primaryStore.writeChunk(fileId, ownerId, index, storedChunkSize(chunkSize), stored);
+    }
+
+    /**
+     * Publishes a chunked upload. Must only be called once every chunk has been written.
+     */
+    public void finalizeChunkedFile(String fileId, String ownerId, String fileName, String contentType,
+                                    long length, int chunkSize) throws IOException {
+        Document metadata = new Document("owner", ownerId);
+        if (contentType != null) {
+            metadata.append("_contentType", contentType);
+        }
+        long storedLength = length;
+        if (dataKeyService.isEncryptionEnabled()) {
+            requireSegmentAligned(chunkSize);
+            metadata.append("encryption", encryptionMetadata(ownerId, length));
+            storedLength = SegmentedAesGcm.encryptedLength(length, segmentSize);
+            if (length == 0) {
+                // An empty encrypted file still carries one authenticated segment
+                writeChunk(fileId, ownerId, 0, new byte[0], chunkSize, 0);
+            }
+        }
+        primaryStore.finalizeChunked(fileId, fileName, storedLength, storedChunkSize(chunkSize), metadata);
+    }
+
+    /**
+     * Removes the chunks of an upload that was never finalized
+     */
+    public void discardChunks(String fileId) throws IOException {
+        primaryStore.discardChunks(fileId);
+    }
+
+    /**
+     * Drops one reference to a file and deletes it from storage once
+     * nothing points at it anymore
      * @param fileId The ObjectId string of the file to delete
      */
     public void deleteFile(String fileId) {
         try {
-            gridFsTemplate.delete(query(where("_id").is(new ObjectId(fileId))));
+            StoredBlob blob = mongoTemplate.findAndModify(
+                    query(where("fileId").is(fileId)),
+                    new Update().inc("refCount", -1),
+                    FindAndModifyOptions.options().returnNew(true),
+                    StoredBlob.class);
+            if (blob != null && blob.getRefCount() > 0) {
+                return;
+            }
+            if (blob != null) {
+                mongoTemplate.remove(query(where("_id").is(blob.getId()).and("refCount").lte(0)), StoredBlob.class);
+            }
+            // Files stored before deduplication have no StoredBlob and are deleted directly
+            for (BlobStore store : stores) {
+                store.delete(fileId);
+            }
+            blobCache.invalidate(fileId);
+        } catch (Exception e) {
+            // Log but don't throw — asset metadata deletion should still proceed;
+            // BlobGarbageCollector reclaims whatever is left behind
+            log.warn("Could not delete stored file {}: {}", fileId, e.getMessage());
+        }
+    }
+
+    /**
+     * Drops one reference per occurrence of each id with a single bulk update,
+     * then deletes the files nothing points at anymore
+     * @param fileIds Ids to release; an id listed twice loses two references
+     */
+    public void deleteFiles(Collection<String> fileIds) {
+        Map<String, Long> references = fileIds.stream()
+                .filter(Objects::nonNull)
+                .collect(Collectors.groupingBy(Function.identity(), Collectors.counting()));
+        if (references.isEmpty()) {
+            return;
+        }
+        try {
+            Query tracked = query(where("fileId").in(references.keySet()));
+            tracked.fields().include("fileId");
+            Set<String> trackedIds = mongoTemplate.find(tracked, StoredBlob.class).stream()
+                    .map(StoredBlob::getFileId)
+                    .collect(Collectors.toSet());
+
+            Set<String> unreferenced = new HashSet<>(references.keySet());
+            if (!trackedIds.isEmpty()) {
+                BulkOperations decrements = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, StoredBlob.class);
+                trackedIds.forEach(fileId -> decrements.updateOne(query(where("fileId").is(fileId)),
+                        new Update().inc("refCount", -references.get(fileId))));
+                decrements.execute();
+
+                Query stillReferenced = query(where("fileId").in(trackedIds).and("refCount").gt(0));
+                stillReferenced.fields().include("fileId");
+                mongoTemplate.find(stillReferenced, StoredBlob.class).forEach(blob -> unreferenced.remove(blob.getFileId()));
+                mongoTemplate.remove(query(where("fileId").in(trackedIds).and("refCount").lte(0)), StoredBlob.class);
+            }
+            // Files stored before deduplication have no StoredBlob and are deleted directly
+            for (String fileId : unreferenced) {
+                for (BlobStore store : stores) {
+                    store.delete(fileId);
+                }
+                blobCache.invalidate(fileId);
+            }
         } catch (Exception e) {
-            // Log but don't throw — asset metadata deletion should still proceed
-            System.err.println("Warning: Could not delete GridFS file " + fileId + ": " + e.getMessage());
+            // BlobGarbageCollector reclaims whatever is left behind
+            log.warn("Could not delete {} stored files: {}", references.size(), e.getMessage());
+        }
+    }
+
+    /**
+     * Deletes a file that nothing references, unless an upload has taken a
+     * reference to its content since {@code cutoff}. Dropping the StoredBlob
+     * first means no new upload can deduplicate onto the file while it goes.
+     * @return true if the file was deleted
+     */
+    public boolean deleteOrphan(BlobInfo file, LocalDateTime cutoff) {
+        String fileId = file.getFileId();
+        StoredBlob removed = mongoTemplate.findAndRemove(
+                query(where("fileId").is(fileId).orOperator(
+                        where("lastAcquiredAt").lt(cutoff),
+                        where("lastAcquiredAt").exists(false).and("createdAt").lt(cutoff))),
+                StoredBlob.class);
+        if (removed == null && mongoTemplate.exists(query(where("fileId").is(fileId)), StoredBlob.class)) {
+            return false;
+        }
+        file.getStore().delete(fileId);
+        blobCache.invalidate(fileId);
+        return true;
+    }
+
+    /**
+     * All configured stores, primary first
+     */
+    public List<BlobStore> getStores() {
+        return Collections.unmodifiableList(stores);
+    }
+
+    private BlobInfo findInStores(String fileId) {
+        for (BlobStore store : stores) {
+            BlobInfo file = store.find(fileId);
+            if (file != null) {
+                return file;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * One rehydration per file at a time; the lease expires if its holder dies
+     */
+    private boolean claimRehydration(String fileId) {
+        LocalDateTime now = LocalDateTime.now();
+        try {
+            return mongoTemplate.findAndModify(
+                    query(where("_id").is(fileId).orOperator(
+                            where("leaseUntil").is(null),
+                            where("leaseUntil").lt(now))),
+                    new Update().set("leaseUntil", now.plusMinutes(REHYDRATION_LEASE_MINUTES)),
+                    FindAndModifyOptions.options().returnNew(true).upsert(true),
+                    Document.class, REHYDRATIONS) != null;
+        } catch (DuplicateKeyException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Deduplication key. Encrypted content is only shared within one owner's
+     * vault, because each owner's copy is encrypted under a different data key.
+     */
+    private String blobKey(String sha256, String ownerId) {
+        return dataKeyService.isEncryptionEnabled() ? ownerId + ":" + sha256 : sha256;
+    }
+
+    private Document encryptionMetadata(String ownerId, long plainLength) {
+        return new Document("keyOwner", ownerId)
+                .append("segmentSize", segmentSize)
+                .append("plainLength", plainLength);
+    }
+
+    private Document encryptionOf(BlobInfo file) {
+        return file.getMetadata().get("encryption", Document.class);
+    }
+
+    private Document compressionOf(BlobInfo file) {
+        return file.getMetadata().get("compression", Document.class);
+    }
+
+    private record Compressed(Path path, List<Long> blocks) {}
+
+    /**
+     * Gzips the upload into a file next to it if its type and leading bytes
+     * suggest it compresses well, and keeps the result only if it saves at least 10%.
+     * @return The compressed file, which the caller must delete, and its
+     *         block offsets; or null
+     */
+    private Compressed compressIfWorthwhile(Path upload, long size, String contentType) throws IOException {
+        if (!compressionEnabled || size < compressionMinSize) {
+            return null;
+        }
+        byte[] head;
+        try (InputStream in = Files.newInputStream(upload)) {
+            head = in.readNBytes(BlobCompression.MAGIC_LENGTH);
+        }
+        if (!BlobCompression.isCompressible(contentType, head)) {
+            return null;
+        }
+        Path compressed = upload.resolveSibling(upload.getFileName() + ".gz");
+        try {
+            List<Long> blocks;
+            try (InputStream in = Files.newInputStream(upload);
+                 OutputStream out = new BufferedOutputStream(Files.newOutputStream(compressed), STREAM_BUFFER_SIZE)) {
+                blocks = BlobCompression.compress(in, out, compressionBlockSize);
+            }
+            if (Files.size(compressed) <= size - size / 10) {
+                return new Compressed(compressed, blocks);
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(compressed);
+            throw e;
+        }
+        Files.deleteIfExists(compressed);
+        return null;
+    }
+
+    private int storedChunkSize(int chunkSize) {
+        if (!dataKeyService.isEncryptionEnabled()) {
+            return chunkSize;
+        }
+        return chunkSize / segmentSize * (segmentSize + SegmentedAesGcm.OVERHEAD);
+    }
+
+    private void requireSegmentAligned(int chunkSize) {
+        if (chunkSize % segmentSize != 0) {
+            throw new IllegalStateException("Upload chunk size must be a multiple of the encryption segment size");
+        }
+    }
+
+    /**
+     * Adds a reference to already stored content.
+     * Blobs whose count has reached zero are being deleted and cannot be revived.
+     * @return The existing fileId, or null if the content is not stored
+     */
+    private String acquireBlob(String blobKey) {
+        StoredBlob blob = mongoTemplate.findAndModify(
+                query(where("_id").is(blobKey).and("refCount").gt(0)),
+                new Update().inc("refCount", 1).set("lastAcquiredAt", LocalDateTime.now()),
+                StoredBlob.class);
+        return blob != null ? blob.getFileId() : null;
+    }
+
+    /**
+     * Records a newly written file as the canonical copy of its content.
+     * If another upload of the same content won the race, our copy is dropped.
+     */
+    private String registerBlob(String blobKey, String fileId, long length) {
+        try {
+            mongoTemplate.insert(new StoredBlob(blobKey, fileId, length, 1, LocalDateTime.now()));
+            return fileId;
+        } catch (DuplicateKeyException e) {
+            String existingFileId = acquireBlob(blobKey);
+            if (existingFileId == null) {
+                // The other copy is mid-deletion; keep ours unshared
+                return fileId;
+            }
+            primaryStore.delete(fileId);
+            blobCache.invalidate(fileId);
+            return existingFileId;
+        }
+    }
+
+    private String sha256(InputStream in) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        byte[] buffer = STREAM_BUFFER.get();
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            digest.update(buffer, 0, read);
         }
+        return HexFormat.of().formatHex(digest.digest());
     }
 }
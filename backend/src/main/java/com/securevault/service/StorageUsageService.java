@@ -0,0 +1,418 @@
+package com.securevault.service;
+
+import com.securevault.model.Asset;
+import com.securevault.model.AssetVersion;
+import com.securevault.model.StorageUsage;
+import com.securevault.model.User;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.AggregationExpression;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+/**
+ * Per-user storage counters and quotas. Bytes cover asset files, their
+ * previews and what superseded versions store. Creating and deleting
+ * assets adjusts the counters with one $inc, so a quota check is a single
+ * read. A scheduled reconciliation recounts each user's assets and
+ * overwrites counters that have drifted, e.g. after a crash between the
+ * asset write and the $inc.
+ * Chunked upload sessions reserve their declared size with one conditional
+ * $inc before the first chunk is accepted, so they never overshoot a quota.
+ * Multipart uploads are checked once their body has been received, before
+ * it is stored; several running at once can overshoot by their own size.
+ */
+@Service
+public class StorageUsageService {
+
+    private static final Logger log = LoggerFactory.getLogger(StorageUsageService.class);
+
+    private static final String STATE = "storage_usage_state";
+    private static final int USER_BATCH_SIZE = 200;
+
+    private final MongoTemplate mongoTemplate;
+
+    // 0 means no limit
+    @Value("${app.storage.quota.max-bytes:0}")
+    private long maxBytes;
+
+    @Value("${app.storage.quota.max-files:0}")
+    private long maxFiles;
+
+    @Value("${app.storage.usage.reconcile.enabled:true}")
+    private boolean reconcileEnabled;
+
+    @Value("${app.storage.usage.reconcile.lease-minutes:60}")
+    private long leaseMinutes;
+
+    public StorageUsageService(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    public StorageUsage getUsage(String userId) {
+        StorageUsage usage = mongoTemplate.findById(userId, StorageUsage.class);
+        return usage != null ? usage : new StorageUsage(userId);
+    }
+
+    public Map<String, StorageUsage> getUsages(Collection<String> userIds) {
+        Map<String, StorageUsage> byId = new HashMap<>();
+        mongoTemplate.find(query(where("_id").in(userIds)), StorageUsage.class)
+                .forEach(usage -> byId.put(usage.getId(), usage));
+        return byId;
+    }
+
+    /**
+     * The user's usage with the configured limits, for display
+     */
+    public Map<String, Object> getQuota(String userId) {
+        StorageUsage usage = getUsage(userId);
+        Map<String, Object> quota = new HashMap<>();
+        quota.put("bytes", usage.getBytes());
+        quota.put("files", usage.getFiles());
+        quota.put("filesByType", usage.getFilesByType());
+        quota.put("maxBytes", maxBytes > 0 ? maxBytes : null);
+        quota.put("maxFiles", maxFiles > 0 ? maxFiles : null);
+        return quota;
+    }
+
+    /**
+     * Rejects an upload that would take the user past a quota. Multipart
+     * uploads call this after their body has been received, before it is
+     * stored. It is a plain read, not a reservation; see {@link #reserve}.
+     */
+    public void checkQuota(String userId, long incomingBytes) {
+        if (maxBytes <= 0 && maxFiles <= 0) {
+            return;
+        }
+        rejectOverQuota(getUsage(userId), incomingBytes);
+    }
+
+    /**
+     * Atomically reserves room for an upload of {@code bytes}, or rejects it
+     * if that would take the user past a quota counting the reservations
+     * already held. Release it with {@link #release} once the asset has been
+     * recorded or the upload is abandoned.
+     * @return Whether a reservation was taken; false when no quota is configured
+     */
+    public boolean reserve(String userId, long bytes) {
+        if (maxBytes <= 0 && maxFiles <= 0) {
+            return false;
+        }
+        try {
+            // The conditional update below needs the counter document to exist
+            mongoTemplate.upsert(query(where("_id").is(userId)),
+                    new Update().setOnInsert("bytes", 0L).setOnInsert("files", 0L), StorageUsage.class);
+        } catch (DuplicateKeyException e) {
+            // Created concurrently
+        }
+        List<Document> limits = new ArrayList<>();
+        if (maxBytes > 0) {
+            limits.add(withinLimit("bytes", "reservedBytes", bytes, maxBytes));
+        }
+        if (maxFiles > 0) {
+            limits.add(withinLimit("files", "reservedFiles", 1, maxFiles));
+        }
+        AggregationExpression withinQuota = context -> new Document("$and", limits);
+        long matched = mongoTemplate.updateFirst(
+                query(where("_id").is(userId).andOperator(Criteria.expr(withinQuota))),
+                new Update().inc("reservedBytes", bytes)
+                        .inc("reservedFiles", 1L)
+                        .inc("version", 1L)
+                        .set("updatedAt", LocalDateTime.now()),
+                StorageUsage.class).getMatchedCount();
+        if (matched == 0) {
+            rejectOverQuota(getUsage(userId), bytes);
+            // Room was freed between the update and the read
+            throw new RuntimeException("Storage quota exceeded, try again");
+        }
+        return true;
+    }
+
+    /**
+     * Gives back a reservation taken by {@link #reserve}
+     */
+    public void release(String userId, long bytes) {
+        mongoTemplate.updateFirst(query(where("_id").is(userId)), new Update()
+                .inc("reservedBytes", -bytes)
+                .inc("reservedFiles", -1L)
+                .inc("version", 1L)
+                .set("updatedAt", LocalDateTime.now()), StorageUsage.class);
+    }
+
+    private Document withinLimit(String used, String reserved, long incoming, long limit) {
+        return new Document("$lte", List.of(new Document("$add", List.of(
+                "$" + used, new Document("$ifNull", List.of("$" + reserved, 0L)), incoming)), limit));
+    }
+
+    private void rejectOverQuota(StorageUsage usage, long incomingBytes) {
+        long usedBytes = usage.getBytes() + usage.getReservedBytes();
+        long usedFiles = usage.getFiles() + usage.getReservedFiles();
+        if (maxBytes > 0 && usedBytes + incomingBytes > maxBytes) {
+            throw new RuntimeException("Storage quota exceeded: " + usedBytes + " of " + maxBytes
+                    + " bytes used, upload needs " + incomingBytes);
+        }
+        if (maxFiles > 0 && usedFiles + 1 > maxFiles) {
+            throw new RuntimeException("File quota exceeded: " + usedFiles + " of " + maxFiles + " files stored");
+        }
+    }
+
+    public void recordCreated(Asset asset) {
+        mongoTemplate.upsert(query(where("_id").is(asset.getUserId())), delta(asset, 1), StorageUsage.class);
+    }
+
+    public void recordDeleted(Asset asset) {
+        recordDeleted(List.of(asset));
+    }
+
+    /**
+     * Takes deleted assets off their owners' counters with one bulk write
+     */
+    public void recordDeleted(Collection<Asset> assets) {
+        if (assets.isEmpty()) {
+            return;
+        }
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, StorageUsage.class);
+        for (Asset asset : assets) {
+            bulk.upsert(query(where("_id").is(asset.getUserId())), delta(asset, -1));
+        }
+        bulk.execute();
+    }
+
+    /**
+     * Adds a preview that was linked to {@code assets} of the user's assets
+     */
+    public void recordPreview(String userId, long previewBytes, long assets) {
+        mongoTemplate.upsert(query(where("_id").is(userId)), new Update()
+                .inc("bytes", previewBytes * assets)
+                .inc("version", 1L)
+                .set("updatedAt", LocalDateTime.now()), StorageUsage.class);
+    }
+
+    /**
+     * Adds what a superseded version newly stored. Versions are not files of
+     * their own, so only the bytes count.
+     */
+    public void recordCreated(AssetVersion version) {
+        if (version.getStoredBytes() == null || version.getStoredBytes() == 0) {
+            return;
+        }
+        mongoTemplate.upsert(query(where("_id").is(version.getUserId())),
+                versionDelta(version.getStoredBytes()), StorageUsage.class);
+    }
+
+    /**
+     * Takes released versions off their owners' counters with one bulk write
+     */
+    public void recordVersionsDeleted(Collection<AssetVersion> versions) {
+        Map<String, Long> bytesByUser = new HashMap<>();
+        for (AssetVersion version : versions) {
+            if (version.getStoredBytes() != null && version.getStoredBytes() != 0) {
+                bytesByUser.merge(version.getUserId(), version.getStoredBytes(), Long::sum);
+            }
+        }
+        if (bytesByUser.isEmpty()) {
+            return;
+        }
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, StorageUsage.class);
+        bytesByUser.forEach((userId, bytes) -> bulk.upsert(query(where("_id").is(userId)), versionDelta(-bytes)));
+        bulk.execute();
+    }
+
+    private Update versionDelta(long bytes) {
+        return new Update()
+                .inc("bytes", bytes)
+                .inc("version", 1L)
+                .set("updatedAt", LocalDateTime.now());
+    }
+
+    private Update delta(Asset asset, int sign) {
+        // Previews count against the owner like the files themselves
+        long bytes = (asset.getFileSize() != null ? asset.getFileSize() : 0)
+                + (asset.getPreviewSize() != null ? asset.getPreviewSize() : 0);
+        return new Update()
+                .inc("bytes", sign * bytes)
+                .inc("files", (long) sign)
+                .inc("filesByType." + typeKey(asset.getFileType()), (long) sign)
+                .inc("version", 1L)
+                .set("updatedAt", LocalDateTime.now());
+    }
+
+    /**
+     * Top-level content type, which is always a valid field name; full types
+     * such as application/vnd.ms-excel contain dots
+     */
+    private String typeKey(String fileType) {
+        if (fileType == null) {
+            return "other";
+        }
+        String major = fileType.split("/", 2)[0].trim().toLowerCase(Locale.ROOT);
+        return major.matches("[a-z0-9+-]+") ? major : "other";
+    }
+
+    @Scheduled(fixedDelayString = "${app.storage.usage.reconcile.interval-ms:86400000}",
+               initialDelayString = "${app.storage.usage.reconcile.initial-delay-ms:900000}")
+    public void scheduledReconcile() {
+        if (reconcileEnabled) {
+            reconcile();
+        }
+    }
+
+    /**
+     * Recounts every user's assets and corrects counters that differ
+     * @return Counts of checked and corrected users, or a note if another instance is running
+     */
+    public Map<String, Object> reconcile() {
+        Map<String, Object> result = new HashMap<>();
+        if (!acquireLease()) {
+            result.put("skipped", "Another instance is reconciling");
+            return result;
+        }
+        int checked = 0;
+        int corrected = 0;
+        try {
+            String after = null;
+            List<User> users;
+            do {
+                Query batch = query(after != null ? where("_id").gt(after) : new Criteria())
+                        .with(Sort.by("_id")).limit(USER_BATCH_SIZE);
+                batch.fields().include("_id");
+                users = mongoTemplate.find(batch, User.class);
+                for (User user : users) {
+                    checked++;
+                    if (reconcileUser(user.getId())) {
+                        corrected++;
+                    }
+                    after = user.getId();
+                }
+            } while (users.size() == USER_BATCH_SIZE);
+        } finally {
+            mongoTemplate.updateFirst(query(where("_id").is("lease")), new Update().set("leaseUntil", null), STATE);
+        }
+        if (corrected > 0) {
+            log.warn("Corrected drifted storage usage of {} of {} users", corrected, checked);
+        }
+        result.put("checkedUsers", checked);
+        result.put("correctedUsers", corrected);
+        return result;
+    }
+
+    /**
+     * Recounts one user's assets and version history, and the reservations of their upload
+     * sessions that are still open, which frees any a crash left behind.
+     * The counters are only overwritten if no upload or delete changed them
+     * during the count; otherwise the next run picks the user up again.
+     * @return Whether the counters were corrected
+     */
+    private boolean reconcileUser(String userId) {
+        StorageUsage before = mongoTemplate.findById(userId, StorageUsage.class);
+        Long version = before != null ? before.getVersion() : null;
+
+        long bytes = 0;
+        long files = 0;
+        Map<String, Long> filesByType = new HashMap<>();
+        List<Document> pipeline = List.of(
+                new Document("$match", new Document("userId", userId)),
+                new Document("$group", new Document("_id", "$fileType")
+                        .append("bytes", new Document("$sum", new Document("$add", List.of(
+                                new Document("$ifNull", List.of("$fileSize", 0L)),
+                                new Document("$ifNull", List.of("$previewSize", 0L))))))
+                        .append("files", new Document("$sum", 1))));
+        for (Document group : mongoTemplate.getCollection("assets").aggregate(pipeline)) {
+            long groupFiles = ((Number) group.get("files")).longValue();
+            bytes += ((Number) group.get("bytes")).longValue();
+            files += groupFiles;
+            filesByType.merge(typeKey(group.getString("_id")), groupFiles, Long::sum);
+        }
+
+        List<Document> versions = List.of(
+                new Document("$match", new Document("userId", userId).append("storedBytes", new Document("$exists", true))),
+                new Document("$group", new Document("_id", null).append("bytes", new Document("$sum", "$storedBytes"))));
+        for (Document group : mongoTemplate.getCollection("asset_versions").aggregate(versions)) {
+            bytes += ((Number) group.get("bytes")).longValue();
+        }
+
+        long reservedBytes = 0;
+        long reservedFiles = 0;
+        List<Document> held = List.of(
+                new Document("$match", new Document("userId", userId)
+                        .append("status", new Document("$in", List.of("OPEN", "COMMITTING")))
+                        .append("quotaReserved", true)),
+                new Document("$group", new Document("_id", null)
+                        .append("bytes", new Document("$sum", "$totalSize"))
+                        .append("files", new Document("$sum", 1))));
+        for (Document group : mongoTemplate.getCollection("upload_sessions").aggregate(held)) {
+            reservedBytes = ((Number) group.get("bytes")).longValue();
+            reservedFiles = ((Number) group.get("files")).longValue();
+        }
+
+        if (before != null && before.getBytes() == bytes && before.getFiles() == files
+                && before.getReservedBytes() == reservedBytes && before.getReservedFiles() == reservedFiles
+                && withoutZeros(before.getFilesByType()).equals(filesByType)) {
+            mongoTemplate.updateFirst(query(where("_id").is(userId)),
+                    new Update().set("reconciledAt", LocalDateTime.now()), StorageUsage.class);
+            return false;
+        }
+        if (before == null && files == 0 && reservedFiles == 0) {
+            return false;
+        }
+        try {
+            mongoTemplate.upsert(query(where("_id").is(userId).and("version").is(version)),
+                    new Update().set("bytes", bytes)
+                            .set("files", files)
+                            .set("filesByType", filesByType)
+                            .set("reservedBytes", reservedBytes)
+                            .set("reservedFiles", reservedFiles)
+                            .inc("version", 1L)
+                            .set("reconciledAt", LocalDateTime.now()),
+                    StorageUsage.class);
+        } catch (DuplicateKeyException e) {
+            // Changed since it was read: the upsert found no match and tried to insert
+            return false;
+        }
+        log.info("Storage usage of user {} corrected to {} bytes in {} files", userId, bytes, files);
+        return true;
+    }
+
+    private Map<String, Long> withoutZeros(Map<String, Long> counts) {
+        Map<String, Long> nonZero = new HashMap<>(counts);
+        nonZero.values().removeIf(count -> Objects.equals(count, 0L));
+        return nonZero;
+    }
+
+    private boolean acquireLease() {
+        LocalDateTime now = LocalDateTime.now();
+        try {
+            return mongoTemplate.findAndModify(
+                    query(where("_id").is("lease").orOperator(
+                            where("leaseUntil").is(null),
+                            where("leaseUntil").lt(now))),
+                    new Update().set("leaseUntil", now.plusMinutes(leaseMinutes)),
+                    FindAndModifyOptions.options().returnNew(true).upsert(true),
+                    Document.class, STATE) != null;
+        } catch (DuplicateKeyException e) {
+            return false;
+        }
+    }
+}
@@ -23,17 +23,23 @@ public class VerificationService {
     private final UserRepository userRepository;
     private final StorageService storageService;
     private final ActivityLogService activityLogService;
+    private final ReferenceResolver referenceResolver;
+    private final AssetReleaseService assetReleaseService;
 
     public VerificationService(VerificationRepository verificationRepository, 
                                NomineeRepository nomineeRepository, 
                                UserRepository userRepository,
                                StorageService storageService,
-                               ActivityLogService activityLogService) {
+                               ActivityLogService activityLogService,
+                               ReferenceResolver referenceResolver,
+                               AssetReleaseService assetReleaseService) {
         this.verificationRepository = verificationRepository;
         this.nomineeRepository = nomineeRepository;
         this.userRepository = userRepository;
         this.storageService = storageService;
         this.activityLogService = activityLogService;
+        this.referenceResolver = referenceResolver;
+        this.assetReleaseService = assetReleaseService;
     }
 
     public boolean confirmIdentity(String nomineeId, String enteredName) {
@@ -58,7 +64,7 @@ public class VerificationService {
             throw new RuntimeException("Identity must be confirmed before uploading documents");
         }
 
-        String fileId = storageService.saveFile(deathCertificate);
+        String fileId = storageService.saveFile(deathCertificate, nominee.getUserId());
 
         VerificationRequest request = new VerificationRequest();
         request.setNomineeId(nomineeId);
@@ -80,12 +86,15 @@ public class VerificationService {
         request.setAdminNotes(notes);
         request.setRejectionReason(rejectionReason);
         request.setReviewedAt(LocalDateTime.now());
+        // Recorded in the same write as the approval; the job is created from it
+        request.setReleasePending("APPROVED".equals(status) ? true : null);
+
+        VerificationRequest saved = verificationRepository.save(request);
 
         if ("APPROVED".equals(status)) {
-            // Logic for approved request
+            // Releasing the assets runs in the background; this only records the job
+            assetReleaseService.enqueue(saved);
         }
-
-        VerificationRequest saved = verificationRepository.save(request);
         
         activityLogService.log("SYSTEM_ADMIN", "Admin", "VERIFICATION_REVIEW", 
                 "Reviewed request: " + status + (notes != null ? " - " + notes : ""), 
@@ -144,9 +153,14 @@ public class VerificationService {
     }
 
     public List<VerificationRequestResponseDTO> getAllRequestsDetailed() {
-        return verificationRepository.findAll().stream().map(request -> {
-            Nominee nominee = nomineeRepository.findById(request.getNomineeId()).orElse(null);
-            User user = userRepository.findById(request.getDeceasedUserId()).orElse(null);
+        List<VerificationRequest> requests = verificationRepository.findAll();
+        Map<String, Nominee> nominees = referenceResolver.nominees(
+                requests.stream().map(VerificationRequest::getNomineeId).toList());
+        Map<String, User> users = referenceResolver.users(
+                requests.stream().map(VerificationRequest::getDeceasedUserId).toList());
+        return requests.stream().map(request -> {
+            Nominee nominee = nominees.get(request.getNomineeId());
+            User user = users.get(request.getDeceasedUserId());
             
             VerificationRequestResponseDTO responseDTO = new VerificationRequestResponseDTO();
             responseDTO.setId(request.getId());
@@ -0,0 +1,258 @@
+package com.securevault.service.impl;
+
+import com.securevault.service.BlobInfo;
+import com.securevault.service.ChunkedBlobStore;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * BlobStore on a local or NFS-mounted directory.
+ * Each file is {@code <id>.blob} plus a {@code <id>.json} sidecar with its
+ * name and metadata. The sidecar is written last and acts as the commit
+ * marker, so readers never see a half-written file. Uploads are staged in
+ * the store's own temp directory and renamed into place; streamed bytes
+ * move with FileChannel transfers. Files can be served with sendfile via
+ * getLocalPath.
+ */
+@Service
+public class FileSystemBlobStore implements ChunkedBlobStore {
+
+    // Max bytes per FileChannel.transferFrom call when copying from a stream
+    private static final long TRANSFER_SLICE = 8L * 1024 * 1024;
+
+    private final Path root;
+
+    public FileSystemBlobStore(@Value("${app.storage.filesystem.root:./data/blobs}") String root) {
+        this.root = Paths.get(root).toAbsolutePath().normalize();
+    }
+
+    @Override
+    public String getName() {
+        return "filesystem";
+    }
+
+    @Override
+    public void store(String fileId, String fileName, InputStream content, Document metadata) throws IOException {
+        Path tmp = tempPath(fileId, ".blob");
+        long length = 0;
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+             ReadableByteChannel in = Channels.newChannel(content)) {
+            long transferred;
+            while ((transferred = out.transferFrom(in, length, TRANSFER_SLICE)) > 0) {
+                length += transferred;
+            }
+            out.force(false);
+        }
+        publish(fileId, tmp, fileName, length, metadata);
+    }
+
+    /**
+     * Moves the file into place. Files staged at {@link #stagingPath} are
+     * already on this filesystem, so that is a rename and no bytes are copied.
+     */
+    @Override
+    public void store(String fileId, String fileName, Path file, Document metadata) throws IOException {
+        Path tmp = tempPath(fileId, ".blob");
+        Files.move(file, tmp, StandardCopyOption.REPLACE_EXISTING);
+        publish(fileId, tmp, fileName, Files.size(tmp), metadata);
+    }
+
+    @Override
+    public Path stagingPath(String fileId) throws IOException {
+        return tempPath(fileId, ".upload");
+    }
+
+    @Override
+    public BlobInfo find(String fileId) {
+        Path sidecar = sidecarPath(fileId);
+        if (!Files.exists(sidecar)) {
+            return null;
+        }
+        try {
+            Document doc = Document.parse(Files.readString(sidecar, StandardCharsets.UTF_8));
+            return new BlobInfo(fileId, doc.getString("filename"), ((Number) doc.get("length")).longValue(),
+                    doc.getDate("uploadDate"), doc.get("metadata", Document.class), this);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read metadata for " + fileId, e);
+        }
+    }
+
+    @Override
+    public InputStream open(String fileId, long offset) throws IOException {
+        FileChannel channel = FileChannel.open(blobPath(fileId), StandardOpenOption.READ);
+        channel.position(offset);
+        return Channels.newInputStream(channel);
+    }
+
+    @Override
+    public Path getLocalPath(String fileId) {
+        return blobPath(fileId);
+    }
+
+    @Override
+    public void delete(String fileId) {
+        try {
+            // Sidecar first so the file disappears for readers before its bytes do
+            Files.deleteIfExists(sidecarPath(fileId));
+            Files.deleteIfExists(blobPath(fileId));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not delete " + fileId, e);
+        }
+    }
+
+    /**
+     * Walks the shard directories in name order, so the order is by the last
+     * four hex digits of the id and then the id. Only committed files (with a
+     * sidecar) are listed; one leaf directory is read at a time.
+     */
+    @Override
+    public List<BlobInfo> list(String afterFileId, int limit) throws IOException {
+        List<BlobInfo> files = new ArrayList<>();
+        String afterOuter = afterFileId != null ? directory(afterFileId).getParent().getFileName().toString() : null;
+        String afterInner = afterFileId != null ? directory(afterFileId).getFileName().toString() : null;
+        for (Path outer : sortedShards(root)) {
+            String outerName = outer.getFileName().toString();
+            if (afterOuter != null && outerName.compareTo(afterOuter) < 0) {
+                continue;
+            }
+            for (Path inner : sortedShards(outer)) {
+                String innerName = inner.getFileName().toString();
+                boolean resumeShard = outerName.equals(afterOuter);
+                if (resumeShard && innerName.compareTo(afterInner) < 0) {
+                    continue;
+                }
+                boolean resumeLeaf = resumeShard && innerName.equals(afterInner);
+                List<String> ids;
+                try (Stream<Path> entries = Files.list(inner)) {
+                    ids = entries.map(path -> path.getFileName().toString())
+                            .filter(name -> name.endsWith(".json"))
+                            .map(name -> name.substring(0, name.length() - ".json".length()))
+                            .filter(ObjectId::isValid)
+                            .filter(id -> !resumeLeaf || id.compareTo(afterFileId) > 0)
+                            .sorted()
+                            .toList();
+                }
+                for (String id : ids) {
+                    BlobInfo file = find(id);
+                    if (file != null) {
+                        files.add(file);
+                        if (files.size() >= limit) {
+                            return files;
+                        }
+                    }
+                }
+            }
+        }
+        return files;
+    }
+
+    @Override
+    public void writeChunk(String fileId, String ownerId, int index, int chunkSize, byte[] data) throws IOException {
+        try (FileChannel out = FileChannel.open(partialPath(fileId), StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.wrap(data);
+            long position = (long) index * chunkSize;
+            while (buffer.hasRemaining()) {
+                position += out.write(buffer, position);
+            }
+        }
+    }
+
+    @Override
+    public void finalizeChunked(String fileId, String fileName, long length, int chunkSize, Document metadata) throws IOException {
+        Path partial = partialPath(fileId);
+        if (length == 0 && !Files.exists(partial)) {
+            Files.createFile(partial);
+        }
+        try (FileChannel channel = FileChannel.open(partial, StandardOpenOption.WRITE)) {
+            channel.force(false);
+        }
+        publish(fileId, partial, fileName, length, metadata);
+    }
+
+    @Override
+    public void discardChunks(String fileId) throws IOException {
+        Files.deleteIfExists(partialPath(fileId));
+    }
+
+    private void publish(String fileId, Path source, String fileName, long length, Document metadata) throws IOException {
+        Path blob = blobPath(fileId);
+        Files.createDirectories(blob.getParent());
+        Files.move(source, blob, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        Document sidecar = new Document("filename", fileName)
+                .append("length", length)
+                .append("uploadDate", new Date())
+                .append("metadata", metadata);
+        Path tmpSidecar = tempPath(fileId, ".json");
+        Files.writeString(tmpSidecar, sidecar.toJson(), StandardCharsets.UTF_8);
+        Files.move(tmpSidecar, sidecarPath(fileId), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private List<Path> sortedShards(Path dir) throws IOException {
+        if (!Files.isDirectory(dir)) {
+            return List.of();
+        }
+        try (Stream<Path> entries = Files.list(dir)) {
+            // Skips .tmp and .partial, which are not two-character shard names
+            return entries.filter(Files::isDirectory)
+                    .filter(path -> path.getFileName().toString().length() == 2)
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    // fileId reaches us from request paths; only ObjectIds may become file names
+    private static String checkId(String fileId) {
+        if (!ObjectId.isValid(fileId)) {
+            throw new IllegalArgumentException("Invalid file id: " + fileId);
+        }
+        return fileId;
+    }
+
+    // Shard by the low (counter) bytes of the ObjectId so directories stay small
+    private Path directory(String fileId) {
+        checkId(fileId);
+        return root.resolve(fileId.substring(fileId.length() - 2)).resolve(fileId.substring(fileId.length() - 4, fileId.length() - 2));
+    }
+
+    private Path blobPath(String fileId) {
+        return directory(fileId).resolve(fileId + ".blob");
+    }
+
+    private Path sidecarPath(String fileId) {
+        return directory(fileId).resolve(fileId + ".json");
+    }
+
+    private Path tempPath(String fileId, String suffix) throws IOException {
+        Path dir = root.resolve(".tmp");
+        Files.createDirectories(dir);
+        return dir.resolve(checkId(fileId) + suffix);
+    }
+
+    private Path partialPath(String fileId) throws IOException {
+        Path dir = root.resolve(".partial");
+        Files.createDirectories(dir);
+        return dir.resolve(checkId(fileId) + ".blob");
+    }
+}
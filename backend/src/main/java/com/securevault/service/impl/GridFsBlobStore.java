@@ -0,0 +1,518 @@
+package com.securevault.service.impl;
+
+import com.mongodb.ErrorCategory;
+import com.mongodb.MongoWriteException;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.gridfs.GridFSBucket;
+import com.mongodb.client.gridfs.GridFSBuckets;
+import com.mongodb.client.gridfs.GridFSDownloadStream;
+import com.mongodb.client.gridfs.model.GridFSFile;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.FindOneAndUpdateOptions;
+import com.mongodb.client.model.IndexOptions;
+import com.mongodb.client.model.Indexes;
+import com.mongodb.client.model.ReplaceOptions;
+import com.mongodb.client.model.ReturnDocument;
+import com.mongodb.client.model.Sorts;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.Updates;
+import com.securevault.service.BlobInfo;
+import com.securevault.service.ChunkedBlobStore;
+import jakarta.annotation.PreDestroy;
+import org.bson.Document;
+import org.bson.types.Binary;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * BlobStore backed by MongoDB GridFS.
+ *
+ * With {@code app.storage.gridfs.bucket-count} above 1, new files are spread
+ * over buckets {@code <prefix>_0 .. <prefix>_<n-1>} by a hash of their owner,
+ * so each user's files share one set of chunk collections and no single
+ * {@code files_id} index carries the whole vault. Where a file lives is kept
+ * in {@code blob_locations}; files without an entry are in the default "fs"
+ * bucket, which is where everything stored before sharding stays until
+ * {@link #rebalance} moves it. While nothing has ever been stored outside
+ * "fs" the lookup is skipped, so a single-bucket deployment reads GridFS
+ * directly. {@link #find} puts the bucket it resolved into the BlobInfo, and
+ * opening that BlobInfo reads from the bucket without another lookup.
+ *
+ * Media files use a larger GridFS chunk size than documents, so big
+ * downloads fetch fewer chunks. Uploads are written by {@link GridFsChunkWriter}
+ * with several chunk batches in flight rather than one insert per chunk.
+ */
+@Service
+public class GridFsBlobStore implements ChunkedBlobStore {
+
+    private static final Logger log = LoggerFactory.getLogger(GridFsBlobStore.class);
+
+    private static final String DEFAULT_BUCKET = "fs";
+    private static final String LOCATIONS = "blob_locations";
+    private static final String REBALANCE_STATE = "gridfs_rebalance";
+
+    private final MongoTemplate mongoTemplate;
+    private final List<String> bucketNames = new ArrayList<>();
+    private final Map<String, GridFSBucket> buckets = new ConcurrentHashMap<>();
+    private final ExecutorService writeExecutor;
+    // Whether any file may live outside "fs"; once true it stays true
+    private volatile boolean locationsInUse;
+    private volatile boolean locationsChecked;
+
+    @Value("${app.storage.gridfs.chunk-size-bytes:261120}")
+    private int documentChunkSize;
+
+    @Value("${app.storage.gridfs.media-chunk-size-bytes:1048576}")
+    private int mediaChunkSize;
+
+    // Chunks sent per insertMany, and how many of those one upload keeps in flight
+    @Value("${app.storage.gridfs.write.batch-bytes:4194304}")
+    private int writeBatchBytes;
+
+    @Value("${app.storage.gridfs.write.parallelism:4}")
+    private int writeParallelism;
+
+    @Value("${app.storage.gridfs.rebalance.enabled:false}")
+    private boolean rebalanceEnabled;
+
+    @Value("${app.storage.gridfs.rebalance.batch-size:200}")
+    private int rebalanceBatchSize;
+
+    // Readers may still be streaming the old copy of a moved file for a while
+    @Value("${app.storage.gridfs.rebalance.old-copy-grace-minutes:10}")
+    private long oldCopyGraceMinutes;
+
+    public GridFsBlobStore(GridFSBucket gridFSBucket, MongoTemplate mongoTemplate,
+                           @Value("${app.storage.gridfs.bucket-count:1}") int bucketCount,
+                           @Value("${app.storage.gridfs.bucket-prefix:fs}") String bucketPrefix,
+                           @Value("${app.storage.gridfs.write.threads:16}") int writeThreads) {
+        this.mongoTemplate = mongoTemplate;
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.writeExecutor = Executors.newFixedThreadPool(writeThreads,
+                runnable -> new Thread(runnable, "gridfs-write-" + threadNumber.incrementAndGet()));
+        this.buckets.put(DEFAULT_BUCKET, gridFSBucket);
+        if (bucketCount <= 1) {
+            bucketNames.add(DEFAULT_BUCKET);
+        } else {
+            locationsInUse = true;
+            for (int i = 0; i < bucketCount; i++) {
+                bucketNames.add(bucketPrefix + "_" + i);
+            }
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "gridfs";
+    }
+
+    @Override
+    public void store(String fileId, String fileName, InputStream content, Document metadata) throws IOException {
+        String bucketName = bucketFor(routingKey(fileId, metadata));
+        // Recorded first, so an interrupted upload can still be found and deleted
+        recordLocation(fileId, bucketName);
+        chunkWriter(bucketName, metadata).write(new ObjectId(fileId), fileName, chunkSizeFor(metadata), content, metadata);
+    }
+
+    @Override
+    public BlobInfo find(String fileId) {
+        String bucketName = locate(fileId);
+        GridFSFile file = bucket(bucketName).find(Filters.eq("_id", new ObjectId(fileId))).first();
+        return file != null ? toBlobInfo(file, bucketName) : null;
+    }
+
+    @Override
+    public InputStream open(String fileId, long offset) {
+        return openInBucket(locate(fileId), fileId, offset);
+    }
+
+    /**
+     * A rebalance may have moved the file since it was found; its old copy
+     * outlives cached descriptors, and a failed open is retried by the caller
+     * after looking the file up again
+     */
+    @Override
+    public InputStream open(BlobInfo file, long offset) {
+        String bucketName = file.getLocation() != null ? file.getLocation() : locate(file.getFileId());
+        return openInBucket(bucketName, file.getFileId(), offset);
+    }
+
+    /**
+     * The download stream is positioned with skip(), which jumps directly to the
+     * chunk containing the offset instead of reading the preceding chunks
+     */
+    private InputStream openInBucket(String bucketName, String fileId, long offset) {
+        GridFSDownloadStream in = bucket(bucketName).openDownloadStream(new ObjectId(fileId));
+        if (offset > 0) {
+            in.skip(offset);
+        }
+        return in;
+    }
+
+    @Override
+    public void delete(String fileId) {
+        Document location = hasLocations() ? locations().find(Filters.eq("_id", fileId)).first() : null;
+        if (location == null) {
+            deleteFromBucket(DEFAULT_BUCKET, fileId);
+            return;
+        }
+        // Removing the entry first makes a move that is in progress give up its copy
+        locations().deleteOne(Filters.eq("_id", fileId));
+        deleteFromBucket(location.getString("bucket"), fileId);
+        for (String other : List.of("previousBucket", "movingTo")) {
+            if (location.getString(other) != null) {
+                deleteFromBucket(location.getString(other), fileId);
+            }
+        }
+    }
+
+    /**
+     * Merges the buckets in ObjectId order. A file that is being moved may be
+     * in two buckets at once; it is listed once.
+     */
+    @Override
+    public List<BlobInfo> list(String afterFileId, int limit) {
+        TreeMap<String, BlobInfo> merged = new TreeMap<>();
+        for (String bucketName : knownBuckets()) {
+            for (GridFSFile file : listBucket(bucketName, afterFileId, limit)) {
+                // No location: while a move is in progress either copy may be listed first
+                merged.putIfAbsent(file.getObjectId().toHexString(), toBlobInfo(file, null));
+            }
+        }
+        return merged.values().stream().limit(limit).toList();
+    }
+
+    @Override
+    public void writeChunk(String fileId, String ownerId, int index, int chunkSize, byte[] data) {
+        String bucketName = bucketFor(ownerId != null ? ownerId : fileId);
+        // Idempotent, so every chunk can record it and retries in any order are safe
+        recordLocation(fileId, bucketName);
+        ObjectId id = new ObjectId(fileId);
+        Document chunk = new Document("files_id", id)
+                .append("n", index)
+                .append("data", new Binary(data));
+        chunks(bucketName).replaceOne(
+                Filters.and(Filters.eq("files_id", id), Filters.eq("n", index)),
+                chunk,
+                new ReplaceOptions().upsert(true));
+    }
+
+    @Override
+    public void finalizeChunked(String fileId, String fileName, long length, int chunkSize, Document metadata) {
+        Document fileDoc = new Document("_id", new ObjectId(fileId))
+                .append("length", length)
+                .append("chunkSize", chunkSize)
+                .append("uploadDate", new Date())
+                .append("filename", fileName)
+                .append("metadata", metadata);
+        files(locate(fileId)).insertOne(fileDoc);
+    }
+
+    @Override
+    public void discardChunks(String fileId) {
+        chunks(locate(fileId)).deleteMany(Filters.eq("files_id", new ObjectId(fileId)));
+        locations().deleteOne(Filters.eq("_id", fileId));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        writeExecutor.shutdown();
+    }
+
+    @Scheduled(fixedDelayString = "${app.storage.gridfs.rebalance.interval-ms:60000}")
+    public void scheduledRebalance() {
+        if (rebalanceEnabled) {
+            rebalance(rebalanceBatchSize);
+        }
+    }
+
+    /**
+     * Moves files that are not in the bucket their owner routes to, up to
+     * {@code limit} files per bucket, resuming from where the last call stopped.
+     * Each file is copied, its location is switched, and the old copy is
+     * deleted on a later run once in-flight reads of it have finished.
+     * Safe to run while the application serves traffic.
+     * @return Counts of scanned and moved files and deleted old copies
+     */
+    public Map<String, Object> rebalance(int limit) {
+        Map<String, Object> result = new HashMap<>();
+        if (!acquireRebalanceLease()) {
+            result.put("skipped", "Another instance is rebalancing");
+            return result;
+        }
+        long scanned = 0;
+        long moved = 0;
+        try {
+            long oldCopiesDeleted = deleteOldCopies();
+            result.put("oldCopiesDeleted", oldCopiesDeleted);
+            for (String bucketName : knownBuckets()) {
+                Document state = rebalanceState().find(Filters.eq("_id", bucketName)).first();
+                String cursor = state != null ? state.getString("cursor") : null;
+                List<GridFSFile> files = listBucket(bucketName, cursor, limit);
+                for (GridFSFile file : files) {
+                    scanned++;
+                    if (moveIfMisplaced(file, bucketName)) {
+                        moved++;
+                    }
+                }
+                // A short page means the bucket is done; the next pass starts over
+                String next = files.size() < limit ? null : files.get(files.size() - 1).getObjectId().toHexString();
+                rebalanceState().updateOne(Filters.eq("_id", bucketName), Updates.set("cursor", next),
+                        new UpdateOptions().upsert(true));
+            }
+        } finally {
+            rebalanceState().updateOne(Filters.eq("_id", "lease"), Updates.set("leaseUntil", null));
+        }
+        if (moved > 0) {
+            log.info("Moved {} of {} scanned GridFS files to their owner's bucket", moved, scanned);
+        }
+        result.put("scanned", scanned);
+        result.put("moved", moved);
+        return result;
+    }
+
+    /**
+     * Copies a file into its owner's bucket and switches its location.
+     * The location entry is marked movingTo before the copy, and the switch
+     * only applies if that mark is still there, so a delete that lands at
+     * any point during the move (it removes the entry) wins and the copy is
+     * dropped instead of bringing the file back.
+     */
+    private boolean moveIfMisplaced(GridFSFile file, String from) {
+        String fileId = file.getObjectId().toHexString();
+        Document metadata = file.getMetadata() != null ? file.getMetadata() : new Document();
+        String to = bucketFor(routingKey(fileId, metadata));
+        if (to.equals(from) || !markMoving(fileId, from, to)) {
+            return false;
+        }
+        try {
+            // Left over from an interrupted earlier attempt
+            deleteFromBucket(to, fileId);
+            if (files(from).find(Filters.eq("_id", file.getObjectId())).first() == null) {
+                // Deleted before the mark was set
+                locations().deleteOne(Filters.and(Filters.eq("_id", fileId), Filters.eq("movingTo", to)));
+                return false;
+            }
+            try (GridFSDownloadStream in = bucket(from).openDownloadStream(file.getObjectId())) {
+                chunkWriter(to, metadata).write(file.getObjectId(), file.getFilename(), chunkSizeFor(metadata), in, metadata);
+            }
+            long switched = locations().updateOne(
+                    Filters.and(Filters.eq("_id", fileId), Filters.eq("bucket", from), Filters.eq("movingTo", to)),
+                    Updates.combine(Updates.set("bucket", to), Updates.set("previousBucket", from),
+                            Updates.set("movedAt", new Date()), Updates.unset("movingTo"))).getMatchedCount();
+            if (switched == 0) {
+                // Deleted while we were copying it
+                deleteFromBucket(to, fileId);
+                return false;
+            }
+            return true;
+        } catch (IOException | RuntimeException e) {
+            log.warn("Could not move GridFS file {} from {} to {}: {}", fileId, from, to, e.getMessage());
+            locations().updateOne(Filters.and(Filters.eq("_id", fileId), Filters.eq("movingTo", to)),
+                    Updates.unset("movingTo"));
+            deleteFromBucket(to, fileId);
+            return false;
+        }
+    }
+
+    /**
+     * Marks the file as moving if it is still located in {@code from} and
+     * no earlier move of it is waiting for its old copy to be deleted
+     */
+    private boolean markMoving(String fileId, String from, String to) {
+        locationsInUse = true;
+        Document location = locations().find(Filters.eq("_id", fileId)).first();
+        if (location == null) {
+            if (!DEFAULT_BUCKET.equals(from)) {
+                return false;
+            }
+            try {
+                locations().insertOne(new Document("_id", fileId).append("bucket", from).append("movingTo", to));
+                return true;
+            } catch (MongoWriteException e) {
+                if (e.getError().getCategory() == ErrorCategory.DUPLICATE_KEY) {
+                    return false;
+                }
+                throw e;
+            }
+        }
+        return locations().updateOne(
+                Filters.and(Filters.eq("_id", fileId), Filters.eq("bucket", from),
+                        Filters.eq("previousBucket", null), Filters.eq("movingTo", null)),
+                Updates.set("movingTo", to)).getModifiedCount() > 0;
+    }
+
+    private long deleteOldCopies() {
+        Date cutoff = new Date(System.currentTimeMillis() - oldCopyGraceMinutes * 60_000);
+        long deleted = 0;
+        // movedAt is set and cleared together with previousBucket; see IndexCatalog
+        for (Document location : locations().find(Filters.lt("movedAt", cutoff))) {
+            String fileId = location.getString("_id");
+            deleteFromBucket(location.getString("previousBucket"), fileId);
+            locations().updateOne(Filters.eq("_id", fileId),
+                    Updates.combine(Updates.unset("previousBucket"), Updates.unset("movedAt")));
+            deleted++;
+        }
+        return deleted;
+    }
+
+    private boolean acquireRebalanceLease() {
+        Date now = new Date();
+        try {
+            return rebalanceState().findOneAndUpdate(
+                    Filters.and(Filters.eq("_id", "lease"),
+                            Filters.or(Filters.eq("leaseUntil", null), Filters.lt("leaseUntil", now))),
+                    Updates.set("leaseUntil", new Date(now.getTime() + 30 * 60_000)),
+                    new FindOneAndUpdateOptions().upsert(true).returnDocument(ReturnDocument.AFTER)) != null;
+        } catch (MongoWriteException e) {
+            // The lease document exists and is held, so the upsert collided with it
+            if (e.getError().getCategory() == ErrorCategory.DUPLICATE_KEY) {
+                return false;
+            }
+            throw e;
+        }
+    }
+
+    private GridFsChunkWriter chunkWriter(String bucketName, Document metadata) {
+        bucket(bucketName);
+        return new GridFsChunkWriter(files(bucketName), chunks(bucketName), writeExecutor,
+                chunkSizeFor(metadata), writeBatchBytes, writeParallelism);
+    }
+
+    private String routingKey(String fileId, Document metadata) {
+        String owner = metadata != null ? metadata.getString("owner") : null;
+        if (owner == null) {
+            // Stored before files recorded their owner
+            Document asset = mongoTemplate.getCollection("assets")
+                    .find(Filters.eq("fileId", fileId)).projection(new Document("userId", 1)).first();
+            owner = asset != null ? asset.getString("userId") : null;
+        }
+        return owner != null ? owner : fileId;
+    }
+
+    private String bucketFor(String routingKey) {
+        if (bucketNames.size() == 1) {
+            return bucketNames.get(0);
+        }
+        // String.hashCode is specified by the JLS, so routing is stable across JVMs
+        return bucketNames.get(Math.floorMod(routingKey.hashCode(), bucketNames.size()));
+    }
+
+    private int chunkSizeFor(Document metadata) {
+        String contentType = metadata != null ? metadata.getString("_contentType") : null;
+        if (contentType == null) {
+            return documentChunkSize;
+        }
+        String type = contentType.toLowerCase(Locale.ROOT);
+        boolean media = type.startsWith("video/") || type.startsWith("audio/") || type.startsWith("image/");
+        return media ? mediaChunkSize : documentChunkSize;
+    }
+
+    private String locate(String fileId) {
+        if (!hasLocations()) {
+            return DEFAULT_BUCKET;
+        }
+        Document location = locations().find(Filters.eq("_id", fileId)).first();
+        return location != null ? location.getString("bucket") : DEFAULT_BUCKET;
+    }
+
+    /**
+     * Whether a file may be outside "fs". With one bucket this is only the
+     * case if the bucket count was lowered, which leaves location entries
+     * behind. That is checked once, since one bucket never adds entries.
+     */
+    private boolean hasLocations() {
+        if (!locationsInUse && !locationsChecked) {
+            locationsInUse = locations().find().limit(1).first() != null;
+            locationsChecked = true;
+        }
+        return locationsInUse;
+    }
+
+    private void recordLocation(String fileId, String bucketName) {
+        if (DEFAULT_BUCKET.equals(bucketName)) {
+            return;
+        }
+        locationsInUse = true;
+        locations().updateOne(Filters.eq("_id", fileId), Updates.set("bucket", bucketName),
+                new UpdateOptions().upsert(true));
+    }
+
+    private Set<String> knownBuckets() {
+        Set<String> names = new LinkedHashSet<>();
+        names.add(DEFAULT_BUCKET);
+        names.addAll(bucketNames);
+        return names;
+    }
+
+    private List<GridFSFile> listBucket(String bucketName, String afterFileId, int limit) {
+        List<GridFSFile> files = new ArrayList<>();
+        bucket(bucketName)
+                .find(afterFileId != null ? Filters.gt("_id", new ObjectId(afterFileId)) : new Document())
+                .sort(Sorts.ascending("_id"))
+                .limit(limit)
+                .into(files);
+        return files;
+    }
+
+    private void deleteFromBucket(String bucketName, String fileId) {
+        ObjectId id = new ObjectId(fileId);
+        // Not GridFSBucket.delete, which throws when the file does not exist
+        files(bucketName).deleteOne(Filters.eq("_id", id));
+        chunks(bucketName).deleteMany(Filters.eq("files_id", id));
+    }
+
+    private BlobInfo toBlobInfo(GridFSFile file, String bucketName) {
+        return new BlobInfo(file.getObjectId().toHexString(), file.getFilename(), file.getLength(),
+                file.getUploadDate(), file.getMetadata(), this, bucketName);
+    }
+
+    /**
+     * The driver only creates GridFS indexes on the first upload through the
+     * bucket API, and chunked uploads bypass it, so new buckets get them here
+     */
+    private GridFSBucket bucket(String bucketName) {
+        return buckets.computeIfAbsent(bucketName, name -> {
+            files(name).createIndex(Indexes.ascending("filename", "uploadDate"));
+            chunks(name).createIndex(Indexes.ascending("files_id", "n"), new IndexOptions().unique(true));
+            return GridFSBuckets.create(mongoTemplate.getDb(), name);
+        });
+    }
+
+    private MongoCollection<Document> files(String bucketName) {
+        return mongoTemplate.getCollection(bucketName + ".files");
+    }
+
+    private MongoCollection<Document> chunks(String bucketName) {
+        return mongoTemplate.getCollection(bucketName + ".chunks");
+    }
+
+    private MongoCollection<Document> locations() {
+        return mongoTemplate.getCollection(LOCATIONS);
+    }
+
+    private MongoCollection<Document> rebalanceState() {
+        return mongoTemplate.getCollection(REBALANCE_STATE);
+    }
+}
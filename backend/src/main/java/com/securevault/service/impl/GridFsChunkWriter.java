@@ -0,0 +1,132 @@
+package com.securevault.service.impl;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.InsertManyOptions;
+import org.bson.Document;
+import org.bson.types.Binary;
+import org.bson.types.ObjectId;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Writes one GridFS file with several insertMany batches of chunks in flight,
+ * instead of the driver's one insert per chunk. The files document is
+ * inserted only after every chunk has been acknowledged, so readers never
+ * see a partial file; on failure the chunks written so far are removed.
+ *
+ * Buffered memory per upload is bounded by batch bytes times parallelism.
+ */
+class GridFsChunkWriter {
+
+    private static final InsertManyOptions UNORDERED = new InsertManyOptions().ordered(false);
+
+    private final MongoCollection<Document> files;
+    private final MongoCollection<Document> chunks;
+    private final ExecutorService executor;
+    private final int chunksPerBatch;
+    private final Semaphore inFlight;
+    private final int parallelism;
+
+    GridFsChunkWriter(MongoCollection<Document> files, MongoCollection<Document> chunks, ExecutorService executor,
+                      int chunkSize, int batchBytes, int parallelism) {
+        this.files = files;
+        this.chunks = chunks;
+        this.executor = executor;
+        this.chunksPerBatch = Math.max(1, batchBytes / chunkSize);
+        this.parallelism = parallelism;
+        this.inFlight = new Semaphore(parallelism);
+    }
+
+    void write(ObjectId id, String fileName, int chunkSize, InputStream content, Document metadata) throws IOException {
+        List<CompletableFuture<Void>> pending = new ArrayList<>();
+        long length = 0;
+        int index = 0;
+        try {
+            List<Document> batch = new ArrayList<>(chunksPerBatch);
+            while (true) {
+                byte[] data = content.readNBytes(chunkSize);
+                if (data.length == 0) {
+                    break;
+                }
+                batch.add(new Document("files_id", id).append("n", index++).append("data", new Binary(data)));
+                length += data.length;
+                if (batch.size() == chunksPerBatch) {
+                    pending.add(submit(batch));
+                    batch = new ArrayList<>(chunksPerBatch);
+                    failFast(pending);
+                }
+                if (data.length < chunkSize) {
+                    break;
+                }
+            }
+            if (!batch.isEmpty()) {
+                pending.add(submit(batch));
+            }
+            CompletableFuture.allOf(pending.toArray(CompletableFuture<?>[]::new)).join();
+
+            files.insertOne(new Document("_id", id)
+                    .append("length", length)
+                    .append("chunkSize", chunkSize)
+                    .append("uploadDate", new Date())
+                    .append("filename", fileName)
+                    .append("metadata", metadata));
+        } catch (InterruptedException e) {
+            abort(id);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while storing " + id);
+        } catch (CompletionException e) {
+            abort(id);
+            throw e.getCause() instanceof RuntimeException cause ? cause : e;
+        } catch (IOException | RuntimeException e) {
+            abort(id);
+            throw e;
+        }
+    }
+
+    private CompletableFuture<Void> submit(List<Document> batch) throws InterruptedException {
+        // Blocks the reading thread while `parallelism` batches are outstanding
+        inFlight.acquire();
+        try {
+            return CompletableFuture.runAsync(() -> {
+                try {
+                    chunks.insertMany(batch, UNORDERED);
+                } finally {
+                    inFlight.release();
+                }
+            }, executor);
+        } catch (RuntimeException e) {
+            inFlight.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Stops reading the upload as soon as a batch has failed, and forgets
+     * batches that are already acknowledged
+     */
+    private void failFast(List<CompletableFuture<Void>> pending) {
+        for (CompletableFuture<Void> future : pending) {
+            if (future.isCompletedExceptionally()) {
+                future.join();
+            }
+        }
+        pending.removeIf(CompletableFuture::isDone);
+    }
+
+    private void abort(ObjectId id) {
+        // Let outstanding inserts settle so none lands after the cleanup
+        inFlight.acquireUninterruptibly(parallelism);
+        inFlight.release(parallelism);
+        chunks.deleteMany(Filters.eq("files_id", id));
+    }
+}
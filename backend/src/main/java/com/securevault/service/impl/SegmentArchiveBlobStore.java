@@ -0,0 +1,274 @@
+package com.securevault.service.impl;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.FindOneAndUpdateOptions;
+import com.mongodb.client.model.ReturnDocument;
+import com.mongodb.client.model.Sorts;
+import com.mongodb.client.model.Updates;
+import com.securevault.service.BlobInfo;
+import com.securevault.service.BlobStore;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Service;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Cold-tier BlobStore: files are gzipped and appended to large segment files
+ * under {@code app.storage.archive.root}, and located through the
+ * {@code archived_blobs} index collection. Appends are serialised per
+ * instance; only the tiering engine writes here, under its lease, so a
+ * shared root sees one writer at a time. It takes no chunked uploads and so
+ * cannot be the primary store.
+ *
+ * Segments are never rewritten. Deleting a file only counts its record as
+ * dead, and a sealed segment is removed once nothing in it is live.
+ * Reads inflate from the start of the record, so offsets cost a skip; this
+ * store is meant for files that are rarely read.
+ */
+@Service
+public class SegmentArchiveBlobStore implements BlobStore {
+
+    private static final Logger log = LoggerFactory.getLogger(SegmentArchiveBlobStore.class);
+
+    private static final String INDEX = "archived_blobs";
+    private static final String SEGMENTS = "archive_segments";
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final MongoTemplate mongoTemplate;
+    private final Path root;
+    private final long segmentMaxBytes;
+
+    public SegmentArchiveBlobStore(MongoTemplate mongoTemplate,
+                                   @Value("${app.storage.archive.root:./data/archive}") String root,
+                                   @Value("${app.storage.archive.segment-max-bytes:1073741824}") long segmentMaxBytes) {
+        this.mongoTemplate = mongoTemplate;
+        this.root = Paths.get(root).toAbsolutePath().normalize();
+        this.segmentMaxBytes = segmentMaxBytes;
+    }
+
+    @Override
+    public String getName() {
+        return "archive";
+    }
+
+    /**
+     * Appends the gzipped content to the open segment. The index entry is
+     * written last and acts as the commit marker; a failed append leaves
+     * only dead bytes behind.
+     */
+    @Override
+    public synchronized void store(String fileId, String fileName, InputStream content, Document metadata) throws IOException {
+        requireObjectId(fileId);
+        Document segment = openSegment();
+        String segmentName = segment.getString("_id");
+        Path path = root.resolve(segmentName);
+
+        long offset;
+        long length = 0;
+        long recordLength;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            offset = channel.size();
+            channel.position(offset);
+            CountingOutputStream counter = new CountingOutputStream(Channels.newOutputStream(channel));
+            try (GZIPOutputStream gzip = new GZIPOutputStream(counter, BUFFER_SIZE)) {
+                byte[] buffer = new byte[BUFFER_SIZE];
+                int read;
+                while ((read = content.read(buffer)) != -1) {
+                    gzip.write(buffer, 0, read);
+                    length += read;
+                }
+            }
+            recordLength = counter.count;
+            channel.force(false);
+        }
+
+        segments().updateOne(Filters.eq("_id", segmentName),
+                Updates.combine(Updates.inc("length", recordLength), Updates.inc("liveBytes", recordLength)));
+        index().insertOne(new Document("_id", fileId)
+                .append("segment", segmentName)
+                .append("offset", offset)
+                .append("recordLength", recordLength)
+                .append("length", length)
+                .append("filename", fileName)
+                .append("uploadDate", new Date())
+                .append("archivedAt", new Date())
+                .append("metadata", metadata));
+    }
+
+    @Override
+    public BlobInfo find(String fileId) {
+        Document entry = index().find(Filters.eq("_id", fileId)).first();
+        return entry != null ? toBlobInfo(entry) : null;
+    }
+
+    @Override
+    public InputStream open(String fileId, long offset) throws IOException {
+        Document entry = index().find(Filters.eq("_id", fileId)).first();
+        if (entry == null) {
+            throw new IOException("Archived file not found: " + fileId);
+        }
+        FileChannel channel = FileChannel.open(root.resolve(entry.getString("segment")), StandardOpenOption.READ);
+        channel.position(((Number) entry.get("offset")).longValue());
+        // Bounded, or the gzip reader would run on into the next record
+        InputStream record = new LimitedInputStream(Channels.newInputStream(channel),
+                ((Number) entry.get("recordLength")).longValue());
+        InputStream in = new GZIPInputStream(record, BUFFER_SIZE);
+        try {
+            in.skipNBytes(offset);
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+        return in;
+    }
+
+    @Override
+    public void delete(String fileId) {
+        Document entry = index().findOneAndDelete(Filters.eq("_id", fileId));
+        if (entry == null) {
+            return;
+        }
+        String segmentName = entry.getString("segment");
+        Document segment = segments().findOneAndUpdate(Filters.eq("_id", segmentName),
+                Updates.inc("liveBytes", -((Number) entry.get("recordLength")).longValue()),
+                new FindOneAndUpdateOptions().returnDocument(ReturnDocument.AFTER));
+        if (segment != null && segment.getBoolean("sealed", false) && ((Number) segment.get("liveBytes")).longValue() <= 0) {
+            try {
+                Files.deleteIfExists(root.resolve(segmentName));
+                segments().deleteOne(Filters.eq("_id", segmentName));
+            } catch (IOException e) {
+                log.warn("Could not delete empty archive segment {}: {}", segmentName, e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public List<BlobInfo> list(String afterFileId, int limit) {
+        List<BlobInfo> files = new ArrayList<>();
+        for (Document entry : index().find(afterFileId != null ? Filters.gt("_id", afterFileId) : new Document())
+                .sort(Sorts.ascending("_id")).limit(limit)) {
+            files.add(toBlobInfo(entry));
+        }
+        return files;
+    }
+
+    /**
+     * The newest unsealed segment, or a new one once it has reached the size limit
+     */
+    private Document openSegment() throws IOException {
+        Files.createDirectories(root);
+        Document segment = segments().find(Filters.ne("sealed", true)).sort(Sorts.descending("_id")).first();
+        if (segment != null && ((Number) segment.get("length")).longValue() < segmentMaxBytes) {
+            return segment;
+        }
+        if (segment != null) {
+            segments().updateOne(Filters.eq("_id", segment.getString("_id")), Updates.set("sealed", true));
+        }
+        segment = new Document("_id", "segment-" + new ObjectId().toHexString() + ".gzs")
+                .append("length", 0L)
+                .append("liveBytes", 0L)
+                .append("sealed", false)
+                .append("createdAt", new Date());
+        segments().insertOne(segment);
+        return segment;
+    }
+
+    // Raw collections: ids here are hex strings and must not be converted to ObjectIds
+    private MongoCollection<Document> index() {
+        return mongoTemplate.getCollection(INDEX);
+    }
+
+    private MongoCollection<Document> segments() {
+        return mongoTemplate.getCollection(SEGMENTS);
+    }
+
+    private BlobInfo toBlobInfo(Document entry) {
+        return new BlobInfo(entry.getString("_id"), entry.getString("filename"),
+                ((Number) entry.get("length")).longValue(), entry.getDate("uploadDate"),
+                entry.get("metadata", Document.class), this);
+    }
+
+    private void requireObjectId(String fileId) {
+        if (!ObjectId.isValid(fileId)) {
+            throw new IllegalArgumentException("Invalid file id: " + fileId);
+        }
+    }
+
+    private static class LimitedInputStream extends FilterInputStream {
+        private long remaining;
+
+        LimitedInputStream(InputStream in, long limit) {
+            super(in);
+            this.remaining = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int b = super.read();
+            if (b != -1) {
+                remaining--;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int read = super.read(b, off, (int) Math.min(len, remaining));
+            if (read > 0) {
+                remaining -= read;
+            }
+            return read;
+        }
+    }
+
+    /**
+     * Counts the bytes of the record; closing it leaves the segment channel
+     * open so it can be forced
+     */
+    private static class CountingOutputStream extends OutputStream {
+        private final OutputStream out;
+        private long count;
+
+        CountingOutputStream(OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
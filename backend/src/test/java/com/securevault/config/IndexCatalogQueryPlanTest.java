@@ -0,0 +1,227 @@
+package com.securevault.config;
+
+import com.securevault.dto.BulkAssetOperationDTO;
+import com.securevault.model.ActivityLog;
+import com.securevault.model.Asset;
+import com.securevault.model.Nominee;
+import com.securevault.model.UploadSession;
+import com.securevault.model.User;
+import com.securevault.model.VerificationRequest;
+import com.securevault.repository.ActivityLogRepository;
+import com.securevault.repository.AssetRepository;
+import com.securevault.repository.NomineeRepository;
+import com.securevault.repository.UploadSessionRepository;
+import com.securevault.repository.UserRepository;
+import com.securevault.repository.VerificationRepository;
+import com.securevault.service.ActivityLogService;
+import com.securevault.service.AssetBulkService;
+import com.securevault.service.AssetSearchIndexer;
+import com.securevault.service.AssetService;
+import com.securevault.service.AssetVersionService;
+import com.securevault.service.NomineeService;
+import com.securevault.service.PreviewService;
+import com.securevault.service.ReferenceResolver;
+import com.securevault.service.StorageService;
+import com.securevault.service.StorageUsageService;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Runs the repository methods and the MongoTemplate queries of the asset,
+ * nominee and usage services against a real MongoDB with the catalog's
+ * indexes in place, and fails if the profiler saw any of them planned as a
+ * collection scan. Skipped when Docker is not available.
+ */
+@DataMongoTest
+@Testcontainers(disabledWithoutDocker = true)
+@Import({IndexCatalog.class, AssetService.class, AssetBulkService.class, AssetSearchIndexer.class,
+        NomineeService.class, ReferenceResolver.class, ActivityLogService.class, StorageUsageService.class})
+class IndexCatalogQueryPlanTest {
+
+    @Container
+    @ServiceConnection
+    static MongoDBContainer mongo = new MongoDBContainer("mongo:7.0");
+
+    @MockBean
+    private StorageService storageService;
+    @MockBean
+    private PreviewService previewService;
+    @MockBean
+    private AssetVersionService assetVersionService;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+    @Autowired
+    private IndexCatalog indexCatalog;
+    @Autowired
+    private AssetRepository assetRepository;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private NomineeRepository nomineeRepository;
+    @Autowired
+    private VerificationRepository verificationRepository;
+    @Autowired
+    private UploadSessionRepository uploadSessionRepository;
+    @Autowired
+    private ActivityLogRepository activityLogRepository;
+    @Autowired
+    private AssetService assetService;
+    @Autowired
+    private AssetBulkService assetBulkService;
+    @Autowired
+    private NomineeService nomineeService;
+    @Autowired
+    private StorageUsageService storageUsageService;
+
+    private User owner;
+    private Nominee nominee;
+    private List<Asset> assets;
+
+    @BeforeEach
+    void seed() {
+        mongoTemplate.getDb().drop();
+        indexCatalog.ensureIndexes();
+
+        owner = new User();
+        owner.setEmail("owner@example.com");
+        owner.setFullName("Owner");
+        owner.setLastLoginAt(LocalDateTime.now());
+        owner = userRepository.save(owner);
+
+        nominee = new Nominee();
+        nominee.setName("Nominee");
+        nominee.setEmail("nominee@example.com");
+        nominee.setUserId(owner.getId());
+        nominee = nomineeRepository.save(nominee);
+
+        assets = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            Asset asset = new Asset();
+            asset.setUserId(owner.getId());
+            asset.setFileName("statement-" + i + ".pdf");
+            asset.setFileType(i % 2 == 0 ? "application/pdf" : "image/png");
+            asset.setFileId("file-" + i);
+            asset.setFileSize(1024L);
+            asset.setDescription("Bank statement " + i);
+            asset.setNomineeIds(new ArrayList<>(List.of(nominee.getId())));
+            asset.setUploadedAt(LocalDateTime.now().minusMinutes(i));
+            asset.setSearchName("statement " + i);
+            asset.setSearchNominees(List.of(nominee.getId() + " nominee"));
+            asset.setSearchDescription("bank statement");
+            assets.add(assetRepository.save(asset));
+        }
+
+        VerificationRequest request = new VerificationRequest();
+        request.setNomineeId(nominee.getId());
+        request.setDeceasedUserId(owner.getId());
+        request.setDeathCertificateFileId("certificate");
+        verificationRepository.save(request);
+
+        ActivityLog entry = new ActivityLog();
+        entry.setUserId(owner.getId());
+        entry.setUserType("USER");
+        entry.setAction("ASSET_UPLOAD");
+        entry.setTimestamp(LocalDateTime.now());
+        activityLogRepository.save(entry);
+
+        UploadSession session = new UploadSession();
+        session.setUserId(owner.getId());
+        session.setFileId("session-file");
+        session.setStatus("OPEN");
+        session.setUpdatedAt(LocalDateTime.now());
+        uploadSessionRepository.save(session);
+
+        // Profile every operation from here on, so each test sees only its own queries
+        mongoTemplate.getDb().runCommand(new Document("profile", 0));
+        mongoTemplate.getDb().getCollection("system.profile").drop();
+        mongoTemplate.getDb().runCommand(new Document("profile", 2));
+    }
+
+    @Test
+    void catalogProbesUseIndexes() {
+        List<Map<String, Object>> report = indexCatalog.explainProbes();
+
+        assertThat(report).isNotEmpty();
+        assertThat(report).allSatisfy(probe -> {
+            assertThat(probe).doesNotContainKey("error");
+            assertThat(probe.get("collectionScan")).as("%s", probe).isEqualTo(false);
+        });
+    }
+
+    @Test
+    void repositoryQueriesUseIndexes() {
+        String userId = owner.getId();
+        assetRepository.findByUserId(userId);
+        assetRepository.findByNomineeIdsContaining(nominee.getId());
+        assetRepository.existsByPreviewFileId("preview");
+        userRepository.findByEmail(owner.getEmail());
+        nomineeRepository.findByUserId(userId);
+        verificationRepository.findByNomineeId(nominee.getId());
+        uploadSessionRepository.findByStatusAndUpdatedAtBefore("OPEN", LocalDateTime.now());
+        activityLogRepository.findAllByOrderByTimestampDesc();
+        activityLogRepository.findByUserTypeOrderByTimestampDesc("USER");
+
+        assertNoCollectionScans();
+    }
+
+    @Test
+    void assetServiceQueriesUseIndexes() {
+        String userId = owner.getId();
+        assetService.getUserAssets(userId);
+        assetService.getUserAssets(userId, "fileName,nominees");
+        assetService.getUserAssetsPage(userId, null, 5, "image/", null, null);
+        assetService.getUserAssetsPage(userId, null, 5, null, false, "fileName");
+        assetService.streamUserAssets(userId, "application/pdf", null, null, asset -> { });
+        assetService.searchUserAssets(userId, "statement", null, 5, null);
+        assetService.updateAsset(assets.get(0).getId(), userId, "Updated");
+        assetService.removeNomineeFromAsset(assets.get(1).getId(), userId, nominee.getId());
+        assetService.deleteAsset(assets.get(2).getId(), userId);
+
+        assertNoCollectionScans();
+    }
+
+    @Test
+    void bulkNomineeAndUsageQueriesUseIndexes() {
+        String userId = owner.getId();
+        assetBulkService.apply(userId, List.of(
+                new BulkAssetOperationDTO(AssetBulkService.UPDATE_DESCRIPTION, assets.get(3).getId(), "Bulk", null),
+                new BulkAssetOperationDTO(AssetBulkService.UNASSIGN_NOMINEE, assets.get(4).getId(), null, nominee.getId()),
+                new BulkAssetOperationDTO(AssetBulkService.DELETE, assets.get(5).getId(), null, null)));
+        storageUsageService.getUsages(List.of(userId));
+        storageUsageService.getQuota(userId);
+        nomineeService.getNomineesByUser(userId);
+        nomineeService.deleteNominee(nominee.getId(), userId);
+
+        assertNoCollectionScans();
+    }
+
+    private void assertNoCollectionScans() {
+        List<Document> scans = mongoTemplate.getDb().getCollection("system.profile")
+                .find(new Document("planSummary", new Document("$regex", "COLLSCAN"))
+                        .append("ns", new Document("$not", new Document("$regex", "\\.system\\."))))
+                .into(new ArrayList<>());
+        assertThat(scans)
+                .as("Operations planned as a collection scan")
+                .extracting(scan -> scan.getString("ns") + " " + scan.getString("op") + " "
+                        + scan.get("command"))
+                .isEmpty();
+    }
+}
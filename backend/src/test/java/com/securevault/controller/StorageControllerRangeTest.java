@@ -0,0 +1,179 @@
+package com.securevault.controller;
+
+import com.securevault.service.BlobInfo;
+import com.securevault.service.BlobTieringService;
+import com.securevault.service.PreviewService;
+import com.securevault.service.StorageService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.ResultActions;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Range handling of file downloads over a mocked {@link StorageService}
+ * serving a 100-byte file.
+ */
+class StorageControllerRangeTest {
+
+    private static final String FILE_ID = "65a000000000000000000001";
+    private static final byte[] CONTENT = new byte[100];
+
+    static {
+        for (int i = 0; i < CONTENT.length; i++) {
+            CONTENT[i] = (byte) ('A' + i % 26);
+        }
+    }
+
+    private StorageService storageService;
+    private MockMvc mvc;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        storageService = mock(StorageService.class);
+        BlobInfo file = new BlobInfo(FILE_ID, "notes.txt", CONTENT.length, new Date(), null, null);
+        when(storageService.getFileMetadata(FILE_ID)).thenReturn(file);
+        when(storageService.getContentLength(file)).thenReturn((long) CONTENT.length);
+        when(storageService.getContentType(file)).thenReturn("text/plain");
+        doAnswer(invocation -> {
+            long start = invocation.getArgument(1);
+            long end = invocation.getArgument(2);
+            OutputStream out = invocation.getArgument(3);
+            out.write(CONTENT, (int) start, (int) (end - start + 1));
+            return null;
+        }).when(storageService).copyRange(eq(file), anyLong(), anyLong(), any(OutputStream.class));
+        mvc = MockMvcBuilders.standaloneSetup(new StorageController(storageService,
+                mock(PreviewService.class), mock(BlobTieringService.class))).build();
+    }
+
+    @Test
+    void sendsTheWholeFileWithoutRange() throws Exception {
+        download(null)
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ACCEPT_RANGES, "bytes"))
+                .andExpect(content().bytes(CONTENT));
+    }
+
+    @Test
+    void sendsASingleRange() throws Exception {
+        download("bytes=10-19")
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 10-19/100"))
+                .andExpect(content().bytes(Arrays.copyOfRange(CONTENT, 10, 20)));
+    }
+
+    @Test
+    void sendsSuffixAndOpenEndedRanges() throws Exception {
+        download("bytes=-5")
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 95-99/100"));
+        download("bytes=90-")
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 90-99/100"));
+    }
+
+    @Test
+    void sendsMultipleRangesAsByteranges() throws Exception {
+        MvcResult result = download("bytes=0-4,50-54")
+                .andExpect(status().isPartialContent())
+                .andReturn();
+
+        assertThat(result.getResponse().getContentType()).startsWith("multipart/byteranges; boundary=");
+        String body = result.getResponse().getContentAsString(StandardCharsets.US_ASCII);
+        assertThat(body).contains("Content-Range: bytes 0-4/100\r\n\r\nABCDE");
+        assertThat(body).contains("Content-Range: bytes 50-54/100\r\n\r\nYZABC");
+    }
+
+    @Test
+    void coalescesOverlappingAndAdjacentRanges() throws Exception {
+        download("bytes=20-29,0-9,5-14,15-19")
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 0-29/100"))
+                .andExpect(content().bytes(Arrays.copyOfRange(CONTENT, 0, 30)));
+
+        verify(storageService, times(1)).copyRange(any(), anyLong(), anyLong(), any());
+    }
+
+    @Test
+    void streamsTheFileOnceForRepeatedOpenRanges() throws Exception {
+        download("bytes=" + String.join(",", Collections.nCopies(50, "0-")))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 0-99/100"));
+
+        verify(storageService, times(1)).copyRange(any(), anyLong(), anyLong(), any());
+    }
+
+    @Test
+    void rejectsTooManyDistinctRanges() throws Exception {
+        StringBuilder ranges = new StringBuilder("bytes=0-0");
+        for (int i = 1; i <= StorageController.MAX_RANGES; i++) {
+            ranges.append(',').append(i * 2).append('-').append(i * 2);
+        }
+        download(ranges.toString())
+                .andExpect(status().isRequestedRangeNotSatisfiable())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes */100"));
+    }
+
+    @Test
+    void rejectsRangesPastTheEnd() throws Exception {
+        download("bytes=100-199")
+                .andExpect(status().isRequestedRangeNotSatisfiable())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes */100"));
+    }
+
+    @Test
+    void ignoresUnsatisfiableRangesNextToSatisfiableOnes() throws Exception {
+        download("bytes=200-299,0-9")
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 0-9/100"));
+    }
+
+    @Test
+    void rejectsMalformedRanges() throws Exception {
+        download("bytes=20-10")
+                .andExpect(status().isRequestedRangeNotSatisfiable());
+    }
+
+    @Test
+    void sendsTheWholeFileWhenIfRangeDoesNotMatch() throws Exception {
+        mvc.perform(asyncDispatch(mvc.perform(get("/api/storage/" + FILE_ID)
+                        .header(HttpHeaders.RANGE, "bytes=0-9")
+                        .header(HttpHeaders.IF_RANGE, "\"another-file\"")).andReturn()))
+                .andExpect(status().isOk())
+                .andExpect(content().bytes(CONTENT));
+    }
+
+    private ResultActions download(String range) throws Exception {
+        var request = get("/api/storage/" + FILE_ID);
+        if (range != null) {
+            request.header(HttpHeaders.RANGE, range);
+        }
+        ResultActions actions = mvc.perform(request);
+        MvcResult started = actions.andReturn();
+        // Bodies are streamed, so everything but an error completes on an async dispatch
+        return started.getRequest().isAsyncStarted() ? mvc.perform(asyncDispatch(started)) : actions;
+    }
+}
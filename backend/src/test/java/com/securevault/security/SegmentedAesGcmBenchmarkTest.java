@@ -0,0 +1,123 @@
+package com.securevault.security;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Encrypt and decrypt throughput of the segment streams used for stored
+ * files, at the default 64 KB segment size, against the plaintext path
+ * that reads the same bytes through the same buffer into a copying sink.
+ * Fails if either direction is more than {@link #MAX_SLOWDOWN} times slower
+ * than plaintext, which catches losing the AES-NI intrinsics or per-byte
+ * work creeping into the segment loop.
+ */
+@Tag("benchmark")
+class SegmentedAesGcmBenchmarkTest {
+
+    private static final Logger log = LoggerFactory.getLogger(SegmentedAesGcmBenchmarkTest.class);
+
+    private static final int SEGMENT_SIZE = 64 * 1024;
+    private static final int PAYLOAD_BYTES = 32 * 1024 * 1024;
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int MEASURED_ROUNDS = 5;
+    private static final double MAX_SLOWDOWN = 25;
+    private static final String FILE_ID = "65f000000000000000000001";
+
+    private final byte[] buffer = new byte[SEGMENT_SIZE];
+    private final byte[] sink = new byte[SEGMENT_SIZE];
+
+    @Test
+    void encryptAndDecryptAgainstPlaintext() throws Exception {
+        KeyGenerator generator = KeyGenerator.getInstance("AES");
+        generator.init(256);
+        SecretKey key = generator.generateKey();
+        byte[] plain = new byte[PAYLOAD_BYTES];
+        new Random(42).nextBytes(plain);
+
+        byte[] encrypted = encrypt(plain, key);
+        assertThat(encrypted).hasSize((int) SegmentedAesGcm.encryptedLength(plain.length, SEGMENT_SIZE));
+        assertThat(decrypt(encrypted, key)).isEqualTo(plain);
+
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            drain(new ByteArrayInputStream(plain));
+            drain(SegmentedAesGcm.encryptingStream(new ByteArrayInputStream(plain), key, FILE_ID, SEGMENT_SIZE));
+            drain(decryptingStream(encrypted, key));
+        }
+
+        long plainNanos = 0;
+        long encryptNanos = 0;
+        long decryptNanos = 0;
+        for (int i = 0; i < MEASURED_ROUNDS; i++) {
+            long start = System.nanoTime();
+            drain(new ByteArrayInputStream(plain));
+            plainNanos += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            drain(SegmentedAesGcm.encryptingStream(new ByteArrayInputStream(plain), key, FILE_ID, SEGMENT_SIZE));
+            encryptNanos += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            drain(decryptingStream(encrypted, key));
+            decryptNanos += System.nanoTime() - start;
+        }
+
+        double plainRate = megabytesPerSecond(plainNanos);
+        double encryptRate = megabytesPerSecond(encryptNanos);
+        double decryptRate = megabytesPerSecond(decryptNanos);
+        log.info("SegmentedAesGcm {} KB segments: plaintext {} MB/s, encrypt {} MB/s ({}x), decrypt {} MB/s ({}x)",
+                SEGMENT_SIZE / 1024, round(plainRate), round(encryptRate), round(plainRate / encryptRate),
+                round(decryptRate), round(plainRate / decryptRate));
+        assertThat(plainRate / encryptRate).as("encrypt slowdown against plaintext").isLessThan(MAX_SLOWDOWN);
+        assertThat(plainRate / decryptRate).as("decrypt slowdown against plaintext").isLessThan(MAX_SLOWDOWN);
+    }
+
+    private static byte[] encrypt(byte[] plain, SecretKey key) throws IOException {
+        try (InputStream in = SegmentedAesGcm.encryptingStream(new ByteArrayInputStream(plain), key, FILE_ID, SEGMENT_SIZE)) {
+            return in.readAllBytes();
+        }
+    }
+
+    private static byte[] decrypt(byte[] encrypted, SecretKey key) throws IOException {
+        try (InputStream in = decryptingStream(encrypted, key)) {
+            return in.readAllBytes();
+        }
+    }
+
+    private static InputStream decryptingStream(byte[] encrypted, SecretKey key) {
+        return SegmentedAesGcm.decryptingStream(new ByteArrayInputStream(encrypted), key, FILE_ID, SEGMENT_SIZE,
+                PAYLOAD_BYTES, 0, 0);
+    }
+
+    /**
+     * Reads the stream the way the stores do and copies every buffer, so the
+     * plaintext path touches each byte once as well
+     */
+    private void drain(InputStream in) throws IOException {
+        try (in) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                System.arraycopy(buffer, 0, sink, 0, read);
+            }
+        }
+    }
+
+    private static double megabytesPerSecond(long nanos) {
+        double seconds = nanos / 1e9;
+        return (double) PAYLOAD_BYTES * MEASURED_ROUNDS / (1024 * 1024) / seconds;
+    }
+
+    private static String round(double value) {
+        return String.format("%.1f", value);
+    }
+}
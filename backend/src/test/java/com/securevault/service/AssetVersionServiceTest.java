@@ -0,0 +1,203 @@
+package com.securevault.service;
+
+import com.mongodb.client.result.UpdateResult;
+import com.securevault.model.Asset;
+import com.securevault.model.AssetState;
+import com.securevault.model.AssetVersion;
+import com.securevault.model.VersionChunk;
+import com.securevault.repository.UserRepository;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.mock.web.MockMultipartFile;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.RETURNS_SELF;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.atMost;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Chunking a superseded version and reading it back, over a mocked
+ * {@link StorageService} that keeps containers in memory and a mocked
+ * {@link MongoTemplate} that keeps the version_chunks entries in a map.
+ * Containers are 256 KiB, so a 1 MiB version has to take a handful of
+ * files and lookups, not one per 32 KiB chunk.
+ */
+class AssetVersionServiceTest {
+
+    private static final int CONTAINER_BYTES = 256 * 1024;
+    private static final int PAYLOAD_BYTES = 1024 * 1024;
+    private static final String OWNER = "owner";
+
+    private final byte[] payload = new byte[PAYLOAD_BYTES];
+    private final Map<String, byte[]> containers = new HashMap<>();
+    private final Map<String, VersionChunk> entries = new HashMap<>();
+    private final AtomicInteger fileIds = new AtomicInteger();
+
+    private MongoTemplate mongoTemplate;
+    private StorageService storageService;
+    private AssetVersionService service;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        new Random(7).nextBytes(payload);
+        mongoTemplate = mock(MongoTemplate.class);
+        storageService = mock(StorageService.class);
+        service = new AssetVersionService(mongoTemplate, storageService, mock(StorageUsageService.class),
+                mock(PreviewService.class), mock(AssetSearchIndexer.class), mock(ActivityLogService.class),
+                mock(UserRepository.class), 8192, 32768, 131072, CONTAINER_BYTES);
+
+        when(storageService.getFileMetadata(anyString())).thenAnswer(invocation ->
+                new BlobInfo(invocation.getArgument(0), "file", 0, new Date(), new Document(), null));
+        when(storageService.rehydrate(any())).thenAnswer(invocation -> invocation.getArgument(0));
+        when(storageService.openStream(any(), eq(0L))).thenAnswer(invocation -> new ByteArrayInputStream(payload));
+        when(storageService.chunkKey(any(), anyInt(), eq(OWNER))).thenAnswer(invocation -> OWNER + ":"
+                + Arrays.hashCode(Arrays.copyOf((byte[]) invocation.getArgument(0), (int) invocation.getArgument(1))));
+        when(storageService.saveChunkContainer(any(), anyInt(), eq(OWNER))).thenAnswer(invocation -> {
+            String fileId = "container-" + fileIds.incrementAndGet();
+            containers.put(fileId, Arrays.copyOf((byte[]) invocation.getArgument(0), (int) invocation.getArgument(1)));
+            return new StorageService.SavedChunk(fileId, true);
+        });
+        when(storageService.acquireFile(anyString())).thenAnswer(invocation -> containers.containsKey(invocation.getArgument(0)));
+        doAnswer(invocation -> {
+            BlobInfo file = invocation.getArgument(0);
+            long start = invocation.getArgument(1);
+            long end = invocation.getArgument(2);
+            OutputStream out = invocation.getArgument(3);
+            out.write(containers.get(file.getFileId()), (int) start, (int) (end - start + 1));
+            return null;
+        }).when(storageService).copyRange(any(), anyLong(), anyLong(), any(OutputStream.class));
+
+        when(mongoTemplate.find(any(Query.class), eq(VersionChunk.class))).thenAnswer(invocation -> {
+            Query query = invocation.getArgument(0);
+            @SuppressWarnings("unchecked")
+            List<String> keys = (List<String>) query.getQueryObject().get("_id", Document.class).get("$in");
+            return keys.stream().map(entries::get).filter(entry -> entry != null).toList();
+        });
+        BulkOperations bulk = mock(BulkOperations.class, RETURNS_SELF);
+        when(bulk.upsert(any(Query.class), any(Update.class))).thenAnswer(invocation -> {
+            String key = ((Query) invocation.getArgument(0)).getQueryObject().getString("_id");
+            Document set = ((Update) invocation.getArgument(1)).getUpdateObject().get("$set", Document.class);
+            entries.put(key, new VersionChunk(key, set.getString("fileId"), set.getLong("offset")));
+            return bulk;
+        });
+        when(mongoTemplate.bulkOps(any(BulkOperations.BulkMode.class), eq(VersionChunk.class))).thenReturn(bulk);
+        when(mongoTemplate.updateFirst(any(Query.class), any(Update.class), eq(AssetVersion.class)))
+                .thenReturn(UpdateResult.acknowledged(1, 1L, null));
+        when(mongoTemplate.insert(any(AssetVersion.class))).thenAnswer(invocation -> invocation.getArgument(0));
+    }
+
+    @Test
+    void packsChunksIntoContainersAndReadsThemBackAsRanges() throws Exception {
+        AssetVersion version = supersede("old-1", "new-1");
+
+        int files = PAYLOAD_BYTES / CONTAINER_BYTES + 1;
+        assertThat(containers).hasSizeLessThanOrEqualTo(files);
+        verify(mongoTemplate, atMost(files)).find(any(Query.class), eq(VersionChunk.class));
+        assertThat(version.getChunks()).hasSizeGreaterThan(files * 2);
+        assertThat(version.getStoredBytes()).isEqualTo(PAYLOAD_BYTES);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        service.copyContent(version, out);
+        assertThat(out.toByteArray()).isEqualTo(payload);
+        verify(storageService, times(containers.size())).copyRange(any(), anyLong(), anyLong(), any());
+        verify(storageService, times(containers.size())).getFileMetadata(startsWith("container-"));
+    }
+
+    @Test
+    void sharesTheContainersOfUnchangedContent() throws Exception {
+        supersede("old-1", "new-1");
+        int written = containers.size();
+
+        AssetVersion again = supersede("old-2", "new-2");
+
+        assertThat(containers).hasSize(written);
+        assertThat(again.getStoredBytes()).isZero();
+        verify(storageService, times(written)).acquireFile(anyString());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        service.copyContent(again, out);
+        assertThat(out.toByteArray()).isEqualTo(payload);
+    }
+
+    @Test
+    void rejectsAVersionWithoutContent() throws Exception {
+        AssetVersion version = new AssetVersion();
+        version.setStoredBytes(0L);
+
+        assertThatThrownBy(() -> service.copyContent(version, new ByteArrayOutputStream()))
+                .isInstanceOf(RuntimeException.class);
+        verify(storageService, never()).copyRange(any(), anyLong(), anyLong(), any());
+    }
+
+    /**
+     * Uploads a new version over an asset whose current file holds the payload
+     * @return The superseded version as it was recorded
+     */
+    private AssetVersion supersede(String oldFileId, String newFileId) throws Exception {
+        Asset asset = asset(oldFileId);
+        AssetVersion previous = new AssetVersion();
+        previous.setId("version-" + oldFileId);
+        previous.setAssetId(asset.getId());
+        previous.setUserId(OWNER);
+        previous.setVersion(1);
+        previous.setFileId(oldFileId);
+        MockMultipartFile upload = new MockMultipartFile("file", "notes.txt", "text/plain", new byte[]{1});
+        when(mongoTemplate.findById(asset.getId(), Asset.class)).thenReturn(asset);
+        when(mongoTemplate.findOne(any(Query.class), eq(AssetVersion.class))).thenReturn(previous);
+        when(storageService.saveFile(upload, OWNER)).thenReturn(newFileId);
+        when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class),
+                eq(Asset.class))).thenReturn(asset(newFileId));
+
+        service.uploadVersion(asset.getId(), OWNER, upload);
+
+        ArgumentCaptor<Update> recorded = ArgumentCaptor.forClass(Update.class);
+        verify(mongoTemplate, atLeastOnce()).updateFirst(any(Query.class), recorded.capture(), eq(AssetVersion.class));
+        Document set = recorded.getValue().getUpdateObject().get("$set", Document.class);
+        @SuppressWarnings("unchecked")
+        List<AssetVersion.ChunkRef> chunks = (List<AssetVersion.ChunkRef>) set.get("chunks");
+        previous.setFileId(null);
+        previous.setChunks(chunks);
+        previous.setStoredBytes(set.getLong("storedBytes"));
+        return previous;
+    }
+
+    private Asset asset(String fileId) {
+        Asset asset = new Asset();
+        asset.setId("asset");
+        asset.setUserId(OWNER);
+        asset.setFileId(fileId);
+        asset.setFileName("notes.txt");
+        asset.setState(AssetState.UPLOADED);
+        return asset;
+    }
+}
@@ -0,0 +1,59 @@
+package com.securevault.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BlobCompressionTest {
+
+    private static final int BLOCK_SIZE = 4096;
+
+    @Test
+    void blockFlushedOutputIsPlainGzip() throws IOException {
+        byte[] plain = sample(10 * BLOCK_SIZE + 123);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        List<Long> blocks = BlobCompression.compress(new ByteArrayInputStream(plain), out, BLOCK_SIZE);
+
+        assertThat(blocks).hasSize(11);
+        assertThat(out.size()).isLessThan(plain.length / 2);
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(out.toByteArray()))) {
+            assertThat(in.readAllBytes()).isEqualTo(plain);
+        }
+    }
+
+    @Test
+    void inflatesFromEveryBlockOffset() throws IOException {
+        byte[] plain = sample(10 * BLOCK_SIZE + 123);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        List<Long> blocks = BlobCompression.compress(new ByteArrayInputStream(plain), out, BLOCK_SIZE);
+        byte[] gzip = out.toByteArray();
+
+        for (int block = 0; block < blocks.size(); block++) {
+            int offset = blocks.get(block).intValue();
+            InputStream encoded = new ByteArrayInputStream(gzip, offset, gzip.length - offset);
+            try (InputStream in = BlobCompression.inflateFrom(encoded, 1024)) {
+                assertThat(in.readAllBytes())
+                        .as("block %d", block)
+                        .isEqualTo(Arrays.copyOfRange(plain, block * BLOCK_SIZE, plain.length));
+            }
+        }
+    }
+
+    private static byte[] sample(int length) {
+        byte[] line = "2024-01-01,transfer,1200.00,savings account\n".getBytes(StandardCharsets.US_ASCII);
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) (line[i % line.length] + (i / 997) % 3);
+        }
+        return data;
+    }
+}
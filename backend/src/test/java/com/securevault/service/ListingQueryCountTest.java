@@ -0,0 +1,163 @@
+package com.securevault.service;
+
+import com.securevault.dto.AssetResponseDTO;
+import com.securevault.dto.VerificationRequestResponseDTO;
+import com.securevault.model.Nominee;
+import com.securevault.model.User;
+import com.securevault.model.VerificationRequest;
+import com.securevault.repository.AssetRepository;
+import com.securevault.repository.NomineeRepository;
+import com.securevault.repository.UserRepository;
+import com.securevault.repository.VerificationRepository;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.mockito.invocation.Invocation;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationResults;
+import org.springframework.data.mongodb.core.aggregation.TypedAggregation;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.MongoCustomConversions;
+import org.springframework.data.mongodb.core.convert.NoOpDbRefResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.repository.support.MongoRepositoryFactory;
+
+import java.util.List;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Regression guard for the listings that used to look up each asset's or
+ * request's references one at a time: the services run over repository
+ * proxies and a mocked {@link MongoTemplate}, and every read that reaches
+ * the template is counted. The count has to be the same for 20 and for 200
+ * rows.
+ */
+class ListingQueryCountTest {
+
+    private static final Set<String> READS = Set.of("find", "findOne", "findById", "findAll", "findDistinct",
+            "aggregate", "aggregateStream", "stream", "count", "exists");
+    private static final int ROWS = 20;
+
+    private MongoTemplate template;
+    private AssetService assetService;
+    private VerificationService verificationService;
+
+    @BeforeEach
+    void setUp() {
+        MongoMappingContext mappingContext = new MongoMappingContext();
+        mappingContext.setSimpleTypeHolder(new MongoCustomConversions(List.of()).getSimpleTypeHolder());
+        template = mock(MongoTemplate.class);
+        when(template.getConverter())
+                .thenReturn(new MappingMongoConverter(NoOpDbRefResolver.INSTANCE, mappingContext));
+        MongoRepositoryFactory factory = new MongoRepositoryFactory(template);
+        NomineeRepository nomineeRepository = factory.getRepository(NomineeRepository.class);
+        UserRepository userRepository = factory.getRepository(UserRepository.class);
+
+        assetService = new AssetService(factory.getRepository(AssetRepository.class), userRepository,
+                nomineeRepository, mock(StorageService.class), mock(ActivityLogService.class),
+                mock(PreviewService.class), template, mock(AssetSearchIndexer.class),
+                mock(StorageUsageService.class), mock(AssetVersionService.class));
+        verificationService = new VerificationService(factory.getRepository(VerificationRepository.class),
+                nomineeRepository, userRepository, mock(StorageService.class), mock(ActivityLogService.class),
+                new ReferenceResolver(nomineeRepository, userRepository), mock(AssetReleaseService.class));
+    }
+
+    @Test
+    void userAssetsTakeTheSameQueriesForTenTimesTheAssets() {
+        long few = userAssetQueries(ROWS);
+        setUp();
+        long many = userAssetQueries(ROWS * 10);
+
+        assertThat(few).isEqualTo(1);
+        assertThat(many).isEqualTo(few);
+    }
+
+    @Test
+    void userAssetsResolveNomineesInTheAggregation() {
+        userAssetQueries(ROWS);
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<TypedAggregation<?>> aggregation = ArgumentCaptor.forClass(TypedAggregation.class);
+        verify(template).aggregate(aggregation.capture(), eq(AssetResponseDTO.class));
+        assertThat(aggregation.getValue().toPipeline(Aggregation.DEFAULT_CONTEXT))
+                .anySatisfy(stage -> assertThat(stage).containsKey("$lookup"));
+    }
+
+    @Test
+    void verificationRequestsTakeTheSameQueriesForTenTimesTheRequests() {
+        long few = verificationQueries(ROWS);
+        setUp();
+        long many = verificationQueries(ROWS * 10);
+
+        // The requests, then one $in each for their nominees and users
+        assertThat(few).isEqualTo(3);
+        assertThat(many).isEqualTo(few);
+    }
+
+    private long userAssetQueries(int assets) {
+        List<AssetResponseDTO> rows = IntStream.range(0, assets).mapToObj(i -> {
+            AssetResponseDTO asset = new AssetResponseDTO();
+            asset.setId("asset-" + i);
+            asset.setFileName("file-" + i + ".pdf");
+            return asset;
+        }).toList();
+        when(template.aggregate(any(TypedAggregation.class), eq(AssetResponseDTO.class)))
+                .thenReturn(new AggregationResults<>(rows, new Document()));
+
+        assertThat(assetService.getUserAssets("owner")).hasSize(assets);
+        return reads();
+    }
+
+    private long verificationQueries(int requests) {
+        List<VerificationRequest> rows = IntStream.range(0, requests).mapToObj(i -> {
+            VerificationRequest request = new VerificationRequest();
+            request.setId("request-" + i);
+            request.setNomineeId("nominee-" + i);
+            request.setDeceasedUserId("user-" + i % 7);
+            return request;
+        }).toList();
+        when(template.find(any(Query.class), eq(VerificationRequest.class), eq("verification_requests")))
+                .thenReturn(rows);
+        when(template.find(any(Query.class), eq(Nominee.class), eq("nominees")))
+                .thenReturn(IntStream.range(0, requests).mapToObj(i -> {
+                    Nominee nominee = new Nominee();
+                    nominee.setId("nominee-" + i);
+                    nominee.setName("Name of nominee-" + i);
+                    return nominee;
+                }).toList());
+        when(template.find(any(Query.class), eq(User.class), eq("users")))
+                .thenReturn(IntStream.range(0, 7).mapToObj(i -> {
+                    User user = new User();
+                    user.setId("user-" + i);
+                    user.setFullName("Name of user-" + i);
+                    return user;
+                }).toList());
+
+        List<VerificationRequestResponseDTO> detailed = verificationService.getAllRequestsDetailed();
+        assertThat(detailed).hasSize(requests);
+        assertThat(detailed).allSatisfy(dto -> {
+            assertThat(dto.getNomineeName()).isEqualTo("Name of " + dto.getNomineeId());
+            assertThat(dto.getDeceasedUserName()).isEqualTo("Name of " + dto.getDeceasedUserId());
+        });
+        return reads();
+    }
+
+    private long reads() {
+        return Mockito.mockingDetails(template).getInvocations().stream()
+                .map(Invocation::getMethod)
+                .filter(method -> READS.contains(method.getName()))
+                .count();
+    }
+}
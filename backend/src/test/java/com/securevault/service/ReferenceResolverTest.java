@@ -0,0 +1,113 @@
+package com.securevault.service;
+
+import com.securevault.model.Nominee;
+import com.securevault.model.User;
+import com.securevault.repository.NomineeRepository;
+import com.securevault.repository.UserRepository;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.MongoCustomConversions;
+import org.springframework.data.mongodb.core.convert.NoOpDbRefResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.repository.support.MongoRepositoryFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Runs the real repository proxies over a mocked {@link MongoOperations}, so
+ * the test sees the exact queries findAllById sends for a page of ids.
+ */
+class ReferenceResolverTest {
+
+    private MongoOperations operations;
+    private ReferenceResolver resolver;
+
+    @BeforeEach
+    void setUp() {
+        MongoMappingContext mappingContext = new MongoMappingContext();
+        mappingContext.setSimpleTypeHolder(new MongoCustomConversions(List.of()).getSimpleTypeHolder());
+        operations = mock(MongoOperations.class);
+        when(operations.getConverter())
+                .thenReturn(new MappingMongoConverter(NoOpDbRefResolver.INSTANCE, mappingContext));
+        MongoRepositoryFactory factory = new MongoRepositoryFactory(operations);
+        resolver = new ReferenceResolver(factory.getRepository(NomineeRepository.class),
+                factory.getRepository(UserRepository.class));
+    }
+
+    @Test
+    void resolvesNomineesWithOneInQuery() {
+        List<String> ids = IntStream.range(0, 25).mapToObj(i -> "nominee-" + i).toList();
+        List<String> referenced = new ArrayList<>(ids);
+        referenced.addAll(ids.subList(0, 10));
+        referenced.add(null);
+        when(operations.find(any(Query.class), eq(Nominee.class), eq("nominees")))
+                .thenReturn(ids.stream().map(ReferenceResolverTest::nominee).toList());
+
+        Map<String, Nominee> nominees = resolver.nominees(referenced);
+
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        verify(operations, times(1)).find(query.capture(), eq(Nominee.class), eq("nominees"));
+        assertThat(query.getValue().getQueryObject()).containsOnlyKeys("id");
+        Document id = (Document) query.getValue().getQueryObject().get("id");
+        assertThat(id).containsOnlyKeys("$in");
+        assertThat(inValues(id)).containsExactlyElementsOf(ids);
+        assertThat(nominees).containsOnlyKeys(ids);
+    }
+
+    @Test
+    void resolvesUsersWithOneInQuery() {
+        List<String> ids = Arrays.asList("user-1", "user-2", "user-1", "user-3");
+        when(operations.find(any(Query.class), eq(User.class), eq("users")))
+                .thenReturn(List.of(user("user-1"), user("user-3")));
+
+        Map<String, User> users = resolver.users(ids);
+
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        verify(operations, times(1)).find(query.capture(), eq(User.class), eq("users"));
+        Document id = (Document) query.getValue().getQueryObject().get("id");
+        assertThat(inValues(id)).containsExactly("user-1", "user-2", "user-3");
+        assertThat(users).containsOnlyKeys("user-1", "user-3");
+    }
+
+    @Test
+    void skipsTheQueryWithoutIds() {
+        assertThat(resolver.nominees(Arrays.asList(null, null))).isEmpty();
+        assertThat(resolver.users(List.of())).isEmpty();
+
+        verify(operations, times(0)).find(any(Query.class), any(), any());
+    }
+
+    private static List<Object> inValues(Document criteria) {
+        return new ArrayList<>((Collection<?>) criteria.get("$in"));
+    }
+
+    private static Nominee nominee(String id) {
+        Nominee nominee = new Nominee();
+        nominee.setId(id);
+        return nominee;
+    }
+
+    private static User user(String id) {
+        User user = new User();
+        user.setId(id);
+        return user;
+    }
+}
@@ -0,0 +1,166 @@
+package com.securevault.service.impl;
+
+import com.mongodb.MongoClientSettings;
+import com.mongodb.client.FindIterable;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.gridfs.GridFSBucket;
+import com.mongodb.client.gridfs.GridFSBuckets;
+import com.mongodb.client.model.InsertManyOptions;
+import org.bson.Document;
+import org.bson.types.Binary;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.RETURNS_SELF;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * The driver's uploadFromStream, which the upload path used before
+ * {@link GridFsChunkWriter} and which inserts one chunk per round trip,
+ * against the writer with one and with four batches in flight. Every insert
+ * is held for a fixed round trip so the numbers do not depend on a running
+ * MongoDB. Fails if the parallel writer is not at least
+ * {@link #MIN_SPEEDUP} times faster than uploadFromStream.
+ * {@link GridFsChunkWriterMongoBenchmarkTest} runs the same comparison
+ * against a real server when Docker is available.
+ */
+@Tag("benchmark")
+class GridFsChunkWriterBenchmarkTest {
+
+    private static final Logger log = LoggerFactory.getLogger(GridFsChunkWriterBenchmarkTest.class);
+
+    private static final int CHUNK_SIZE = 261120;
+    private static final int BATCH_BYTES = 4 * 1024 * 1024;
+    private static final int PAYLOAD_BYTES = 16 * 1024 * 1024;
+    private static final long ROUND_TRIP_MILLIS = 20;
+    private static final double MIN_SPEEDUP = 4;
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(8);
+
+    @AfterEach
+    void shutdown() throws InterruptedException {
+        executor.shutdownNow();
+        executor.awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void chunkWriterAgainstUploadFromStream() throws Exception {
+        byte[] payload = new byte[PAYLOAD_BYTES];
+        new Random(42).nextBytes(payload);
+
+        double baseline = uploadFromStream(payload);
+        double sequential = run(payload, 1);
+        double parallel = run(payload, 4);
+
+        log.info("GridFS upload at {} ms per insert: uploadFromStream {} MB/s, chunk writer {} MB/s sequential, {} MB/s parallel(4)",
+                ROUND_TRIP_MILLIS, round(baseline), round(sequential), round(parallel));
+        assertThat(parallel).isGreaterThanOrEqualTo(baseline * MIN_SPEEDUP);
+    }
+
+    /**
+     * Drives the real driver bucket over collections that hold every insert
+     * for the round trip. The files collection reports itself non-empty so
+     * the bucket skips creating its indexes.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private double uploadFromStream(byte[] payload) {
+        AtomicInteger chunkCount = new AtomicInteger();
+        MongoCollection<Object> files = mock(MongoCollection.class, RETURNS_SELF);
+        FindIterable<Object> existing = mock(FindIterable.class, RETURNS_SELF);
+        when(existing.first()).thenReturn(new Document("_id", new ObjectId()));
+        when(files.find()).thenReturn(existing);
+        MongoCollection<Object> chunks = mock(MongoCollection.class, RETURNS_SELF);
+        doAnswer(invocation -> {
+            Thread.sleep(ROUND_TRIP_MILLIS);
+            chunkCount.incrementAndGet();
+            return null;
+        }).when(chunks).insertOne(any());
+        MongoDatabase database = mock(MongoDatabase.class);
+        when(database.getCodecRegistry()).thenReturn(MongoClientSettings.getDefaultCodecRegistry());
+        for (String name : List.of("fs.files", "fs.chunks")) {
+            MongoCollection collection = name.equals("fs.files") ? files : chunks;
+            when(database.getCollection(name)).thenReturn(collection);
+            when(database.getCollection(eq(name), any(Class.class))).thenReturn(collection);
+        }
+        GridFSBucket bucket = GridFSBuckets.create(database).withChunkSizeBytes(CHUNK_SIZE);
+
+        long start = System.nanoTime();
+        bucket.uploadFromStream("payload.bin", new ByteArrayInputStream(payload));
+        long nanos = System.nanoTime() - start;
+
+        assertThat(chunkCount.get()).isEqualTo((PAYLOAD_BYTES + CHUNK_SIZE - 1) / CHUNK_SIZE);
+        return megabytesPerSecond(nanos);
+    }
+
+    private double run(byte[] payload, int parallelism) throws Exception {
+        List<Document> written = Collections.synchronizedList(new ArrayList<>());
+        List<Document> fileDocs = new ArrayList<>();
+        MongoCollection<Document> files = collection(fileDocs, 0);
+        MongoCollection<Document> chunks = collection(written, ROUND_TRIP_MILLIS);
+        GridFsChunkWriter writer = new GridFsChunkWriter(files, chunks, executor, CHUNK_SIZE, BATCH_BYTES, parallelism);
+        ObjectId id = new ObjectId();
+
+        long start = System.nanoTime();
+        writer.write(id, "payload.bin", CHUNK_SIZE, new ByteArrayInputStream(payload), new Document());
+        long nanos = System.nanoTime() - start;
+
+        int expectedChunks = (PAYLOAD_BYTES + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        assertThat(written).hasSize(expectedChunks);
+        written.sort(Comparator.comparingInt(chunk -> chunk.getInteger("n")));
+        for (int n = 0; n < expectedChunks; n++) {
+            assertThat(written.get(n).getInteger("n")).isEqualTo(n);
+            assertThat(written.get(n).get("files_id")).isEqualTo(id);
+        }
+        assertThat(((Binary) written.get(expectedChunks - 1).get("data")).length())
+                .isEqualTo(PAYLOAD_BYTES - (expectedChunks - 1) * CHUNK_SIZE);
+        assertThat(fileDocs).singleElement()
+                .satisfies(file -> assertThat(file.getLong("length")).isEqualTo(PAYLOAD_BYTES));
+
+        return megabytesPerSecond(nanos);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static MongoCollection<Document> collection(List<Document> sink, long latencyMillis) {
+        MongoCollection<Document> collection = mock(MongoCollection.class);
+        doAnswer(invocation -> {
+            Thread.sleep(latencyMillis);
+            sink.addAll(invocation.getArgument(0));
+            return null;
+        }).when(collection).insertMany(anyList(), any(InsertManyOptions.class));
+        doAnswer(invocation -> {
+            sink.add(invocation.getArgument(0));
+            return null;
+        }).when(collection).insertOne(any(Document.class));
+        return collection;
+    }
+
+    private static double megabytesPerSecond(long nanos) {
+        return (double) PAYLOAD_BYTES / (1024 * 1024) / (nanos / 1e9);
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 10) / 10.0;
+    }
+}
@@ -0,0 +1,134 @@
+package com.securevault.service.impl;
+
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.gridfs.GridFSBucket;
+import com.mongodb.client.gridfs.GridFSBuckets;
+import com.mongodb.client.model.Filters;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.io.ByteArrayInputStream;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * The driver's uploadFromStream, one insert per chunk, against
+ * {@link GridFsChunkWriter} with one and with four batches in flight, on a
+ * real MongoDB. Skipped when Docker is not available. A local server has
+ * little round-trip latency to hide, so the bound is looser than in
+ * {@link GridFsChunkWriterBenchmarkTest}: the parallel writer has to be at
+ * least {@link #MIN_SPEEDUP} times faster than uploadFromStream.
+ */
+@Tag("benchmark")
+@Testcontainers(disabledWithoutDocker = true)
+class GridFsChunkWriterMongoBenchmarkTest {
+
+    private static final Logger log = LoggerFactory.getLogger(GridFsChunkWriterMongoBenchmarkTest.class);
+
+    private static final int CHUNK_SIZE = 261120;
+    private static final int BATCH_BYTES = 4 * 1024 * 1024;
+    private static final int PAYLOAD_BYTES = 64 * 1024 * 1024;
+    private static final int MEASURED_ROUNDS = 3;
+    private static final double MIN_SPEEDUP = 1.2;
+
+    @Container
+    private static final MongoDBContainer MONGO = new MongoDBContainer("mongo:7.0");
+
+    private static MongoClient client;
+    private static ExecutorService executor;
+
+    @BeforeAll
+    static void connect() {
+        client = MongoClients.create(MONGO.getConnectionString());
+        executor = Executors.newFixedThreadPool(8);
+    }
+
+    @AfterAll
+    static void close() {
+        executor.shutdownNow();
+        client.close();
+    }
+
+    @Test
+    void chunkWriterAgainstUploadFromStream() throws Exception {
+        MongoDatabase database = client.getDatabase("benchmark");
+        MongoCollection<Document> files = database.getCollection("fs.files");
+        MongoCollection<Document> chunks = database.getCollection("fs.chunks");
+        chunks.createIndex(new Document("files_id", 1).append("n", 1));
+        GridFSBucket bucket = GridFSBuckets.create(database, "baseline").withChunkSizeBytes(CHUNK_SIZE);
+        byte[] payload = new byte[PAYLOAD_BYTES];
+        new Random(42).nextBytes(payload);
+
+        // Warm up connections and the storage engine
+        uploadFromStream(bucket, payload);
+        run(files, chunks, payload, 4);
+
+        long baselineNanos = 0;
+        long sequentialNanos = 0;
+        long parallelNanos = 0;
+        for (int i = 0; i < MEASURED_ROUNDS; i++) {
+            baselineNanos += uploadFromStream(bucket, payload);
+            sequentialNanos += run(files, chunks, payload, 1);
+            parallelNanos += run(files, chunks, payload, 4);
+        }
+
+        double baseline = megabytesPerSecond(baselineNanos);
+        double parallel = megabytesPerSecond(parallelNanos);
+        log.info("GridFS upload on MongoDB: uploadFromStream {} MB/s, chunk writer {} MB/s sequential, {} MB/s parallel(4)",
+                round(baseline), round(megabytesPerSecond(sequentialNanos)), round(parallel));
+        assertThat(parallel).isGreaterThanOrEqualTo(baseline * MIN_SPEEDUP);
+    }
+
+    private static long uploadFromStream(GridFSBucket bucket, byte[] payload) {
+        long start = System.nanoTime();
+        ObjectId id = bucket.uploadFromStream("payload.bin", new ByteArrayInputStream(payload));
+        long nanos = System.nanoTime() - start;
+
+        assertThat(bucket.find(Filters.eq("_id", id)).first()).isNotNull()
+                .satisfies(file -> assertThat(file.getLength()).isEqualTo(PAYLOAD_BYTES));
+        bucket.delete(id);
+        return nanos;
+    }
+
+    private static long run(MongoCollection<Document> files, MongoCollection<Document> chunks,
+                            byte[] payload, int parallelism) throws Exception {
+        GridFsChunkWriter writer = new GridFsChunkWriter(files, chunks, executor, CHUNK_SIZE, BATCH_BYTES, parallelism);
+        ObjectId id = new ObjectId();
+
+        long start = System.nanoTime();
+        writer.write(id, "payload.bin", CHUNK_SIZE, new ByteArrayInputStream(payload), new Document());
+        long nanos = System.nanoTime() - start;
+
+        assertThat(chunks.countDocuments(Filters.eq("files_id", id)))
+                .isEqualTo((PAYLOAD_BYTES + CHUNK_SIZE - 1) / CHUNK_SIZE);
+        Document file = files.find(Filters.eq("_id", id)).first();
+        assertThat(file).isNotNull();
+        assertThat(file.getLong("length")).isEqualTo(PAYLOAD_BYTES);
+        files.deleteOne(Filters.eq("_id", id));
+        chunks.deleteMany(Filters.eq("files_id", id));
+        return nanos;
+    }
+
+    private static double megabytesPerSecond(long nanos) {
+        return (double) PAYLOAD_BYTES * MEASURED_ROUNDS / (1024 * 1024) / (nanos / 1e9);
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 10) / 10.0;
+    }
+}